@@ -0,0 +1,32 @@
+package net.filipvanlaenen.laconic;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler, such that both the throughput and the allocations per operation are
+ * reported. Command line options are passed on to JMH, e.g. a regular expression to select benchmarks.
+ */
+public final class Benchmarks {
+    /**
+     * Private constructor to prevent instantiation of this class.
+     */
+    private Benchmarks() {
+    }
+
+    /**
+     * Runs the benchmarks.
+     *
+     * @param args The command line options for JMH.
+     * @throws CommandLineOptionException Thrown if the command line options can't be parsed.
+     * @throws RunnerException            Thrown if the benchmarks fail to run.
+     */
+    public static void main(final String[] args) throws CommandLineOptionException, RunnerException {
+        new Runner(new OptionsBuilder().parent(new CommandLineOptions(args)).addProfiler(GCProfiler.class).build())
+                .run();
+    }
+}
@@ -0,0 +1,63 @@
+package net.filipvanlaenen.laconic;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks logging a message to many tokens at once.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FanOutBenchmark {
+    /**
+     * The number of tokens to which the message is logged.
+     */
+    @Param({"1", "5", "20"})
+    private int numberOfTokens;
+    /**
+     * The logger.
+     */
+    private Laconic laconic;
+    /**
+     * The tokens to which the message is logged.
+     */
+    private Token[] tokens;
+
+    /**
+     * Creates fresh tokens for every iteration, such that the tokens don't grow without limit.
+     */
+    @Setup(Level.Iteration)
+    public void setUp() {
+        laconic = new Laconic();
+        tokens = new Token[numberOfTokens];
+        for (int i = 0; i < numberOfTokens; i++) {
+            tokens[i] = laconic.logMessage("Start %d", i);
+        }
+    }
+
+    /**
+     * Logs a message to all the tokens.
+     *
+     * @return The new token.
+     */
+    @Benchmark
+    public Token fanOut() {
+        return laconic.logMessage("Something happened.", tokens);
+    }
+}
@@ -0,0 +1,70 @@
+package net.filipvanlaenen.laconic;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks rendering errors with tokens holding chains of different lengths to a sink discarding the output, in the
+ * text and the JSON Lines output formats.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LogErrorBenchmark {
+    /**
+     * The number of messages on the token.
+     */
+    @Param({"1", "10", "100"})
+    private int chainLength;
+    /**
+     * The output format.
+     */
+    @Param({"TEXT", "JSON_LINES"})
+    private OutputFormat outputFormat;
+    /**
+     * The logger.
+     */
+    private Laconic laconic;
+    /**
+     * The token holding the chain of messages.
+     */
+    private Token token;
+
+    /**
+     * Creates a logger writing in the output format to a null sink, and a token with a chain of messages of the requested length.
+     */
+    @Setup
+    public void setUp() {
+        laconic = new Laconic();
+        laconic.setPrintStream(new PrintStream(OutputStream.nullOutputStream()));
+        laconic.setOutputFormat(outputFormat);
+        token = laconic.logMessage("Message %d", 0);
+        for (int i = 1; i < chainLength; i++) {
+            laconic.logMessage("Message %d", i, token);
+        }
+    }
+
+    /**
+     * Logs an error with the token.
+     */
+    @Benchmark
+    public void logError() {
+        laconic.logError("Something went wrong.", token);
+    }
+}
@@ -0,0 +1,160 @@
+package net.filipvanlaenen.laconic;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks logging messages, with and without format arguments, to a new and to an existing token, one by one and in
+ * batches, with and without the flight recorder.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LogMessageBenchmark {
+    /**
+     * The capacity of the ring of the flight recorder.
+     */
+    private static final int FLIGHT_RECORDER_CAPACITY = 64 * 1024 * 1024;
+    /**
+     * The number of messages in a batch.
+     */
+    private static final int BATCH_SIZE = 16;
+    /**
+     * The batch of messages.
+     */
+    private static final String[] BATCH = new String[BATCH_SIZE];
+
+    static {
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            BATCH[i] = "Item " + i + " processed.";
+        }
+    }
+
+    /**
+     * Whether the logger runs in flight recorder mode.
+     */
+    @Param({"false", "true"})
+    private boolean flightRecorder;
+    /**
+     * The file for the flight recording, or null if the logger doesn't run in flight recorder mode.
+     */
+    private Path flightRecording;
+    /**
+     * The logger.
+     */
+    private Laconic laconic;
+    /**
+     * The existing token to which messages are logged.
+     */
+    private Token token;
+
+    /**
+     * Creates a fresh logger and token for every iteration, such that the token doesn't grow without limit.
+     *
+     * @throws IOException Thrown if the file for the flight recording can't be created.
+     */
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        laconic = new Laconic();
+        if (flightRecorder) {
+            flightRecording = Files.createTempFile("laconic-", ".rec");
+            laconic.setFlightRecorder(flightRecording, FLIGHT_RECORDER_CAPACITY);
+        }
+        token = laconic.logMessage("Start");
+    }
+
+    /**
+     * Closes and deletes the flight recording after every iteration.
+     *
+     * @throws IOException Thrown if the file for the flight recording can't be deleted.
+     */
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        if (flightRecording != null) {
+            laconic.setFlightRecorder(null, 0);
+            Files.delete(flightRecording);
+            flightRecording = null;
+        }
+    }
+
+    /**
+     * Logs a plain message to a new token.
+     *
+     * @return The new token.
+     */
+    @Benchmark
+    public Token logMessage() {
+        return laconic.logMessage("Something happened.");
+    }
+
+    /**
+     * Logs a message formatted with an integer to a new token.
+     *
+     * @return The new token.
+     */
+    @Benchmark
+    public Token logFormattedMessage() {
+        return laconic.logMessage("Something happened %d times.", 42);
+    }
+
+    /**
+     * Logs a plain message to an existing token.
+     *
+     * @return The new token.
+     */
+    @Benchmark
+    public Token logMessageToAToken() {
+        return laconic.logMessage("Something happened.", token);
+    }
+
+    /**
+     * Logs a message formatted with an integer to an existing token.
+     *
+     * @return The new token.
+     */
+    @Benchmark
+    public Token logFormattedMessageToAToken() {
+        return laconic.logMessage("Something happened %d times.", 42, token);
+    }
+
+    /**
+     * Logs a batch of plain messages to an existing token one by one, as a baseline for logging them in a single call.
+     * The throughput is reported per message.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void logMessagesOneByOneToAToken() {
+        for (String message : BATCH) {
+            laconic.logMessage(message, token);
+        }
+    }
+
+    /**
+     * Logs a batch of plain messages to an existing token in a single call. The throughput is reported per message.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void logBatchOfMessagesToAToken() {
+        laconic.logMessages(BATCH, token);
+    }
+}
@@ -0,0 +1,74 @@
+package net.filipvanlaenen.laconic;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.filipvanlaenen.kolektoj.OrderedCollection;
+
+/**
+ * Benchmarks cloning tokens and taking snapshots of their messages, for chains of different lengths.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TokenBenchmark {
+    /**
+     * The number of messages on the token.
+     */
+    @Param({"1", "10", "100", "1000"})
+    private int chainLength;
+    /**
+     * The logger.
+     */
+    private Laconic laconic;
+    /**
+     * The token holding the chain of messages.
+     */
+    private Token token;
+
+    /**
+     * Creates a token with a chain of messages of the requested length.
+     */
+    @Setup
+    public void setUp() {
+        laconic = new Laconic();
+        token = laconic.logMessage("Message %d", 0);
+        for (int i = 1; i < chainLength; i++) {
+            laconic.logMessage("Message %d", i, token);
+        }
+    }
+
+    /**
+     * Clones the token and logs a message to the clone.
+     *
+     * @return The cloned token.
+     */
+    @Benchmark
+    public Token cloneToken() {
+        return laconic.logMessage(token, "Something happened.");
+    }
+
+    /**
+     * Takes a snapshot of the messages on the token.
+     *
+     * @return The messages on the token.
+     */
+    @Benchmark
+    public OrderedCollection<Message> getMessages() {
+        return token.getMessages();
+    }
+}
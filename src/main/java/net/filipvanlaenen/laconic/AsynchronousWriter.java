@@ -0,0 +1,234 @@
+package net.filipvanlaenen.laconic;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A writer handing rendered blocks of log messages over to a dedicated thread. The logging threads add the blocks to a
+ * bounded ring buffer, and the writer thread drains the buffer in batches, writing each batch to the sink with a
+ * single call. A batch is written once it holds the maximum number of blocks, or once the buffer is empty and the
+ * flush interval has passed since the first block of the batch was polled. A shutdown hook makes sure that all blocks
+ * in the buffer are written before the JVM exits.
+ */
+final class AsynchronousWriter {
+    /**
+     * The number of nanoseconds to park while waiting for the writer thread.
+     */
+    private static final long PARK_NANOS = 100_000L;
+
+    /**
+     * The ring buffer with the blocks to be written.
+     */
+    private final RingBuffer<String> buffer;
+    /**
+     * The policy to apply when the buffer is full.
+     */
+    private final FullBufferPolicy fullBufferPolicy;
+    /**
+     * The counter for the number of blocks that have been dropped.
+     */
+    private final AtomicLong droppedCount;
+    /**
+     * The maximum number of blocks in a batch.
+     */
+    private final int batchSize;
+    /**
+     * The number of nanoseconds a batch may wait for more blocks before it is written.
+     */
+    private final long flushIntervalNanos;
+    /**
+     * The thread writing the blocks to the sink.
+     */
+    private final Thread writerThread;
+    /**
+     * The shutdown hook flushing the buffer.
+     */
+    private final Thread shutdownHook;
+    /**
+     * The sink to which the blocks are written.
+     */
+    private volatile Sink sink;
+    /**
+     * Whether the writer thread should keep on running.
+     */
+    private volatile boolean running = true;
+    /**
+     * Whether the writer thread is parked waiting for new blocks.
+     */
+    private volatile boolean sleeping;
+    /**
+     * The total number of blocks that have been written.
+     */
+    private volatile long writtenCount;
+    /**
+     * The number of blocks that should be written without waiting for the flush interval.
+     */
+    private volatile long flushTarget;
+
+    /**
+     * Constructor taking the sink, the capacity of the buffer, the policy for a full buffer, the counter for dropped
+     * blocks, the maximum number of blocks in a batch and the flush interval as its parameters.
+     *
+     * @param sink               The sink to which the blocks should be written.
+     * @param bufferCapacity     The minimal capacity of the buffer.
+     * @param fullBufferPolicy   The policy to apply when the buffer is full.
+     * @param droppedCount       The counter for the number of blocks that have been dropped.
+     * @param batchSize          The maximum number of blocks in a batch.
+     * @param flushIntervalNanos The number of nanoseconds a batch may wait for more blocks, or zero if a batch should
+     *                           be written as soon as the buffer is empty.
+     */
+    AsynchronousWriter(final Sink sink, final int bufferCapacity, final FullBufferPolicy fullBufferPolicy,
+            final AtomicLong droppedCount, final int batchSize, final long flushIntervalNanos) {
+        this.sink = sink;
+        this.buffer = new RingBuffer<String>(bufferCapacity);
+        this.fullBufferPolicy = fullBufferPolicy;
+        this.droppedCount = droppedCount;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = flushIntervalNanos;
+        writerThread = new Thread(this::drain, "laconic-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        shutdownHook = new Thread(this::flush, "laconic-shutdown-flush");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * Stops the writer thread after all blocks in the buffer have been written, and removes the shutdown hook.
+     */
+    void close() {
+        running = false;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException ise) {
+            // The JVM is already shutting down, and the shutdown hook has been started already.
+        }
+    }
+
+    /**
+     * Drains the buffer and writes the blocks in batches to the sink. Runs on the writer thread.
+     */
+    private void drain() {
+        StringBuilder batch = new StringBuilder();
+        long polledCount = 0L;
+        long batchStart = 0L;
+        while (true) {
+            String block = buffer.poll();
+            if (block == null) {
+                if (batch.length() > 0) {
+                    long remainingNanos = flushIntervalNanos == 0L ? 0L
+                            : flushIntervalNanos - (System.nanoTime() - batchStart);
+                    if (remainingNanos <= 0L || writtenCount < flushTarget || !running) {
+                        writeBatch(batch, polledCount);
+                    } else {
+                        sleeping = true;
+                        if (buffer.getEnqueuedCount() == polledCount) {
+                            LockSupport.parkNanos(this, remainingNanos);
+                        }
+                        sleeping = false;
+                    }
+                    continue;
+                }
+                if (!running) {
+                    return;
+                }
+                sleeping = true;
+                block = buffer.poll();
+                if (block == null) {
+                    LockSupport.park(this);
+                    sleeping = false;
+                    continue;
+                }
+                sleeping = false;
+            }
+            if (batch.length() == 0 && flushIntervalNanos != 0L) {
+                batchStart = System.nanoTime();
+            }
+            batch.append(block);
+            polledCount++;
+            if (polledCount - writtenCount >= batchSize) {
+                writeBatch(batch, polledCount);
+            }
+        }
+    }
+
+    /**
+     * Waits until all blocks that have been added to the buffer so far are written to the sink.
+     */
+    void flush() {
+        long target = buffer.getEnqueuedCount();
+        if (target > flushTarget) {
+            flushTarget = target;
+        }
+        while (writtenCount < target && writerThread.isAlive()) {
+            LockSupport.unpark(writerThread);
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+
+    /**
+     * Returns the sink to which the blocks are written.
+     *
+     * @return The sink to which the blocks are written.
+     */
+    Sink getSink() {
+        return sink;
+    }
+
+    /**
+     * Sets the sink to which the blocks should be written, after all blocks in the buffer have been written to the
+     * current sink.
+     *
+     * @param sink The sink to which the blocks should be written.
+     */
+    void setSink(final Sink sink) {
+        flush();
+        this.sink = sink;
+    }
+
+    /**
+     * Adds a block to the buffer, applying the full buffer policy if the buffer is full.
+     *
+     * @param block The block to be written.
+     */
+    void write(final String block) {
+        if (!buffer.offer(block)) {
+            switch (fullBufferPolicy) {
+            case BLOCK:
+                do {
+                    LockSupport.unpark(writerThread);
+                    LockSupport.parkNanos(PARK_NANOS);
+                } while (!buffer.offer(block));
+                break;
+            case DROP_AND_COUNT:
+                droppedCount.incrementAndGet();
+                return;
+            default:
+                return;
+            }
+        }
+        if (sleeping) {
+            sleeping = false;
+            LockSupport.unpark(writerThread);
+        }
+    }
+
+    /**
+     * Writes a batch to the sink with a single call and clears the batch.
+     *
+     * @param batch       The batch to be written.
+     * @param polledCount The total number of blocks polled from the buffer, including the ones in the batch.
+     */
+    private void writeBatch(final StringBuilder batch, final long polledCount) {
+        Sink currentSink = sink;
+        currentSink.write(batch);
+        currentSink.flush();
+        batch.setLength(0);
+        writtenCount = polledCount;
+    }
+}
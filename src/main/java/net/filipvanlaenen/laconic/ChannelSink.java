@@ -0,0 +1,62 @@
+package net.filipvanlaenen.laconic;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A sink encoding the blocks of log messages to UTF-8 and writing them to a channel. Every block is encoded in a single
+ * pass into a reusable direct byte buffer, and written to the channel with a single write operation. Like a
+ * PrintStream, the sink doesn't propagate I/O errors to the logging threads.
+ */
+final class ChannelSink implements Sink {
+    /**
+     * The initial capacity of the byte buffers.
+     */
+    private static final int INITIAL_CAPACITY = 8_192;
+    /**
+     * The reusable byte buffer for the current thread.
+     */
+    private static final ThreadLocal<ByteBuffer> BUFFER =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(INITIAL_CAPACITY));
+
+    /**
+     * The channel to which the blocks are written.
+     */
+    private final WritableByteChannel channel;
+
+    /**
+     * Constructor taking the channel as its parameter.
+     *
+     * @param channel The channel to which the blocks should be written.
+     */
+    ChannelSink(final WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void write(final CharSequence block) {
+        ByteBuffer buffer = BUFFER.get();
+        int maximumLength = block.length() * Utf8.MAXIMUM_BYTES_PER_CHAR;
+        if (buffer.capacity() < maximumLength) {
+            buffer = ByteBuffer.allocateDirect(Integer.highestOneBit(maximumLength) << 1);
+            BUFFER.set(buffer);
+        }
+        buffer.clear();
+        Utf8.encode(block, buffer);
+        buffer.flip();
+        try {
+            synchronized (channel) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        } catch (IOException ioe) {
+            // Logging should never make the program fail, so the block is lost.
+        }
+    }
+}
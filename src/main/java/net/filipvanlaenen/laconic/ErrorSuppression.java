@@ -0,0 +1,298 @@
+package net.filipvanlaenen.laconic;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Class suppressing repeated errors. Errors are fingerprinted on their message and the formats of the last messages on
+ * their tokens. Within a window, only the first occurrences of an error with the same fingerprint are logged in full,
+ * and the repetitions are counted and collapsed into a summary once the window has passed. If an emitter is provided, a
+ * dedicated sweeper thread hands the summaries to the emitter as soon as their windows have passed, such that they
+ * don't have to wait for the next message to be logged.
+ */
+final class ErrorSuppression {
+    /**
+     * A record holding a summary for the repetitions of an error that have been suppressed.
+     *
+     * @param error       The first error of the window in which the repetitions were suppressed.
+     * @param repetitions The number of repetitions that were suppressed.
+     * @param timestamp   The timestamp of the summary in milliseconds since the epoch.
+     */
+    record Summary(Message error, int repetitions, long timestamp) {
+        /**
+         * Returns the message of the summary.
+         *
+         * @return The message of the summary.
+         */
+        String message() {
+            return "Repeated " + repetitions + " more time" + (repetitions == 1 ? "" : "s") + ": " + error.message();
+        }
+    }
+
+    /**
+     * Class keeping track of the occurrences of an error with the same fingerprint within a window.
+     */
+    private static final class Occurrences {
+        /**
+         * The first error of the window.
+         */
+        private Message firstError;
+        /**
+         * The start of the window in milliseconds since the epoch.
+         */
+        private long windowStart;
+        /**
+         * The number of errors logged in full within the window.
+         */
+        private int logged;
+        /**
+         * The number of errors suppressed within the window.
+         */
+        private int suppressed;
+        /**
+         * Whether the occurrences have been removed from the map with occurrences.
+         */
+        private boolean removed;
+
+        /**
+         * Constructor taking the first error as its parameter.
+         *
+         * @param error The first error.
+         */
+        private Occurrences(final Message error) {
+            startWindow(error);
+        }
+
+        /**
+         * Starts a new window.
+         *
+         * @param error The first error of the window.
+         */
+        private void startWindow(final Message error) {
+            firstError = error;
+            windowStart = error.timestamp();
+            logged = 0;
+            suppressed = 0;
+        }
+    }
+
+    /**
+     * The length of the window in milliseconds.
+     */
+    private final long window;
+    /**
+     * The number of occurrences logged in full within a window.
+     */
+    private final int occurrencesInFull;
+    /**
+     * The occurrences by fingerprint.
+     */
+    private final Map<Long, Occurrences> occurrences = new ConcurrentHashMap<Long, Occurrences>();
+    /**
+     * The summaries that are pending to be logged.
+     */
+    private final Queue<Summary> pendingSummaries = new ConcurrentLinkedQueue<Summary>();
+    /**
+     * The emitter for the pending summaries, or null if the pending summaries are only polled.
+     */
+    private final Consumer<ErrorSuppression> emitter;
+    /**
+     * The thread sweeping the occurrences when their windows have passed, or null if there's no emitter.
+     */
+    private final Thread sweeperThread;
+    /**
+     * The time at which the occurrences should be swept next, in milliseconds since the epoch.
+     */
+    private volatile long nextSweep;
+    /**
+     * Whether the sweeper thread should keep on running.
+     */
+    private volatile boolean running = true;
+
+    /**
+     * Constructor taking the length of the window and the number of occurrences to be logged in full within a window
+     * as its parameters.
+     *
+     * @param window            The length of the window in milliseconds.
+     * @param occurrencesInFull The number of occurrences logged in full within a window.
+     */
+    ErrorSuppression(final long window, final int occurrencesInFull) {
+        this(window, occurrencesInFull, null);
+    }
+
+    /**
+     * Constructor taking the length of the window, the number of occurrences to be logged in full within a window and
+     * the emitter for the pending summaries as its parameters. If the emitter isn't null, a sweeper thread is started
+     * that hands the summaries to the emitter when their windows have passed.
+     *
+     * @param window            The length of the window in milliseconds.
+     * @param occurrencesInFull The number of occurrences logged in full within a window.
+     * @param emitter           The emitter for the pending summaries, or null if the pending summaries are only polled.
+     */
+    ErrorSuppression(final long window, final int occurrencesInFull, final Consumer<ErrorSuppression> emitter) {
+        this.window = window;
+        this.occurrencesInFull = occurrencesInFull;
+        this.emitter = emitter;
+        if (emitter == null) {
+            sweeperThread = null;
+        } else {
+            sweeperThread = new Thread(this::sweepPeriodically, "laconic-suppression-sweeper");
+            sweeperThread.setDaemon(true);
+            sweeperThread.start();
+        }
+    }
+
+    /**
+     * Stops the sweeper thread, if there is one.
+     */
+    void close() {
+        running = false;
+        if (sweeperThread != null) {
+            LockSupport.unpark(sweeperThread);
+            try {
+                sweeperThread.join();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Calculates the fingerprint of an error. The message of the error is fingerprinted including the values formatted
+     * into it, such that errors on different subjects aren't taken for repetitions of each other, whereas only the
+     * formats of the messages on the tokens are fingerprinted.
+     *
+     * @param error  The error.
+     * @param tokens The tokens with log messages that are relevant for this error.
+     * @return The fingerprint of the error.
+     */
+    static long fingerprint(final Message error, final Token[] tokens) {
+        long fingerprint = Objects.hashCode(error.message());
+        for (Token token : tokens) {
+            fingerprint = Token.FINGERPRINT_MULTIPLIER * fingerprint + token.fingerprint();
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Registers an occurrence of an error, and returns whether it should be logged in full. If the window for the
+     * fingerprint has passed, a summary for the repetitions suppressed in that window is added to the pending
+     * summaries.
+     *
+     * @param fingerprint The fingerprint of the error.
+     * @param error       The error.
+     * @return True if the error should be logged in full.
+     */
+    boolean admit(final long fingerprint, final Message error) {
+        while (true) {
+            Occurrences entry = occurrences.computeIfAbsent(fingerprint, f -> new Occurrences(error));
+            synchronized (entry) {
+                if (entry.removed) {
+                    continue;
+                }
+                if (error.timestamp() - entry.windowStart >= window) {
+                    addSummary(entry, error.timestamp());
+                    entry.startWindow(error);
+                }
+                if (entry.logged < occurrencesInFull) {
+                    entry.logged++;
+                    return true;
+                }
+                entry.suppressed++;
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Adds a summary to the pending summaries if repetitions have been suppressed.
+     *
+     * @param entry     The occurrences.
+     * @param timestamp The timestamp of the summary.
+     */
+    private void addSummary(final Occurrences entry, final long timestamp) {
+        if (entry.suppressed > 0) {
+            pendingSummaries.add(new Summary(entry.firstError, entry.suppressed, timestamp));
+            entry.suppressed = 0;
+        }
+    }
+
+    /**
+     * Returns and removes the next pending summary.
+     *
+     * @return The next pending summary, or null if there are no pending summaries.
+     */
+    Summary pollSummary() {
+        return pendingSummaries.poll();
+    }
+
+    /**
+     * Adds summaries for the windows that have passed to the pending summaries, and removes their occurrences. The
+     * occurrences are only swept once per window length, unless the sweep is forced, in which case summaries are added
+     * for all suppressed repetitions.
+     *
+     * @param now   The current time in milliseconds since the epoch.
+     * @param force Whether summaries should be added for all suppressed repetitions.
+     */
+    void sweep(final long now, final boolean force) {
+        if (!force && now < nextSweep) {
+            return;
+        }
+        sweepExpired(now, force);
+    }
+
+    /**
+     * Adds summaries for the windows that have passed to the pending summaries, and removes their occurrences, and
+     * returns when the first of the remaining windows will pass.
+     *
+     * @param now   The current time in milliseconds since the epoch.
+     * @param force Whether summaries should be added for all suppressed repetitions.
+     * @return The time at which the first of the remaining windows will pass, in milliseconds since the epoch.
+     */
+    private long sweepExpired(final long now, final boolean force) {
+        nextSweep = now + window;
+        long firstExpiry = now + window;
+        for (Map.Entry<Long, Occurrences> mapEntry : occurrences.entrySet()) {
+            Occurrences entry = mapEntry.getValue();
+            synchronized (entry) {
+                if (now - entry.windowStart >= window) {
+                    addSummary(entry, now);
+                    entry.removed = true;
+                    occurrences.remove(mapEntry.getKey(), entry);
+                } else {
+                    if (force) {
+                        addSummary(entry, now);
+                    }
+                    firstExpiry = Math.min(firstExpiry, entry.windowStart + window);
+                }
+            }
+        }
+        return firstExpiry;
+    }
+
+    /**
+     * Sweeps the occurrences whenever a window passes, and hands the pending summaries to the emitter. Runs on the
+     * sweeper thread. Windows starting while the thread is parked pass at least one window length later, so parking
+     * for at most one window length never misses a window.
+     */
+    private void sweepPeriodically() {
+        while (running) {
+            long now = System.currentTimeMillis();
+            long firstExpiry = sweepExpired(now, false);
+            if (!pendingSummaries.isEmpty()) {
+                emitter.accept(this);
+            }
+            long deadline = Math.max(firstExpiry, now + 1L);
+            long remaining = deadline - System.currentTimeMillis();
+            while (running && remaining > 0L) {
+                LockSupport.parkUntil(this, deadline);
+                remaining = deadline - System.currentTimeMillis();
+            }
+        }
+    }
+}
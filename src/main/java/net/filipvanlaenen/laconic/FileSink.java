@@ -0,0 +1,165 @@
+package net.filipvanlaenen.laconic;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A sink appending the blocks of log messages to a file, rotating the file when it would grow beyond a maximum size.
+ * The blocks are encoded to UTF-8 into a direct byte buffer, which is written to the file with a single write operation
+ * when the sink is flushed or when the buffer is full. When the file is rotated, the file is renamed with the suffix
+ * <code>.1</code>, older backups are shifted to the next suffix, and the oldest backup is deleted. A block is never
+ * split over two files. Like a PrintStream, the sink doesn't propagate I/O errors to the logging threads.
+ */
+public final class FileSink implements Sink {
+    /**
+     * The initial capacity of the byte buffer.
+     */
+    private static final int INITIAL_CAPACITY = 65_536;
+
+    /**
+     * The file to which the blocks are appended.
+     */
+    private final Path file;
+    /**
+     * The maximum size of the file in bytes.
+     */
+    private final long maximumSize;
+    /**
+     * The number of backups to keep when the file is rotated.
+     */
+    private final int numberOfBackups;
+    /**
+     * The byte buffer with the encoded blocks that haven't been written to the file yet.
+     */
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(INITIAL_CAPACITY);
+    /**
+     * The channel to the file.
+     */
+    private FileChannel channel;
+    /**
+     * The size of the file in bytes, including the bytes in the buffer.
+     */
+    private long size;
+
+    /**
+     * Constructor taking the file, the maximum size of the file and the number of backups as its parameters. If the
+     * file exists already, the blocks are appended to it.
+     *
+     * @param file            The file to which the blocks should be appended.
+     * @param maximumSize     The maximum size of the file in bytes.
+     * @param numberOfBackups The number of backups to keep when the file is rotated.
+     * @throws IOException Thrown if the file can't be opened.
+     */
+    public FileSink(final Path file, final long maximumSize, final int numberOfBackups) throws IOException {
+        this.file = file;
+        this.maximumSize = maximumSize;
+        this.numberOfBackups = numberOfBackups;
+        this.channel = open();
+        this.size = channel.size();
+    }
+
+    /**
+     * Returns the path to a backup of the file.
+     *
+     * @param index The index of the backup, starting at one for the most recent backup.
+     * @return The path to the backup.
+     */
+    Path backup(final int index) {
+        return file.resolveSibling(file.getFileName() + "." + index);
+    }
+
+    /**
+     * Writes the buffer to the file and closes the file.
+     */
+    public synchronized void close() {
+        flush();
+        try {
+            channel.close();
+        } catch (IOException ioe) {
+            // Logging should never make the program fail.
+        }
+    }
+
+    @Override
+    public synchronized void flush() {
+        try {
+            writeBuffer();
+        } catch (IOException ioe) {
+            // Logging should never make the program fail, so the blocks in the buffer are lost.
+        }
+    }
+
+    /**
+     * Opens the channel to the file for appending.
+     *
+     * @return The channel to the file.
+     * @throws IOException Thrown if the file can't be opened.
+     */
+    private FileChannel open() throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Rotates the file, shifting the backups and starting a new, empty file.
+     *
+     * @throws IOException Thrown if the file can't be rotated.
+     */
+    private void rotate() throws IOException {
+        writeBuffer();
+        channel.close();
+        if (numberOfBackups == 0) {
+            Files.deleteIfExists(file);
+        } else {
+            for (int i = numberOfBackups - 1; i > 0; i--) {
+                if (Files.exists(backup(i))) {
+                    Files.move(backup(i), backup(i + 1), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            Files.move(file, backup(1), StandardCopyOption.REPLACE_EXISTING);
+        }
+        channel = open();
+        size = 0L;
+    }
+
+    @Override
+    public synchronized void write(final CharSequence block) {
+        int length = Utf8.encodedLength(block);
+        try {
+            if (size > 0L && size + length > maximumSize) {
+                rotate();
+            }
+            if (buffer.remaining() < length) {
+                writeBuffer();
+                if (buffer.capacity() < length) {
+                    buffer = ByteBuffer.allocateDirect(Integer.highestOneBit(length) << 1);
+                }
+            }
+        } catch (IOException ioe) {
+            // Logging should never make the program fail, so the block is lost.
+            return;
+        }
+        Utf8.encode(block, buffer);
+        size += length;
+    }
+
+    /**
+     * Writes the buffer to the file with a single write operation, and clears the buffer.
+     *
+     * @throws IOException Thrown if the buffer can't be written to the file.
+     */
+    private void writeBuffer() throws IOException {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } finally {
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package net.filipvanlaenen.laconic;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A flight recorder appending the messages logged to tokens to a fixed-size ring in a memory-mapped file. Since the
+ * operating system writes the mapped pages back to the file, the history of the tokens survives the JVM being killed,
+ * and can be read back with {@link FlightRecording}.
+ *
+ * The file starts with a header holding a magic number, the capacity of the ring and the write position. The write
+ * position only increases, and an entry is written at the write position modulo the capacity. Threads claim the space
+ * for an entry by advancing the write position with a compare-and-set on the mapping, without locking. Every entry
+ * starts with its own position, its length and its kind, and is aligned to eight bytes. The position is written last,
+ * such that a reader can tell complete entries from entries that were being written, and from older entries that have
+ * been overwritten. An entry never wraps around the end of the ring; if it doesn't fit, the rest of the ring is filled
+ * with padding. All pages of the ring are touched when the flight recorder is created, such that the logging threads
+ * don't run into page faults the first time the ring is filled.
+ */
+final class FlightRecorder {
+    /**
+     * The magic number at the start of the file.
+     */
+    static final long MAGIC = 0x4C41434F4E494331L;
+    /**
+     * The offset of the capacity of the ring in the header.
+     */
+    static final int CAPACITY_OFFSET = 8;
+    /**
+     * The offset of the write position in the header.
+     */
+    static final int WRITE_POSITION_OFFSET = 16;
+    /**
+     * The size of the header.
+     */
+    static final int HEADER_SIZE = 64;
+    /**
+     * The alignment of the entries.
+     */
+    static final int ALIGNMENT = 8;
+    /**
+     * The offset of the length in an entry.
+     */
+    static final int LENGTH_OFFSET = Long.BYTES;
+    /**
+     * The offset of the kind in an entry.
+     */
+    static final int KIND_OFFSET = LENGTH_OFFSET + Integer.BYTES;
+    /**
+     * The size of the fixed part of an entry.
+     */
+    static final int ENTRY_HEADER_SIZE = KIND_OFFSET + 1;
+    /**
+     * The kind of entry for a message appended to tokens.
+     */
+    static final byte MESSAGE = 0;
+    /**
+     * The kind of entry for a token cloned from another token.
+     */
+    static final byte CLONE = 1;
+    /**
+     * The kind of entry padding the rest of the ring.
+     */
+    static final byte PADDING = 2;
+    /**
+     * The view for atomic access to longs in the mapping.
+     */
+    private static final VarHandle LONG_VIEW =
+            MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+    /**
+     * The minimal capacity of the ring in bytes.
+     */
+    static final int MINIMAL_CAPACITY = 4_096;
+    /**
+     * The size of a page.
+     */
+    private static final int PAGE_SIZE = 4_096;
+
+    /**
+     * The channel to the file.
+     */
+    private final FileChannel channel;
+    /**
+     * The mapping of the file.
+     */
+    private final MappedByteBuffer mapping;
+    /**
+     * The capacity of the ring in bytes.
+     */
+    private final int capacity;
+
+    /**
+     * Constructor taking the file and the capacity of the ring as its parameters. The file is overwritten.
+     *
+     * @param file     The file.
+     * @param capacity The capacity of the ring in bytes, rounded down to a multiple of the alignment.
+     * @throws IOException Thrown if the file can't be created or mapped.
+     */
+    FlightRecorder(final Path file, final int capacity) throws IOException {
+        this.capacity = capacity & -ALIGNMENT;
+        if (this.capacity < MINIMAL_CAPACITY) {
+            throw new IllegalArgumentException("The capacity of the flight recorder should be at least "
+                    + MINIMAL_CAPACITY + " bytes.");
+        }
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        mapping = channel.map(FileChannel.MapMode.READ_WRITE, 0L, (long) HEADER_SIZE + this.capacity);
+        mapping.putLong(0, MAGIC);
+        mapping.putLong(CAPACITY_OFFSET, this.capacity);
+        for (int offset = HEADER_SIZE; offset < HEADER_SIZE + this.capacity; offset += PAGE_SIZE) {
+            mapping.put(offset, (byte) 0);
+        }
+        LONG_VIEW.setRelease(mapping, WRITE_POSITION_OFFSET, 0L);
+    }
+
+    /**
+     * Rounds a size up to the alignment.
+     *
+     * @param size The size.
+     * @return The size rounded up to the alignment.
+     */
+    private static long align(final long size) {
+        return (size + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+
+    /**
+     * Claims space for an entry in the ring, padding the rest of the ring if the entry doesn't fit.
+     *
+     * @param size The size of the entry, aligned.
+     * @return The position of the entry.
+     */
+    private long claim(final int size) {
+        while (true) {
+            long position = (long) LONG_VIEW.getVolatile(mapping, WRITE_POSITION_OFFSET);
+            int remaining = capacity - (int) (position % capacity);
+            long start = remaining < size ? position + remaining : position;
+            if (LONG_VIEW.compareAndSet(mapping, WRITE_POSITION_OFFSET, position, start + size)) {
+                if (start != position && remaining >= ENTRY_HEADER_SIZE) {
+                    int offset = HEADER_SIZE + (int) (position % capacity);
+                    mapping.putInt(offset + LENGTH_OFFSET, remaining);
+                    mapping.put(offset + KIND_OFFSET, PADDING);
+                    LONG_VIEW.setRelease(mapping, offset, position);
+                }
+                return start;
+            }
+        }
+    }
+
+    /**
+     * Flushes the mapping to the file and closes the file.
+     */
+    void close() {
+        mapping.force();
+        try {
+            channel.close();
+        } catch (IOException ioe) {
+            // The mapping has been flushed already.
+        }
+    }
+
+    /**
+     * Commits an entry by writing its position, length and kind.
+     *
+     * @param position The position of the entry.
+     * @param offset   The offset of the entry in the mapping.
+     * @param size     The size of the entry.
+     * @param kind     The kind of the entry.
+     */
+    private void commit(final long position, final int offset, final int size, final byte kind) {
+        mapping.putInt(offset + LENGTH_OFFSET, size);
+        mapping.put(offset + KIND_OFFSET, kind);
+        LONG_VIEW.setRelease(mapping, offset, position);
+    }
+
+    /**
+     * Returns the identifier of a token in the flight recording, assigning a new one if needed.
+     *
+     * @param token The token.
+     * @return The identifier of the token.
+     */
+    private long idOf(final Token token) {
+        return token.flightRecorderId();
+    }
+
+    /**
+     * Records that a token has been cloned from a source token.
+     *
+     * @param token       The new token.
+     * @param sourceToken The source token.
+     */
+    void recordClone(final Token token, final Token sourceToken) {
+        int size = (int) align(ENTRY_HEADER_SIZE + 2 * Long.BYTES);
+        long position = claim(size);
+        int offset = HEADER_SIZE + (int) (position % capacity);
+        mapping.putLong(offset + ENTRY_HEADER_SIZE, idOf(token));
+        mapping.putLong(offset + ENTRY_HEADER_SIZE + Long.BYTES, idOf(sourceToken));
+        commit(position, offset, size, CLONE);
+    }
+
+    /**
+     * Records that a message has been appended to a new token and up to two other tokens.
+     *
+     * @param message The message.
+     * @param token   The new token.
+     * @param token1  The first other token, or null.
+     * @param token2  The second other token, or null.
+     */
+    void recordMessage(final Message message, final Token token, final Token token1, final Token token2) {
+        recordMessage(message, token, token1, token2, null);
+    }
+
+    /**
+     * Records that a message has been appended to a new token and other tokens.
+     *
+     * @param message The message.
+     * @param token   The new token.
+     * @param tokens  The other tokens.
+     */
+    void recordMessage(final Message message, final Token token, final Token[] tokens) {
+        recordMessage(message, token, null, null, tokens);
+    }
+
+    /**
+     * Records that a message has been appended to a new token and other tokens. Messages that don't fit into the ring
+     * aren't recorded.
+     *
+     * @param message The message.
+     * @param token   The new token, or null.
+     * @param token1  The first other token, or null.
+     * @param token2  The second other token, or null.
+     * @param tokens  The other tokens, or null.
+     */
+    private void recordMessage(final Message message, final Token token, final Token token1, final Token token2,
+            final Token[] tokens) {
+        int numberOfTokens = (token == null ? 0 : 1) + (token1 == null ? 0 : 1) + (token2 == null ? 0 : 1)
+                + (tokens == null ? 0 : tokens.length);
+        long size = align((long) ENTRY_HEADER_SIZE + Integer.BYTES + (long) numberOfTokens * Long.BYTES
+                + MessageArena.encodedSize(message));
+        if (size > capacity) {
+            return;
+        }
+        long position = claim((int) size);
+        int offset = HEADER_SIZE + (int) (position % capacity);
+        ByteBuffer writer = mapping.duplicate();
+        writer.position(offset + ENTRY_HEADER_SIZE);
+        writer.putInt(numberOfTokens);
+        if (token != null) {
+            writer.putLong(token.newTokenFlightRecorderId());
+        }
+        if (token1 != null) {
+            writer.putLong(idOf(token1));
+        }
+        if (token2 != null) {
+            writer.putLong(idOf(token2));
+        }
+        if (tokens != null) {
+            for (Token t : tokens) {
+                writer.putLong(idOf(t));
+            }
+        }
+        MessageArena.encode(writer, message);
+        commit(position, offset, (int) size, MESSAGE);
+    }
+
+    /**
+     * Records that a batch of messages has been appended to tokens, without a new token.
+     *
+     * @param messages The messages.
+     * @param tokens   The tokens.
+     */
+    void recordMessages(final Message[] messages, final Token[] tokens) {
+        for (Message message : messages) {
+            recordMessage(message, null, null, null, tokens);
+        }
+    }
+}
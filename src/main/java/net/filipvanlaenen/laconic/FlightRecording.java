@@ -0,0 +1,156 @@
+package net.filipvanlaenen.laconic;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A flight recording read back from a file written in flight recorder mode. The chains of messages of the tokens are
+ * rebuilt from the entries in the ring that are still complete. Messages that have been overwritten in the ring, and
+ * entries that were being written when the JVM was killed, are missing from the chains.
+ *
+ * The recording can be inspected from the command line too, printing the chains of all tokens:
+ *
+ * <pre>
+ * java -cp laconic.jar:kolektoj.jar net.filipvanlaenen.laconic.FlightRecording laconic.rec
+ * </pre>
+ */
+public final class FlightRecording {
+    /**
+     * The format for the timestamp.
+     */
+    private static final TimestampFormat TIMESTAMP_FORMAT = new TimestampFormat(ZoneId.systemDefault());
+    /**
+     * The line separator.
+     */
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    /**
+     * The chains of messages by token identifier.
+     */
+    private final Map<Long, List<Message>> chains = new TreeMap<Long, List<Message>>();
+
+    /**
+     * Private constructor, recordings are created by reading a file.
+     */
+    private FlightRecording() {
+    }
+
+    /**
+     * Returns the identifiers of the tokens in the recording, in ascending order.
+     *
+     * @return The identifiers of the tokens in the recording.
+     */
+    public long[] getTokenIds() {
+        return chains.keySet().stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /**
+     * Prints the chains of all tokens in a flight recording to standard out.
+     *
+     * @param args The path to the flight recording.
+     * @throws IOException Thrown if the flight recording can't be read.
+     */
+    public static void main(final String[] args) throws IOException {
+        FlightRecording recording = read(Path.of(args[0]));
+        for (long tokenId : recording.getTokenIds()) {
+            System.out.print("Token " + tokenId + ":" + LINE_SEPARATOR + recording.render(tokenId) + LINE_SEPARATOR);
+        }
+    }
+
+    /**
+     * Reads a flight recording from a file.
+     *
+     * @param file The file.
+     * @return The flight recording.
+     * @throws IOException Thrown if the file can't be read, or isn't a flight recording.
+     */
+    public static FlightRecording read(final Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+            if (mapping.capacity() < FlightRecorder.HEADER_SIZE || mapping.getLong(0) != FlightRecorder.MAGIC) {
+                throw new IOException("The file isn't a flight recording.");
+            }
+            long capacity = mapping.getLong(FlightRecorder.CAPACITY_OFFSET);
+            if (capacity <= 0L || capacity > mapping.capacity() - FlightRecorder.HEADER_SIZE) {
+                throw new IOException("The flight recording has been truncated.");
+            }
+            long writePosition = mapping.getLong(FlightRecorder.WRITE_POSITION_OFFSET);
+            FlightRecording recording = new FlightRecording();
+            long position = Math.max(0L, writePosition - capacity);
+            while (position < writePosition) {
+                int remaining = (int) (capacity - position % capacity);
+                if (remaining < FlightRecorder.ENTRY_HEADER_SIZE) {
+                    position += remaining;
+                    continue;
+                }
+                int offset = FlightRecorder.HEADER_SIZE + (int) (position % capacity);
+                int length = mapping.getInt(offset + FlightRecorder.LENGTH_OFFSET);
+                if (mapping.getLong(offset) != position || length < FlightRecorder.ENTRY_HEADER_SIZE
+                        || length > remaining || position + length > writePosition) {
+                    position += FlightRecorder.ALIGNMENT;
+                    continue;
+                }
+                recording.readEntry(mapping, offset, length);
+                position += length;
+            }
+            return recording;
+        }
+    }
+
+    /**
+     * Reads an entry, and adds its message to the chains of the tokens, or clones the chain of a token.
+     *
+     * @param mapping The mapping of the file.
+     * @param offset  The offset of the entry in the mapping.
+     * @param length  The length of the entry.
+     */
+    private void readEntry(final MappedByteBuffer mapping, final int offset, final int length) {
+        int payload = offset + FlightRecorder.ENTRY_HEADER_SIZE;
+        byte kind = mapping.get(offset + FlightRecorder.KIND_OFFSET);
+        if (kind == FlightRecorder.CLONE) {
+            List<Message> sourceChain = chains.get(mapping.getLong(payload + Long.BYTES));
+            chains.put(mapping.getLong(payload),
+                    sourceChain == null ? new ArrayList<Message>() : new ArrayList<Message>(sourceChain));
+        } else if (kind == FlightRecorder.MESSAGE) {
+            int numberOfTokens = mapping.getInt(payload);
+            if (numberOfTokens < 1 || numberOfTokens > length / Long.BYTES) {
+                return;
+            }
+            int messageOffset = payload + Integer.BYTES + numberOfTokens * Long.BYTES;
+            Message message = MessageArena.decode(mapping, messageOffset);
+            for (int i = 0; i < numberOfTokens; i++) {
+                long tokenId = mapping.getLong(payload + Integer.BYTES + i * Long.BYTES);
+                chains.computeIfAbsent(tokenId, id -> new ArrayList<Message>()).add(message);
+            }
+        }
+    }
+
+    /**
+     * Renders the chain of messages of a token, in the same format as the messages of a token are logged as part of
+     * an error.
+     *
+     * @param tokenId The identifier of the token.
+     * @return The rendered chain of messages, or an empty string if the token isn't in the recording.
+     */
+    public String render(final long tokenId) {
+        List<Message> chain = chains.getOrDefault(tokenId, List.of());
+        StringBuilder block = new StringBuilder();
+        int lastIndex = chain.size() - 1;
+        for (int i = 0; i <= lastIndex; i++) {
+            Message message = chain.get(i);
+            TIMESTAMP_FORMAT.appendTo(block, message.timestamp());
+            block.append(i == lastIndex ? " ‡ ⬐ " : " ‡   ");
+            message.appendTo(block);
+            block.append(LINE_SEPARATOR);
+        }
+        return block.toString();
+    }
+}
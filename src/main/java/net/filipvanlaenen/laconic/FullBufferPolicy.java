@@ -0,0 +1,19 @@
+package net.filipvanlaenen.laconic;
+
+/**
+ * Enumeration with the policies for a logger in asynchronous mode when its buffer is full.
+ */
+public enum FullBufferPolicy {
+    /**
+     * The logging thread waits until there's room in the buffer again.
+     */
+    BLOCK,
+    /**
+     * The message is dropped.
+     */
+    DROP,
+    /**
+     * The message is dropped, and the number of dropped messages is counted.
+     */
+    DROP_AND_COUNT
+}
@@ -0,0 +1,192 @@
+package net.filipvanlaenen.laconic;
+
+/**
+ * Utility class rendering errors, summaries of suppressed errors and progress messages as JSON Lines. Every object is
+ * streamed directly into a string builder that is reused by the thread, without building an intermediate object tree,
+ * and messages are rendered into a second reusable string builder before they're escaped. An error is rendered as
+ * follows, with one array per token holding the messages of its chain, and timestamps in milliseconds since the epoch:
+ *
+ * <pre>
+ * {"type":"error","timestamp":1729152651432,"message":"Baz","chains":[[{"timestamp":1729152651431,"message":"Bar"}]]}
+ * </pre>
+ *
+ * Like in the text format, a message that has been added to more than one of the tokens is rendered only once, in the
+ * chain of the first token it appears in. The chain of a token for a unit of work that hasn't been sampled is rendered
+ * as <code>null</code>.
+ */
+final class JsonLinesRenderer {
+    /**
+     * The initial capacity of the reusable string builders.
+     */
+    private static final int INITIAL_CAPACITY = 1_024;
+    /**
+     * The maximum capacity of a string builder kept for reuse, such that a single large error doesn't retain a large
+     * string builder forever.
+     */
+    private static final int MAXIMUM_RETAINED_CAPACITY = 65_536;
+    /**
+     * The highest character that has to be escaped as a control character.
+     */
+    private static final char MAXIMUM_CONTROL_CHAR = 0x1F;
+    /**
+     * The hexadecimal digits.
+     */
+    private static final char[] HEXADECIMAL_DIGITS = "0123456789abcdef".toCharArray();
+    /**
+     * The number of bits in a hexadecimal digit.
+     */
+    private static final int BITS_PER_HEXADECIMAL_DIGIT = 4;
+    /**
+     * The mask for a hexadecimal digit.
+     */
+    private static final int HEXADECIMAL_DIGIT_MASK = 0xF;
+    /**
+     * The reusable string builder for the rendered objects.
+     */
+    private static final ThreadLocal<StringBuilder> BLOCK =
+            ThreadLocal.withInitial(() -> new StringBuilder(INITIAL_CAPACITY));
+    /**
+     * The reusable string builder for the messages to be escaped.
+     */
+    private static final ThreadLocal<StringBuilder> SCRATCH =
+            ThreadLocal.withInitial(() -> new StringBuilder(INITIAL_CAPACITY));
+
+    /**
+     * Private constructor to prevent instantiation of this utility class.
+     */
+    private JsonLinesRenderer() {
+    }
+
+    /**
+     * Appends a character sequence to a string builder, escaped as the content of a JSON string.
+     *
+     * @param block The string builder.
+     * @param text  The character sequence to be escaped.
+     */
+    static void appendEscaped(final StringBuilder block, final CharSequence text) {
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            switch (c) {
+            case '"':
+                block.append("\\\"");
+                break;
+            case '\\':
+                block.append("\\\\");
+                break;
+            case '\n':
+                block.append("\\n");
+                break;
+            case '\r':
+                block.append("\\r");
+                break;
+            case '\t':
+                block.append("\\t");
+                break;
+            default:
+                if (c <= MAXIMUM_CONTROL_CHAR) {
+                    block.append("\\u00").append(HEXADECIMAL_DIGITS[c >> BITS_PER_HEXADECIMAL_DIGIT])
+                            .append(HEXADECIMAL_DIGITS[c & HEXADECIMAL_DIGIT_MASK]);
+                } else {
+                    block.append(c);
+                }
+            }
+        }
+    }
+
+    /**
+     * Appends the timestamp and the message fields of a message to a string builder.
+     *
+     * @param block   The string builder.
+     * @param message The message.
+     */
+    private static void appendFields(final StringBuilder block, final Message message) {
+        block.append("\"timestamp\":").append(message.timestamp()).append(",\"message\":\"");
+        StringBuilder scratch = reusable(SCRATCH);
+        message.appendTo(scratch);
+        appendEscaped(block, scratch);
+        block.append('"');
+    }
+
+    /**
+     * Renders an error with the chains of messages of its tokens.
+     *
+     * @param error  The message describing the error.
+     * @param tokens The tokens with log messages that are relevant for this error.
+     * @return A reusable string builder with the rendered error.
+     */
+    static StringBuilder renderError(final Message error, final Token[] tokens) {
+        StringBuilder block = reusable(BLOCK);
+        block.append("{\"type\":\"error\",");
+        appendFields(block, error);
+        block.append(",\"chains\":[");
+        Message[][] distinctMessages = Token.getDistinctMessages(tokens);
+        for (int t = 0; t < tokens.length; t++) {
+            if (t > 0) {
+                block.append(',');
+            }
+            if (!tokens[t].isSampled()) {
+                block.append("null");
+                continue;
+            }
+            block.append('[');
+            Message[] messages = distinctMessages[t];
+            for (int i = 0; i < messages.length; i++) {
+                block.append(i == 0 ? "{" : ",{");
+                appendFields(block, messages[i]);
+                block.append('}');
+            }
+            block.append(']');
+        }
+        block.append("]}\n");
+        return block;
+    }
+
+    /**
+     * Renders a progress message.
+     *
+     * @param progress The progress message.
+     * @return A reusable string builder with the rendered progress message.
+     */
+    static StringBuilder renderProgress(final Message progress) {
+        StringBuilder block = reusable(BLOCK);
+        block.append("{\"type\":\"progress\",");
+        appendFields(block, progress);
+        block.append("}\n");
+        return block;
+    }
+
+    /**
+     * Renders a summary of the suppressed repetitions of an error.
+     *
+     * @param summary The summary.
+     * @return A reusable string builder with the rendered summary.
+     */
+    static StringBuilder renderSummary(final ErrorSuppression.Summary summary) {
+        StringBuilder block = reusable(BLOCK);
+        block.append("{\"type\":\"summary\",\"timestamp\":").append(summary.timestamp()).append(",\"message\":\"");
+        StringBuilder scratch = reusable(SCRATCH);
+        summary.error().appendTo(scratch);
+        appendEscaped(block, scratch);
+        block.append("\",\"repetitions\":").append(summary.repetitions()).append("}\n");
+        return block;
+    }
+
+    /**
+     * Returns the reusable string builder of the current thread, cleared, or a new one if the reusable string builder
+     * has grown too large.
+     *
+     * @param reusableBuilder The thread local holding the reusable string builder.
+     * @return The reusable string builder, cleared.
+     */
+    private static StringBuilder reusable(final ThreadLocal<StringBuilder> reusableBuilder) {
+        StringBuilder builder = reusableBuilder.get();
+        if (builder.capacity() > MAXIMUM_RETAINED_CAPACITY) {
+            builder = new StringBuilder(INITIAL_CAPACITY);
+            reusableBuilder.set(builder);
+        } else {
+            builder.setLength(0);
+        }
+        return builder;
+    }
+}
@@ -1,24 +1,44 @@
 package net.filipvanlaenen.laconic;
 
+import java.io.IOException;
 import java.io.PrintStream;
-import java.sql.Timestamp;
-import java.text.SimpleDateFormat;
+import java.io.UncheckedIOException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.ZoneId;
+import java.util.Arrays;
 import java.util.Locale;
-
-import net.filipvanlaenen.kolektoj.OrderedCollection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
 
 /**
- * Base class for the logging operations.
+ * Base class for the logging operations. A logger can be shared between threads: every error and progress message is
+ * rendered in full before it is written to the print stream or the channel in a single call, such that messages
+ * logged from different threads don't get interleaved.
  */
 public class Laconic {
     /**
      * The US locale.
      */
-    private static final Locale LOCALE = Locale.US;
+    static final Locale LOCALE = Locale.US;
     /**
      * The format for the timestamp.
      */
-    private static final SimpleDateFormat TIMESTAMP_FORMAT = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSXXX");
+    private static final TimestampFormat TIMESTAMP_FORMAT = new TimestampFormat(ZoneId.systemDefault());
+    /**
+     * The line separator.
+     */
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    /**
+     * An empty array of tokens, used by the overloaded methods without tokens.
+     */
+    private static final Token[] NO_TOKENS = new Token[0];
+    /**
+     * The fan-out of a message appended to a new token and two other tokens.
+     */
+    private static final int FAN_OUT_WITH_TWO_TOKENS = 3;
 
     /**
      * Enumeration with the states for the logger.
@@ -43,17 +63,254 @@ public class Laconic {
      */
     public static final Laconic LOGGER = new Laconic();
     /**
-     * A PrintStream to which the log messages can be appended.
+     * The sink to which the log messages are written.
      */
-    private PrintStream printStream = System.err;
+    private volatile Sink sink = new PrintStreamSink(System.err);
     /**
      * Tracks the state of the logger.
      */
-    private State state = State.EMPTY;
+    private final AtomicReference<State> state = new AtomicReference<State>(State.EMPTY);
     /**
      * Whether messages should be prefixed with a timestamp.
      */
-    private boolean prefixWithTimestamp = true;
+    private volatile boolean prefixWithTimestamp = true;
+    /**
+     * The format in which error and progress messages are written.
+     */
+    private volatile OutputFormat outputFormat = OutputFormat.TEXT;
+    /**
+     * The retention policy for new tokens, or null if tokens retain all their messages.
+     */
+    private volatile RetentionPolicy retentionPolicy;
+    /**
+     * The suppression of repeated errors, or null if repeated errors aren't suppressed.
+     */
+    private volatile ErrorSuppression errorSuppression;
+    /**
+     * The progress coalescer, or null if progress messages are written immediately.
+     */
+    private volatile ProgressCoalescer progressCoalescer;
+    /**
+     * Whether the logger runs in debug mode.
+     */
+    private volatile boolean debugMode;
+    /**
+     * Whether the messages on tokens are stored off-heap.
+     */
+    private volatile boolean offHeapTokenStorage;
+    /**
+     * Whether the messages on the tokens of an error are rendered as a tree.
+     */
+    private volatile boolean treeRendering;
+    /**
+     * The sampler deciding whether new units of work are recorded, or null if all units of work are recorded.
+     */
+    private volatile Sampler sampler;
+    /**
+     * The spill file for the packed messages on tokens, or null if they aren't spilled.
+     */
+    private volatile SpillFile spillFile;
+    /**
+     * The flight recorder, or null if the logger doesn't run in flight recorder mode.
+     */
+    private volatile FlightRecorder flightRecorder;
+    /**
+     * The asynchronous writer, or null if the logger writes synchronously to the print stream.
+     */
+    private volatile AsynchronousWriter asynchronousWriter;
+    /**
+     * The metrics of the logger, or null if metrics are disabled.
+     */
+    private volatile LaconicMetrics metrics;
+    /**
+     * The number of error and progress messages that have been dropped in asynchronous mode.
+     */
+    private final AtomicLong numberOfDroppedMessages = new AtomicLong();
+    /**
+     * The asynchronous writers for the sinks that have been added to the logger.
+     */
+    private volatile AsynchronousWriter[] sinkWriters = new AsynchronousWriter[0];
+
+    /**
+     * Adds a sink to which the log messages are written too. Every error and progress message is rendered only once,
+     * and handed over to the buffer of each sink. Each sink has its own writer thread, writing the messages in batches
+     * of at most the batch size, or after the flush interval if fewer messages have been logged. When the buffer of a
+     * sink is full, the message is dropped for that sink and counted as a dropped message, such that a slow sink never
+     * blocks the logging threads or the other sinks.
+     *
+     * @param additionalSink The sink to which the log messages should be written.
+     * @param bufferCapacity The minimal number of messages the buffer of the sink can hold.
+     * @param batchSize      The maximum number of messages written to the sink in a single batch.
+     * @param flushInterval  The maximal time a message may wait for more messages before it is written to the sink.
+     */
+    public synchronized void addSink(final Sink additionalSink, final int bufferCapacity, final int batchSize,
+            final Duration flushInterval) {
+        AsynchronousWriter[] writers = Arrays.copyOf(sinkWriters, sinkWriters.length + 1);
+        writers[writers.length - 1] = new AsynchronousWriter(additionalSink, bufferCapacity,
+                FullBufferPolicy.DROP_AND_COUNT, numberOfDroppedMessages, batchSize, flushInterval.toNanos());
+        sinkWriters = writers;
+    }
+
+    /**
+     * Returns the current token as an array of tokens, or an empty array if no token scope is open.
+     *
+     * @return The current token as an array of tokens, or an empty array if no token scope is open.
+     */
+    private static Token[] currentTokens() {
+        Token current = TokenScope.current();
+        return current == null ? NO_TOKENS : new Token[] {current};
+    }
+
+    /**
+     * Writes the pending progress message in coalescing progress mode, if there is one.
+     */
+    private void emitPendingProgress() {
+        ProgressCoalescer coalescer = progressCoalescer;
+        if (coalescer != null) {
+            coalescer.emitPending();
+        }
+    }
+
+    /**
+     * Waits until all messages logged so far have been written to the print stream.
+     */
+    public void flush() {
+        emitPendingProgress();
+        ErrorSuppression suppression = errorSuppression;
+        if (suppression != null) {
+            suppression.sweep(System.currentTimeMillis(), true);
+            logSummaries(suppression);
+        }
+        AsynchronousWriter writer = asynchronousWriter;
+        if (writer == null) {
+            sink.flush();
+        } else {
+            writer.flush();
+        }
+        for (AsynchronousWriter sinkWriter : sinkWriters) {
+            sinkWriter.flush();
+        }
+    }
+
+    /**
+     * Returns a snapshot of the metrics of the logger.
+     *
+     * @return A snapshot of the metrics of the logger, or null if metrics are disabled.
+     */
+    public MetricsSnapshot getMetrics() {
+        LaconicMetrics currentMetrics = metrics;
+        return currentMetrics == null ? null : currentMetrics.snapshot();
+    }
+
+    /**
+     * Returns the number of error and progress messages that have been dropped in asynchronous mode or by an added sink
+     * because the buffer was full. Only messages dropped under the {@link FullBufferPolicy#DROP_AND_COUNT} policy are
+     * counted, which is always the policy for added sinks.
+     *
+     * @return The number of error and progress messages that have been dropped.
+     */
+    public long getNumberOfDroppedMessages() {
+        return numberOfDroppedMessages.get();
+    }
+
+    /**
+     * Returns whether a message logged without tokens starts a new unit of work that isn't sampled. If a token scope
+     * is open, the message belongs to the unit of work of the current token.
+     *
+     * @return True if the message starts a new unit of work that isn't sampled.
+     */
+    private boolean isUnsampled() {
+        Sampler currentSampler = sampler;
+        if (currentSampler == null) {
+            return false;
+        }
+        Token current = TokenScope.current();
+        return current == null ? !currentSampler.sample() : !current.isSampled();
+    }
+
+    /**
+     * Returns whether a message logged to a token belongs to a unit of work that isn't sampled.
+     *
+     * @param token The token.
+     * @return True if the token belongs to a unit of work that isn't sampled.
+     */
+    private static boolean isUnsampled(final Token token) {
+        return token == Token.UNSAMPLED;
+    }
+
+    /**
+     * Returns whether a message logged to two tokens belongs only to units of work that aren't sampled.
+     *
+     * @param token1 The first token.
+     * @param token2 The second token.
+     * @return True if both tokens belong to units of work that aren't sampled.
+     */
+    private static boolean isUnsampled(final Token token1, final Token token2) {
+        return token1 == Token.UNSAMPLED && token2 == Token.UNSAMPLED;
+    }
+
+    /**
+     * Returns whether a message logged to three tokens belongs only to units of work that aren't sampled.
+     *
+     * @param token1 The first token.
+     * @param token2 The second token.
+     * @param token3 The third token.
+     * @return True if all three tokens belong to units of work that aren't sampled.
+     */
+    private static boolean isUnsampled(final Token token1, final Token token2, final Token token3) {
+        return token1 == Token.UNSAMPLED && token2 == Token.UNSAMPLED && token3 == Token.UNSAMPLED;
+    }
+
+    /**
+     * Returns whether a message cloning a source token and logged to tokens belongs only to units of work that aren't
+     * sampled. Unlike a message logged to no tokens at all, a message cloning a source token belongs to the unit of
+     * work of the source token if it isn't logged to any other tokens.
+     *
+     * @param sourceToken The token to be cloned.
+     * @param tokens      The tokens.
+     * @return True if the source token and all tokens belong to units of work that aren't sampled.
+     */
+    private static boolean isUnsampled(final Token sourceToken, final Token[] tokens) {
+        if (sourceToken != Token.UNSAMPLED) {
+            return false;
+        }
+        for (Token token : tokens) {
+            if (token != Token.UNSAMPLED) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether a message logged to tokens belongs only to units of work that aren't sampled. A message logged
+     * to no tokens at all is treated like a message logged without tokens, i.e. it belongs to the unit of work of the
+     * current token if a token scope is open, and starts a new unit of work otherwise.
+     *
+     * @param tokens The tokens.
+     * @return True if all tokens belong to units of work that aren't sampled.
+     */
+    private boolean isUnsampled(final Token[] tokens) {
+        if (tokens.length == 0) {
+            return isUnsampled();
+        }
+        for (Token token : tokens) {
+            if (token != Token.UNSAMPLED) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Logs an error with a formatted message. If a token scope is open, the error is logged with the current token.
+     *
+     * @param messageFormat The message format describing the error.
+     * @param number        The double to be included in the error message.
+     */
+    public void logError(final String messageFormat, final double number) {
+        logError(new Message.FormattedDouble(messageFormat, number), currentTokens());
+    }
 
     /**
      * Logs an error with a formatted message.
@@ -63,7 +320,17 @@ public class Laconic {
      * @param tokens        The tokens with log messages that are relevant for this error.
      */
     public void logError(final String messageFormat, final double number, final Token... tokens) {
-        logError(String.format(LOCALE, messageFormat, number), tokens);
+        logError(new Message.FormattedDouble(messageFormat, number), tokens);
+    }
+
+    /**
+     * Logs an error with a formatted message. If a token scope is open, the error is logged with the current token.
+     *
+     * @param messageFormat The message format describing the error.
+     * @param number        The integer to be included in the error message.
+     */
+    public void logError(final String messageFormat, final int number) {
+        logError(new Message.FormattedInteger(messageFormat, number), currentTokens());
     }
 
     /**
@@ -74,7 +341,17 @@ public class Laconic {
      * @param tokens        The tokens with log messages that are relevant for this error.
      */
     public void logError(final String messageFormat, final int number, final Token... tokens) {
-        logError(String.format(LOCALE, messageFormat, number), tokens);
+        logError(new Message.FormattedInteger(messageFormat, number), tokens);
+    }
+
+    /**
+     * Logs an error with a formatted message. If a token scope is open, the error is logged with the current token.
+     *
+     * @param messageFormat The message format describing the error.
+     * @param number        The long to be included in the error message.
+     */
+    public void logError(final String messageFormat, final long number) {
+        logError(new Message.FormattedLong(messageFormat, number), currentTokens());
     }
 
     /**
@@ -85,7 +362,17 @@ public class Laconic {
      * @param tokens        The tokens with log messages that are relevant for this error.
      */
     public void logError(final String messageFormat, final long number, final Token... tokens) {
-        logError(String.format(LOCALE, messageFormat, number), tokens);
+        logError(new Message.FormattedLong(messageFormat, number), tokens);
+    }
+
+    /**
+     * Logs an error with a formatted message. If a token scope is open, the error is logged with the current token.
+     *
+     * @param messageFormat The message format describing the error.
+     * @param text          The text to be included in the error message.
+     */
+    public void logError(final String messageFormat, final String text) {
+        logError(new Message.FormattedText(messageFormat, text), currentTokens());
     }
 
     /**
@@ -96,265 +383,1475 @@ public class Laconic {
      * @param tokens        The tokens with log messages that are relevant for this error.
      */
     public void logError(final String messageFormat, final String text, final Token... tokens) {
-        logError(String.format(LOCALE, messageFormat, text), tokens);
+        logError(new Message.FormattedText(messageFormat, text), tokens);
+    }
+
+    /**
+     * Logs an error. If a token scope is open, the error is logged with the current token.
+     *
+     * @param message The message describing the error.
+     */
+    public void logError(final String message) {
+        logError(new Message.Plain(message), currentTokens());
     }
 
     /**
-     * Logs an error.
+     * Logs an error. A log message that has been added to more than one of the tokens is rendered only once.
      *
      * @param message The message describing the error.
      * @param tokens  The tokens with log messages that are relevant for this error.
      */
     public void logError(final String message, final Token... tokens) {
-        if (state != State.EMPTY) {
-            printStream.println();
-        }
+        logError(new Message.Plain(message), tokens);
+    }
+
+    /**
+     * Logs an error, unless it is suppressed as a repetition of an earlier error.
+     *
+     * @param error  The message describing the error.
+     * @param tokens The tokens with log messages that are relevant for this error.
+     */
+    private void logError(final Message error, final Token[] tokens) {
+        emitPendingProgress();
         for (Token token : tokens) {
-            OrderedCollection<Message> messages = token.getMessages();
-            int lastIndex = messages.size() - 1;
-            for (int i = 0; i < lastIndex; i++) {
-                Message logMessage = messages.getAt(i);
-                printTimestamp(logMessage.timestamp());
-                printStream.print("‡   ");
-                printStream.println(logMessage.message());
+            token.markErrorLogged();
+        }
+        ErrorSuppression suppression = errorSuppression;
+        if (suppression != null) {
+            suppression.sweep(error.timestamp(), false);
+            boolean admitted = suppression.admit(ErrorSuppression.fingerprint(error, tokens), error);
+            logSummaries(suppression);
+            if (!admitted) {
+                LaconicMetrics currentMetrics = metrics;
+                if (currentMetrics != null) {
+                    currentMetrics.errorSuppressed();
+                }
+                return;
             }
-            Message logMessage = messages.getAt(lastIndex);
-            printTimestamp(logMessage.timestamp());
-            printStream.print("‡ ⬐ ");
-            printStream.println(logMessage.message());
         }
-        printTimestamp();
-        printStream.print("‡ ");
-        printStream.println(message);
-        state = State.ERROR_LOGGED;
+        LaconicMetrics currentMetrics = metrics;
+        long renderStart = currentMetrics == null ? 0L : System.nanoTime();
+        write(outputFormat == OutputFormat.JSON_LINES ? JsonLinesRenderer.renderError(error, tokens)
+                : renderError(error, tokens));
+        if (currentMetrics != null) {
+            currentMetrics.errorLogged(System.nanoTime() - renderStart);
+        }
     }
 
     /**
-     * Logs a formatted message and creates a new token.
+     * Logs a formatted message and creates a new token. The message is only formatted when it is rendered as part
+     * of an error.
+     * If a token scope is open, the message is added to the current token too.
      *
      * @param messageFormat The message format.
      * @param number        The double number to be included in the message.
-     * @param tokens        The tokens to which this message should be added.
      * @return A token for this log message.
      */
-    public Token logMessage(final String messageFormat, final double number, final Token... tokens) {
-        return logMessage(String.format(LOCALE, messageFormat, number), tokens);
+    public Token logMessage(final String messageFormat, final double number) {
+        if (isUnsampled()) {
+            return Token.UNSAMPLED;
+        }
+        return appendMessageToCurrentToken(newToken(), new Message.FormattedDouble(messageFormat, number));
     }
 
     /**
-     * Logs a formatted message and creates a new token.
+     * Logs a formatted message and creates a new token. The message is only formatted when it is rendered as part
+     * of an error.
      *
      * @param messageFormat The message format.
-     * @param number        The integer number to be included in the message.
-     * @param tokens        The tokens to which this message should be added.
+     * @param number        The double number to be included in the message.
+     * @param token         The token to which this message should be added.
      * @return A token for this log message.
      */
-    public Token logMessage(final String messageFormat, final int number, final Token... tokens) {
-        return logMessage(String.format(LOCALE, messageFormat, number), tokens);
+    public Token logMessage(final String messageFormat, final double number, final Token token) {
+        if (isUnsampled(token)) {
+            return Token.UNSAMPLED;
+        }
+        return appendMessage(newToken(), new Message.FormattedDouble(messageFormat, number), token);
     }
 
     /**
-     * Logs a formatted message and creates a new token.
+     * Logs a formatted message and creates a new token. The message is only formatted when it is rendered as part
+     * of an error.
      *
      * @param messageFormat The message format.
-     * @param number        The long number to be included in the message.
-     * @param tokens        The tokens to which this message should be added.
+     * @param number        The double number to be included in the message.
+     * @param token1        The first token to which this message should be added.
+     * @param token2        The second token to which this message should be added.
      * @return A token for this log message.
      */
-    public Token logMessage(final String messageFormat, final long number, final Token... tokens) {
-        return logMessage(String.format(LOCALE, messageFormat, number), tokens);
+    public Token logMessage(final String messageFormat, final double number, final Token token1, final Token token2) {
+        if (isUnsampled(token1, token2)) {
+            return Token.UNSAMPLED;
+        }
+        return appendMessage(newToken(), new Message.FormattedDouble(messageFormat, number), token1, token2);
     }
 
     /**
-     * Logs a formatted message and creates a new token.
+     * Logs a formatted message and creates a new token. The message is only formatted when it is rendered as part
+     * of an error.
      *
      * @param messageFormat The message format.
-     * @param text          The text to be included in the message.
+     * @param number        The double number to be included in the message.
      * @param tokens        The tokens to which this message should be added.
      * @return A token for this log message.
      */
-    public Token logMessage(final String messageFormat, final String text, final Token... tokens) {
-        return logMessage(String.format(LOCALE, messageFormat, text), tokens);
+    public Token logMessage(final String messageFormat, final double number, final Token... tokens) {
+        if (isUnsampled(tokens)) {
+            return Token.UNSAMPLED;
+        }
+        return appendMessage(newToken(), new Message.FormattedDouble(messageFormat, number), tokens);
     }
 
     /**
-     * Logs a message and creates a new token.
+     * Logs a formatted message and creates a new token. The message is only formatted when it is rendered as part
+     * of an error.
+     * If a token scope is open, the message is added to the current token too.
      *
-     * @param message A message to be logged.
-     * @param tokens  The tokens to which this message should be added.
+     * @param messageFormat The message format.
+     * @param number        The integer number to be included in the message.
      * @return A token for this log message.
      */
-    public Token logMessage(final String message, final Token... tokens) {
-        Token token = new Token();
-        token.addMessage(message);
-        for (Token t : tokens) {
-            t.addMessage(message);
+    public Token logMessage(final String messageFormat, final int number) {
+        if (isUnsampled()) {
+            return Token.UNSAMPLED;
         }
-        return token;
+        return appendMessageToCurrentToken(newToken(), new Message.FormattedInteger(messageFormat, number));
     }
 
     /**
-     * Clones a token and logs a formatted message.
+     * Logs a formatted message and creates a new token. The message is only formatted when it is rendered as part
+     * of an error.
      *
-     * @param sourceToken   The token to be cloned.
      * @param messageFormat The message format.
-     * @param number        The double number to be included in the message.
-     * @param tokens        The tokens to which this message should be added.
+     * @param number        The integer number to be included in the message.
+     * @param token         The token to which this message should be added.
      * @return A token for this log message.
      */
-    public Token logMessage(final Token sourceToken, final String messageFormat, final double number,
-            final Token... tokens) {
-        return logMessage(sourceToken, String.format(LOCALE, messageFormat, number), tokens);
+    public Token logMessage(final String messageFormat, final int number, final Token token) {
+        if (isUnsampled(token)) {
+            return Token.UNSAMPLED;
+        }
+        return appendMessage(newToken(), new Message.FormattedInteger(messageFormat, number), token);
     }
 
     /**
-     * Clones a token and logs a formatted message.
+     * Logs a formatted message and creates a new token. The message is only formatted when it is rendered as part
+     * of an error.
      *
-     * @param sourceToken   The token to be cloned.
      * @param messageFormat The message format.
      * @param number        The integer number to be included in the message.
-     * @param tokens        The tokens to which this message should be added.
+     * @param token1        The first token to which this message should be added.
+     * @param token2        The second token to which this message should be added.
      * @return A token for this log message.
      */
-    public Token logMessage(final Token sourceToken, final String messageFormat, final int number,
-            final Token... tokens) {
-        return logMessage(sourceToken, String.format(LOCALE, messageFormat, number), tokens);
+    public Token logMessage(final String messageFormat, final int number, final Token token1, final Token token2) {
+        if (isUnsampled(token1, token2)) {
+            return Token.UNSAMPLED;
+        }
+        return appendMessage(newToken(), new Message.FormattedInteger(messageFormat, number), token1, token2);
     }
 
     /**
-     * Clones a token and logs a formatted message.
+     * Logs a formatted message and creates a new token. The message is only formatted when it is rendered as part
+     * of an error.
      *
-     * @param sourceToken   The token to be cloned.
      * @param messageFormat The message format.
-     * @param number        The long number to be included in the message.
+     * @param number        The integer number to be included in the message.
      * @param tokens        The tokens to which this message should be added.
      * @return A token for this log message.
      */
-    public Token logMessage(final Token sourceToken, final String messageFormat, final long number,
-            final Token... tokens) {
-        return logMessage(sourceToken, String.format(LOCALE, messageFormat, number), tokens);
+    public Token logMessage(final String messageFormat, final int number, final Token... tokens) {
+        if (isUnsampled(tokens)) {
+            return Token.UNSAMPLED;
+        }
+        return appendMessage(newToken(), new Message.FormattedInteger(messageFormat, number), tokens);
     }
 
     /**
-     * Clones a token and logs a formatted message.
+     * Logs a formatted message and creates a new token. The message is only formatted when it is rendered as part
+     * of an error.
+     * If a token scope is open, the message is added to the current token too.
      *
-     * @param sourceToken   The token to be cloned.
      * @param messageFormat The message format.
-     * @param text          The text to be included in the message.
-     * @param tokens        The tokens to which this message should be added.
+     * @param number        The long number to be included in the message.
      * @return A token for this log message.
      */
-    public Token logMessage(final Token sourceToken, final String messageFormat, final String text,
-            final Token... tokens) {
-        return logMessage(sourceToken, String.format(LOCALE, messageFormat, text), tokens);
+    public Token logMessage(final String messageFormat, final long number) {
+        if (isUnsampled()) {
+            return Token.UNSAMPLED;
+        }
+        return appendMessageToCurrentToken(newToken(), new Message.FormattedLong(messageFormat, number));
     }
 
     /**
-     * Clones a token and logs a message.
+     * Logs a formatted message and creates a new token. The message is only formatted when it is rendered as part
+     * of an error.
      *
-     * @param sourceToken The token to be cloned.
-     * @param message     A message to be logged.
-     * @param tokens      The tokens to which this message should be added.
+     * @param messageFormat The message format.
+     * @param number        The long number to be included in the message.
+     * @param token         The token to which this message should be added.
      * @return A token for this log message.
      */
-    public Token logMessage(final Token sourceToken, final String message, final Token... tokens) {
-        Token token = new Token(sourceToken);
-        token.addMessage(message);
-        for (Token t : tokens) {
-            t.addMessage(message);
+    public Token logMessage(final String messageFormat, final long number, final Token token) {
+        if (isUnsampled(token)) {
+            return Token.UNSAMPLED;
         }
-        return token;
+        return appendMessage(newToken(), new Message.FormattedLong(messageFormat, number), token);
     }
 
     /**
-     * Logs progress with a formatted message.
+     * Logs a formatted message and creates a new token. The message is only formatted when it is rendered as part
+     * of an error.
      *
      * @param messageFormat The message format.
-     * @param number        The double number to be included in the message.
+     * @param number        The long number to be included in the message.
+     * @param token1        The first token to which this message should be added.
+     * @param token2        The second token to which this message should be added.
+     * @return A token for this log message.
      */
-    public void logProgress(final String messageFormat, final double number) {
-        logProgress(String.format(LOCALE, messageFormat, number));
+    public Token logMessage(final String messageFormat, final long number, final Token token1, final Token token2) {
+        if (isUnsampled(token1, token2)) {
+            return Token.UNSAMPLED;
+        }
+        return appendMessage(newToken(), new Message.FormattedLong(messageFormat, number), token1, token2);
     }
 
     /**
-     * Logs progress with a formatted message.
+     * Logs a formatted message and creates a new token. The message is only formatted when it is rendered as part
+     * of an error.
      *
      * @param messageFormat The message format.
-     * @param number        The integer number to be included in the message.
+     * @param number        The long number to be included in the message.
+     * @param tokens        The tokens to which this message should be added.
+     * @return A token for this log message.
      */
-    public void logProgress(final String messageFormat, final int number) {
-        logProgress(String.format(LOCALE, messageFormat, number));
+    public Token logMessage(final String messageFormat, final long number, final Token... tokens) {
+        if (isUnsampled(tokens)) {
+            return Token.UNSAMPLED;
+        }
+        return appendMessage(newToken(), new Message.FormattedLong(messageFormat, number), tokens);
     }
 
     /**
-     * Logs progress with a formatted message.
+     * Logs a formatted message and creates a new token. The message is only formatted when it is rendered as part
+     * of an error.
+     * If a token scope is open, the message is added to the current token too.
      *
      * @param messageFormat The message format.
-     * @param number        The long number to be included in the message.
+     * @param text          The text to be included in the message.
+     * @return A token for this log message.
      */
-    public void logProgress(final String messageFormat, final long number) {
-        logProgress(String.format(LOCALE, messageFormat, number));
+    public Token logMessage(final String messageFormat, final String text) {
+        if (isUnsampled()) {
+            return Token.UNSAMPLED;
+        }
+        return appendMessageToCurrentToken(newToken(), new Message.FormattedText(messageFormat, text));
     }
 
     /**
-     * Logs progress with a formatted message.
+     * Logs a formatted message and creates a new token. The message is only formatted when it is rendered as part
+     * of an error.
      *
      * @param messageFormat The message format.
      * @param text          The text to be included in the message.
+     * @param token         The token to which this message should be added.
+     * @return A token for this log message.
      */
-    public void logProgress(final String messageFormat, final String text) {
-        logProgress(String.format(LOCALE, messageFormat, text));
+    public Token logMessage(final String messageFormat, final String text, final Token token) {
+        if (isUnsampled(token)) {
+            return Token.UNSAMPLED;
+        }
+        return appendMessage(newToken(), new Message.FormattedText(messageFormat, text), token);
     }
 
     /**
-     * Logs progress.
+     * Logs a formatted message and creates a new token. The message is only formatted when it is rendered as part
+     * of an error.
      *
-     * @param message A message to be logged.
+     * @param messageFormat The message format.
+     * @param text          The text to be included in the message.
+     * @param token1        The first token to which this message should be added.
+     * @param token2        The second token to which this message should be added.
+     * @return A token for this log message.
      */
-    public void logProgress(final String message) {
-        if (state == State.ERROR_LOGGED) {
-            printStream.println();
+    public Token logMessage(final String messageFormat, final String text, final Token token1, final Token token2) {
+        if (isUnsampled(token1, token2)) {
+            return Token.UNSAMPLED;
         }
-        printTimestamp();
-        printStream.println(message);
-        state = State.PROGRESS_LOGGED;
+        return appendMessage(newToken(), new Message.FormattedText(messageFormat, text), token1, token2);
     }
 
     /**
-     * Prints the current timestamp to the internal print stream.
+     * Logs a formatted message and creates a new token. The message is only formatted when it is rendered as part
+     * of an error.
+     *
+     * @param messageFormat The message format.
+     * @param text          The text to be included in the message.
+     * @param tokens        The tokens to which this message should be added.
+     * @return A token for this log message.
      */
-    private void printTimestamp() {
-        printTimestamp(new Timestamp(System.currentTimeMillis()));
+    public Token logMessage(final String messageFormat, final String text, final Token... tokens) {
+        if (isUnsampled(tokens)) {
+            return Token.UNSAMPLED;
+        }
+        return appendMessage(newToken(), new Message.FormattedText(messageFormat, text), tokens);
     }
 
     /**
-     * Prints a timestamp to the internal print stream.
+     * Logs a message and creates a new token.
+     * If a token scope is open, the message is added to the current token too.
      *
-     * @param timestamp A timestamp.
+     * @param message A message to be logged.
+     * @return A token for this log message.
      */
-    private void printTimestamp(final Timestamp timestamp) {
-        if (prefixWithTimestamp) {
-            printStream.print(TIMESTAMP_FORMAT.format(timestamp));
-            printStream.print(" ");
+    public Token logMessage(final String message) {
+        if (isUnsampled()) {
+            return Token.UNSAMPLED;
         }
+        return appendMessageToCurrentToken(newToken(), new Message.Plain(message));
     }
 
     /**
-     * Sets whether the messages should be prefixed with a timestamp.
+     * Logs a message and creates a new token.
      *
-     * @param prefixWithTimestamp Whether the messages should be prefixed with a timestamp.
+     * @param message A message to be logged.
+     * @param token   The token to which this message should be added.
+     * @return A token for this log message.
+     */
+    public Token logMessage(final String message, final Token token) {
+        if (isUnsampled(token)) {
+            return Token.UNSAMPLED;
+        }
+        return appendMessage(newToken(), new Message.Plain(message), token);
+    }
+
+    /**
+     * Logs a message and creates a new token.
+     *
+     * @param message A message to be logged.
+     * @param token1  The first token to which this message should be added.
+     * @param token2  The second token to which this message should be added.
+     * @return A token for this log message.
+     */
+    public Token logMessage(final String message, final Token token1, final Token token2) {
+        if (isUnsampled(token1, token2)) {
+            return Token.UNSAMPLED;
+        }
+        return appendMessage(newToken(), new Message.Plain(message), token1, token2);
+    }
+
+    /**
+     * Logs a message and creates a new token.
+     *
+     * @param message A message to be logged.
+     * @param tokens  The tokens to which this message should be added.
+     * @return A token for this log message.
+     */
+    public Token logMessage(final String message, final Token... tokens) {
+        if (isUnsampled(tokens)) {
+            return Token.UNSAMPLED;
+        }
+        return appendMessage(newToken(), new Message.Plain(message), tokens);
+    }
+
+    /**
+     * Clones a token and logs a formatted message. The message is only formatted when it is rendered as part of an
+     * error.
+     *
+     * @param sourceToken   The token to be cloned.
+     * @param messageFormat The message format.
+     * @param number        The double number to be included in the message.
+     * @return A token for this log message.
+     */
+    public Token logMessage(final Token sourceToken, final String messageFormat, final double number) {
+        if (isUnsampled(sourceToken)) {
+            return Token.UNSAMPLED;
+        }
+        return appendMessage(cloneToken(sourceToken), new Message.FormattedDouble(messageFormat, number));
+    }
+
+    /**
+     * Clones a token and logs a formatted message. The message is only formatted when it is rendered as part of an
+     * error.
+     *
+     * @param sourceToken   The token to be cloned.
+     * @param messageFormat The message format.
+     * @param number        The double number to be included in the message.
+     * @param token         The token to which this message should be added.
+     * @return A token for this log message.
+     */
+    public Token logMessage(final Token sourceToken, final String messageFormat, final double number,
+            final Token token) {
+        if (isUnsampled(sourceToken, token)) {
+            return Token.UNSAMPLED;
+        }
+        return appendMessage(cloneToken(sourceToken), new Message.FormattedDouble(messageFormat, number), token);
+    }
+
+    /**
+     * Clones a token and logs a formatted message. The message is only formatted when it is rendered as part of an
+     * error.
+     *
+     * @param sourceToken   The token to be cloned.
+     * @param messageFormat The message format.
+     * @param number        The double number to be included in the message.
+     * @param token1        The first token to which this message should be added.
+     * @param token2        The second token to which this message should be added.
+     * @return A token for this log message.
+     */
+    public Token logMessage(final Token sourceToken, final String messageFormat, final double number,
+            final Token token1, final Token token2) {
+        if (isUnsampled(sourceToken, token1, token2)) {
+            return Token.UNSAMPLED;
+        }
+        return appendMessage(cloneToken(sourceToken), new Message.FormattedDouble(messageFormat, number),
+                token1, token2);
+    }
+
+    /**
+     * Clones a token and logs a formatted message. The message is only formatted when it is rendered as part of an
+     * error.
+     *
+     * @param sourceToken   The token to be cloned.
+     * @param messageFormat The message format.
+     * @param number        The double number to be included in the message.
+     * @param tokens        The tokens to which this message should be added.
+     * @return A token for this log message.
+     */
+    public Token logMessage(final Token sourceToken, final String messageFormat, final double number,
+            final Token... tokens) {
+        if (isUnsampled(sourceToken, tokens)) {
+            return Token.UNSAMPLED;
+        }
+        return appendMessage(cloneToken(sourceToken), new Message.FormattedDouble(messageFormat, number), tokens);
+    }
+
+    /**
+     * Clones a token and logs a formatted message. The message is only formatted when it is rendered as part of an
+     * error.
+     *
+     * @param sourceToken   The token to be cloned.
+     * @param messageFormat The message format.
+     * @param number        The integer number to be included in the message.
+     * @return A token for this log message.
+     */
+    public Token logMessage(final Token sourceToken, final String messageFormat, final int number) {
+        if (isUnsampled(sourceToken)) {
+            return Token.UNSAMPLED;
+        }
+        return appendMessage(cloneToken(sourceToken), new Message.FormattedInteger(messageFormat, number));
+    }
+
+    /**
+     * Clones a token and logs a formatted message. The message is only formatted when it is rendered as part of an
+     * error.
+     *
+     * @param sourceToken   The token to be cloned.
+     * @param messageFormat The message format.
+     * @param number        The integer number to be included in the message.
+     * @param token         The token to which this message should be added.
+     * @return A token for this log message.
+     */
+    public Token logMessage(final Token sourceToken, final String messageFormat, final int number, final Token token) {
+        if (isUnsampled(sourceToken, token)) {
+            return Token.UNSAMPLED;
+        }
+        return appendMessage(cloneToken(sourceToken), new Message.FormattedInteger(messageFormat, number), token);
+    }
+
+    /**
+     * Clones a token and logs a formatted message. The message is only formatted when it is rendered as part of an
+     * error.
+     *
+     * @param sourceToken   The token to be cloned.
+     * @param messageFormat The message format.
+     * @param number        The integer number to be included in the message.
+     * @param token1        The first token to which this message should be added.
+     * @param token2        The second token to which this message should be added.
+     * @return A token for this log message.
+     */
+    public Token logMessage(final Token sourceToken, final String messageFormat, final int number, final Token token1,
+            final Token token2) {
+        if (isUnsampled(sourceToken, token1, token2)) {
+            return Token.UNSAMPLED;
+        }
+        return appendMessage(cloneToken(sourceToken), new Message.FormattedInteger(messageFormat, number),
+                token1, token2);
+    }
+
+    /**
+     * Clones a token and logs a formatted message. The message is only formatted when it is rendered as part of an
+     * error.
+     *
+     * @param sourceToken   The token to be cloned.
+     * @param messageFormat The message format.
+     * @param number        The integer number to be included in the message.
+     * @param tokens        The tokens to which this message should be added.
+     * @return A token for this log message.
+     */
+    public Token logMessage(final Token sourceToken, final String messageFormat, final int number,
+            final Token... tokens) {
+        if (isUnsampled(sourceToken, tokens)) {
+            return Token.UNSAMPLED;
+        }
+        return appendMessage(cloneToken(sourceToken), new Message.FormattedInteger(messageFormat, number), tokens);
+    }
+
+    /**
+     * Clones a token and logs a formatted message. The message is only formatted when it is rendered as part of an
+     * error.
+     *
+     * @param sourceToken   The token to be cloned.
+     * @param messageFormat The message format.
+     * @param number        The long number to be included in the message.
+     * @return A token for this log message.
+     */
+    public Token logMessage(final Token sourceToken, final String messageFormat, final long number) {
+        if (isUnsampled(sourceToken)) {
+            return Token.UNSAMPLED;
+        }
+        return appendMessage(cloneToken(sourceToken), new Message.FormattedLong(messageFormat, number));
+    }
+
+    /**
+     * Clones a token and logs a formatted message. The message is only formatted when it is rendered as part of an
+     * error.
+     *
+     * @param sourceToken   The token to be cloned.
+     * @param messageFormat The message format.
+     * @param number        The long number to be included in the message.
+     * @param token         The token to which this message should be added.
+     * @return A token for this log message.
+     */
+    public Token logMessage(final Token sourceToken, final String messageFormat, final long number, final Token token) {
+        if (isUnsampled(sourceToken, token)) {
+            return Token.UNSAMPLED;
+        }
+        return appendMessage(cloneToken(sourceToken), new Message.FormattedLong(messageFormat, number), token);
+    }
+
+    /**
+     * Clones a token and logs a formatted message. The message is only formatted when it is rendered as part of an
+     * error.
+     *
+     * @param sourceToken   The token to be cloned.
+     * @param messageFormat The message format.
+     * @param number        The long number to be included in the message.
+     * @param token1        The first token to which this message should be added.
+     * @param token2        The second token to which this message should be added.
+     * @return A token for this log message.
+     */
+    public Token logMessage(final Token sourceToken, final String messageFormat, final long number, final Token token1,
+            final Token token2) {
+        if (isUnsampled(sourceToken, token1, token2)) {
+            return Token.UNSAMPLED;
+        }
+        return appendMessage(cloneToken(sourceToken), new Message.FormattedLong(messageFormat, number),
+                token1, token2);
+    }
+
+    /**
+     * Clones a token and logs a formatted message. The message is only formatted when it is rendered as part of an
+     * error.
+     *
+     * @param sourceToken   The token to be cloned.
+     * @param messageFormat The message format.
+     * @param number        The long number to be included in the message.
+     * @param tokens        The tokens to which this message should be added.
+     * @return A token for this log message.
+     */
+    public Token logMessage(final Token sourceToken, final String messageFormat, final long number,
+            final Token... tokens) {
+        if (isUnsampled(sourceToken, tokens)) {
+            return Token.UNSAMPLED;
+        }
+        return appendMessage(cloneToken(sourceToken), new Message.FormattedLong(messageFormat, number), tokens);
+    }
+
+    /**
+     * Clones a token and logs a formatted message. The message is only formatted when it is rendered as part of an
+     * error.
+     *
+     * @param sourceToken   The token to be cloned.
+     * @param messageFormat The message format.
+     * @param text          The text to be included in the message.
+     * @return A token for this log message.
+     */
+    public Token logMessage(final Token sourceToken, final String messageFormat, final String text) {
+        if (isUnsampled(sourceToken)) {
+            return Token.UNSAMPLED;
+        }
+        return appendMessage(cloneToken(sourceToken), new Message.FormattedText(messageFormat, text));
+    }
+
+    /**
+     * Clones a token and logs a formatted message. The message is only formatted when it is rendered as part of an
+     * error.
+     *
+     * @param sourceToken   The token to be cloned.
+     * @param messageFormat The message format.
+     * @param text          The text to be included in the message.
+     * @param token         The token to which this message should be added.
+     * @return A token for this log message.
+     */
+    public Token logMessage(final Token sourceToken, final String messageFormat, final String text, final Token token) {
+        if (isUnsampled(sourceToken, token)) {
+            return Token.UNSAMPLED;
+        }
+        return appendMessage(cloneToken(sourceToken), new Message.FormattedText(messageFormat, text), token);
+    }
+
+    /**
+     * Clones a token and logs a formatted message. The message is only formatted when it is rendered as part of an
+     * error.
+     *
+     * @param sourceToken   The token to be cloned.
+     * @param messageFormat The message format.
+     * @param text          The text to be included in the message.
+     * @param token1        The first token to which this message should be added.
+     * @param token2        The second token to which this message should be added.
+     * @return A token for this log message.
+     */
+    public Token logMessage(final Token sourceToken, final String messageFormat, final String text, final Token token1,
+            final Token token2) {
+        if (isUnsampled(sourceToken, token1, token2)) {
+            return Token.UNSAMPLED;
+        }
+        return appendMessage(cloneToken(sourceToken), new Message.FormattedText(messageFormat, text), token1, token2);
+    }
+
+    /**
+     * Clones a token and logs a formatted message. The message is only formatted when it is rendered as part of an
+     * error.
+     *
+     * @param sourceToken   The token to be cloned.
+     * @param messageFormat The message format.
+     * @param text          The text to be included in the message.
+     * @param tokens        The tokens to which this message should be added.
+     * @return A token for this log message.
+     */
+    public Token logMessage(final Token sourceToken, final String messageFormat, final String text,
+            final Token... tokens) {
+        if (isUnsampled(sourceToken, tokens)) {
+            return Token.UNSAMPLED;
+        }
+        return appendMessage(cloneToken(sourceToken), new Message.FormattedText(messageFormat, text), tokens);
+    }
+
+    /**
+     * Clones a token and logs a message.
+     *
+     * @param sourceToken The token to be cloned.
+     * @param message     A message to be logged.
+     * @return A token for this log message.
+     */
+    public Token logMessage(final Token sourceToken, final String message) {
+        if (isUnsampled(sourceToken)) {
+            return Token.UNSAMPLED;
+        }
+        return appendMessage(cloneToken(sourceToken), new Message.Plain(message));
+    }
+
+    /**
+     * Clones a token and logs a message.
+     *
+     * @param sourceToken The token to be cloned.
+     * @param message     A message to be logged.
+     * @param token       The token to which this message should be added.
+     * @return A token for this log message.
+     */
+    public Token logMessage(final Token sourceToken, final String message, final Token token) {
+        if (isUnsampled(sourceToken, token)) {
+            return Token.UNSAMPLED;
+        }
+        return appendMessage(cloneToken(sourceToken), new Message.Plain(message), token);
+    }
+
+    /**
+     * Clones a token and logs a message.
+     *
+     * @param sourceToken The token to be cloned.
+     * @param message     A message to be logged.
+     * @param token1      The first token to which this message should be added.
+     * @param token2      The second token to which this message should be added.
+     * @return A token for this log message.
+     */
+    public Token logMessage(final Token sourceToken, final String message, final Token token1, final Token token2) {
+        if (isUnsampled(sourceToken, token1, token2)) {
+            return Token.UNSAMPLED;
+        }
+        return appendMessage(cloneToken(sourceToken), new Message.Plain(message), token1, token2);
+    }
+
+    /**
+     * Clones a token and logs a message.
+     *
+     * @param sourceToken The token to be cloned.
+     * @param message     A message to be logged.
+     * @param tokens      The tokens to which this message should be added.
+     * @return A token for this log message.
+     */
+    public Token logMessage(final Token sourceToken, final String message, final Token... tokens) {
+        if (isUnsampled(sourceToken, tokens)) {
+            return Token.UNSAMPLED;
+        }
+        return appendMessage(cloneToken(sourceToken), new Message.Plain(message), tokens);
+    }
+
+    /**
+     * Appends a message to a new token.
+     *
+     * @param token   The new token.
+     * @param message The message to be appended.
+     * @return The new token.
+     */
+    private Token appendMessage(final Token token, final Message message) {
+        Message storedMessage = store(message);
+        token.addMessage(storedMessage);
+        countMessage(message, 1);
+        FlightRecorder recorder = flightRecorder;
+        if (recorder != null) {
+            recorder.recordMessage(message, token, null, null);
+        }
+        return token;
+    }
+
+    /**
+     * Appends a message to a new token and to the current token, if a token scope is open.
+     *
+     * @param token   The new token.
+     * @param message The message to be appended.
+     * @return The new token.
+     */
+    private Token appendMessageToCurrentToken(final Token token, final Message message) {
+        Message storedMessage = store(message);
+        token.addMessage(storedMessage);
+        Token current = TokenScope.current();
+        if (current != null) {
+            current.addMessage(storedMessage);
+        }
+        countMessage(message, current == null ? 1 : 2);
+        FlightRecorder recorder = flightRecorder;
+        if (recorder != null) {
+            recorder.recordMessage(message, token, current, null);
+        }
+        return token;
+    }
+
+    /**
+     * Appends a message to a new token and a token to which the message should be added.
+     *
+     * @param token   The new token.
+     * @param message The message to be appended.
+     * @param token1  The token to which this message should be added.
+     * @return The new token.
+     */
+    private Token appendMessage(final Token token, final Message message, final Token token1) {
+        Message storedMessage = store(message);
+        token.addMessage(storedMessage);
+        token1.addMessage(storedMessage);
+        countMessage(message, 2);
+        FlightRecorder recorder = flightRecorder;
+        if (recorder != null) {
+            recorder.recordMessage(message, token, token1, null);
+        }
+        return token;
+    }
+
+    /**
+     * Appends a message to a new token and two tokens to which the message should be added.
+     *
+     * @param token   The new token.
+     * @param message The message to be appended.
+     * @param token1  The first token to which this message should be added.
+     * @param token2  The second token to which this message should be added.
+     * @return The new token.
+     */
+    private Token appendMessage(final Token token, final Message message, final Token token1, final Token token2) {
+        Message storedMessage = store(message);
+        token.addMessage(storedMessage);
+        token1.addMessage(storedMessage);
+        token2.addMessage(storedMessage);
+        countMessage(message, FAN_OUT_WITH_TWO_TOKENS);
+        FlightRecorder recorder = flightRecorder;
+        if (recorder != null) {
+            recorder.recordMessage(message, token, token1, token2);
+        }
+        return token;
+    }
+
+    /**
+     * Appends a message to a new token and the tokens to which the message should be added. The same message instance
+     * is shared by all the tokens, such that the clock is read only once.
+     *
+     * @param token   The new token.
+     * @param message The message to be appended.
+     * @param tokens  The tokens to which this message should be added.
+     * @return The new token.
+     */
+    private Token appendMessage(final Token token, final Message message, final Token[] tokens) {
+        Message storedMessage = store(message);
+        token.addMessage(storedMessage);
+        for (Token t : tokens) {
+            t.addMessage(storedMessage);
+        }
+        countMessage(message, tokens.length + 1);
+        FlightRecorder recorder = flightRecorder;
+        if (recorder != null) {
+            recorder.recordMessage(message, token, tokens);
+        }
+        return token;
+    }
+
+    /**
+     * Returns a new token cloned from a source token, reusing a closed token if possible. In flight recorder mode, the
+     * clone is recorded. Since no messages are recorded on the unsampled token, a clone of it is a new token, which
+     * is returned when a message cloning the unsampled token is logged to tokens that have been sampled.
+     *
+     * @param sourceToken The token to be cloned.
+     * @return A new token sharing the messages of the source token.
+     */
+    Token cloneToken(final Token sourceToken) {
+        if (sourceToken == Token.UNSAMPLED) {
+            return newToken();
+        }
+        Token token = adopt(Token.obtain(sourceToken));
+        FlightRecorder recorder = flightRecorder;
+        if (recorder != null) {
+            recorder.recordClone(token, sourceToken);
+        }
+        return token;
+    }
+
+    /**
+     * Makes this logger the logger of a new token, such that its clones in token scopes are created by this logger, and
+     * counts the token as live in the metrics until it is closed, if metrics are enabled.
+     *
+     * @param token The new token.
+     * @return The new token.
+     */
+    private Token adopt(final Token token) {
+        token.setLogger(this);
+        LaconicMetrics currentMetrics = metrics;
+        if (currentMetrics != null) {
+            token.countIn(currentMetrics);
+        }
+        return token;
+    }
+
+    /**
+     * Counts a message logged to a new token in the metrics, if metrics are enabled.
+     *
+     * @param message The message.
+     * @param fanOut  The number of tokens the message has been appended to, including the new token.
+     */
+    private void countMessage(final Message message, final int fanOut) {
+        LaconicMetrics currentMetrics = metrics;
+        if (currentMetrics != null) {
+            currentMetrics.messageLogged(message, fanOut);
+        }
+    }
+
+    /**
+     * Logs a batch of messages and appends them to tokens in a single call, without creating a new token. All messages
+     * in the batch share the same timestamp, such that the clock is read only once, and each token is updated only
+     * once for the whole batch. If no tokens are passed and a token scope is open, the messages are appended to the
+     * current token.
+     *
+     * @param messages The messages to be logged, in the order in which they should be appended.
+     * @param tokens   The tokens to which the messages should be appended.
+     */
+    public void logMessages(final String[] messages, final Token... tokens) {
+        Token[] targetTokens = tokens.length == 0 ? currentTokens() : tokens;
+        if (messages.length == 0 || targetTokens.length == 0 || isUnsampled(targetTokens)) {
+            return;
+        }
+        long timestamp = System.currentTimeMillis();
+        Message[] batch = new Message[messages.length];
+        for (int i = 0; i < messages.length; i++) {
+            batch[i] = new Message.Plain(messages[i], timestamp);
+        }
+        Message[] storedBatch = batch;
+        if (offHeapTokenStorage) {
+            storedBatch = new Message[batch.length];
+            for (int i = 0; i < batch.length; i++) {
+                storedBatch[i] = MessageArena.store(batch[i]);
+            }
+        }
+        for (Token token : targetTokens) {
+            token.addMessages(storedBatch);
+        }
+        LaconicMetrics currentMetrics = metrics;
+        if (currentMetrics != null) {
+            for (Message message : batch) {
+                currentMetrics.messageAppended(message, targetTokens.length);
+            }
+        }
+        FlightRecorder recorder = flightRecorder;
+        if (recorder != null) {
+            recorder.recordMessages(batch, targetTokens);
+        }
+    }
+
+    /**
+     * Logs a stream of messages and appends them to tokens in a single call, without creating a new token. The stream
+     * is collected into a batch first, and then logged like {@link #logMessages(String[], Token...)}.
+     *
+     * @param messages The stream of messages to be logged, in the order in which they should be appended.
+     * @param tokens   The tokens to which the messages should be appended.
+     */
+    public void logMessages(final Stream<String> messages, final Token... tokens) {
+        logMessages(messages.toArray(String[]::new), tokens);
+    }
+
+    /**
+     * Logs the pending summaries of suppressed repetitions of errors. Summaries are logged under the lock of the
+     * suppression, such that a flush waits until the sweeper thread has written the summaries it took.
+     *
+     * @param suppression The suppression of repeated errors.
+     */
+    private void logSummaries(final ErrorSuppression suppression) {
+        synchronized (suppression) {
+            ErrorSuppression.Summary summary = suppression.pollSummary();
+            while (summary != null) {
+                if (outputFormat == OutputFormat.JSON_LINES) {
+                    write(JsonLinesRenderer.renderSummary(summary));
+                    summary = suppression.pollSummary();
+                    continue;
+                }
+                StringBuilder block = new StringBuilder();
+                if (state.getAndSet(State.ERROR_LOGGED) != State.EMPTY) {
+                    block.append(LINE_SEPARATOR);
+                }
+                appendTimestamp(block, summary.timestamp());
+                block.append("‡ ").append(summary.message()).append(LINE_SEPARATOR);
+                write(block);
+                summary = suppression.pollSummary();
+            }
+        }
+    }
+
+    /**
+     * Logs progress with a formatted message.
+     *
+     * @param messageFormat The message format.
+     * @param number        The double number to be included in the message.
+     */
+    public void logProgress(final String messageFormat, final double number) {
+        logProgress(new Message.FormattedDouble(messageFormat, number));
+    }
+
+    /**
+     * Logs progress with a formatted message.
+     *
+     * @param messageFormat The message format.
+     * @param number        The integer number to be included in the message.
+     */
+    public void logProgress(final String messageFormat, final int number) {
+        logProgress(new Message.FormattedInteger(messageFormat, number));
+    }
+
+    /**
+     * Logs progress with a formatted message.
+     *
+     * @param messageFormat The message format.
+     * @param number        The long number to be included in the message.
+     */
+    public void logProgress(final String messageFormat, final long number) {
+        logProgress(new Message.FormattedLong(messageFormat, number));
+    }
+
+    /**
+     * Logs progress with a formatted message.
+     *
+     * @param messageFormat The message format.
+     * @param text          The text to be included in the message.
+     */
+    public void logProgress(final String messageFormat, final String text) {
+        logProgress(new Message.FormattedText(messageFormat, text));
+    }
+
+    /**
+     * Logs progress.
+     *
+     * @param message A message to be logged.
+     */
+    public void logProgress(final String message) {
+        logProgress(new Message.Plain(message));
+    }
+
+    /**
+     * Logs progress, or hands it over to the progress coalescer in coalescing progress mode.
+     *
+     * @param progress The progress message.
+     */
+    private void logProgress(final Message progress) {
+        ProgressCoalescer coalescer = progressCoalescer;
+        if (coalescer == null) {
+            renderProgress(progress);
+        } else {
+            coalescer.offer(progress);
+        }
+    }
+
+    /**
+     * Appends the chains of messages of tokens to a block of text, one after the other. A log message that has been
+     * added to more than one of the tokens is rendered only once.
+     *
+     * @param block  The block of text to which the chains should be appended.
+     * @param tokens The tokens.
+     */
+    private void appendChains(final StringBuilder block, final Token[] tokens) {
+        for (Message[] messages : Token.getDistinctMessages(tokens)) {
+            int lastIndex = messages.length - 1;
+            for (int i = 0; i <= lastIndex; i++) {
+                Message logMessage = messages[i];
+                appendTimestamp(block, logMessage.timestamp());
+                block.append(i == lastIndex ? "‡ ⬐ " : "‡   ");
+                logMessage.appendTo(block);
+                block.append(LINE_SEPARATOR);
+            }
+        }
+    }
+
+    /**
+     * Appends a timestamp to a block of text.
+     *
+     * @param block     The block of text to which the timestamp should be appended.
+     * @param timestamp A timestamp in milliseconds since the epoch.
+     */
+    private void appendTimestamp(final StringBuilder block, final long timestamp) {
+        if (prefixWithTimestamp) {
+            TIMESTAMP_FORMAT.appendTo(block, timestamp);
+            block.append(' ');
+        }
+    }
+
+    /**
+     * Returns a new token with the retention policy of the logger, reusing a closed token if possible.
+     *
+     * @return A new token.
+     */
+    private Token newToken() {
+        return adopt(Token.obtain(retentionPolicy, spillFile, debugMode));
+    }
+
+    /**
+     * Renders an error with the messages of its tokens as text.
+     *
+     * @param error  The message describing the error.
+     * @param tokens The tokens with log messages that are relevant for this error.
+     * @return The rendered error.
+     */
+    private StringBuilder renderError(final Message error, final Token[] tokens) {
+        StringBuilder block = new StringBuilder();
+        if (state.getAndSet(State.ERROR_LOGGED) != State.EMPTY) {
+            block.append(LINE_SEPARATOR);
+        }
+        for (Token token : tokens) {
+            if (!token.isSampled()) {
+                appendTimestamp(block, error.timestamp());
+                block.append("‡ ⬐ … context not sampled").append(LINE_SEPARATOR);
+                break;
+            }
+        }
+        if (treeRendering && tokens.length > 1) {
+            new TokenTree(tokens).appendTo(block, prefixWithTimestamp ? TIMESTAMP_FORMAT : null);
+        } else {
+            appendChains(block, tokens);
+        }
+        appendTimestamp(block, error.timestamp());
+        block.append("‡ ");
+        error.appendTo(block);
+        block.append(LINE_SEPARATOR);
+        return block;
+    }
+
+    /**
+     * Renders a progress message and writes it.
+     *
+     * @param progress The progress message.
+     */
+    private void renderProgress(final Message progress) {
+        ErrorSuppression suppression = errorSuppression;
+        if (suppression != null) {
+            suppression.sweep(progress.timestamp(), false);
+            logSummaries(suppression);
+        }
+        if (outputFormat == OutputFormat.JSON_LINES) {
+            write(JsonLinesRenderer.renderProgress(progress));
+        } else {
+            StringBuilder block = new StringBuilder();
+            if (state.getAndSet(State.PROGRESS_LOGGED) == State.ERROR_LOGGED) {
+                block.append(LINE_SEPARATOR);
+            }
+            appendTimestamp(block, progress.timestamp());
+            progress.appendTo(block);
+            block.append(LINE_SEPARATOR);
+            write(block);
+        }
+        LaconicMetrics currentMetrics = metrics;
+        if (currentMetrics != null) {
+            currentMetrics.progressLineLogged();
+        }
+    }
+
+    /**
+     * Removes a sink that has been added to the logger, after all messages in its buffer have been written to it.
+     *
+     * @param additionalSink The sink to be removed.
+     */
+    public synchronized void removeSink(final Sink additionalSink) {
+        AsynchronousWriter[] writers = sinkWriters;
+        for (int i = 0; i < writers.length; i++) {
+            if (writers[i].getSink() == additionalSink) {
+                AsynchronousWriter[] remainingWriters = new AsynchronousWriter[writers.length - 1];
+                System.arraycopy(writers, 0, remainingWriters, 0, i);
+                System.arraycopy(writers, i + 1, remainingWriters, i, writers.length - i - 1);
+                sinkWriters = remainingWriters;
+                writers[i].close();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Sets the logger to sample units of work adaptively. As long as at most the maximum number of units of work are
+     * started per second, all units of work are recorded. Under a higher load, only the first units of work of every
+     * second up to the maximum are recorded. See {@link #setSampling(int)} for how units of work that aren't sampled
+     * are handled.
+     *
+     * @param maximumPerSecond The maximum number of units of work to be recorded per second.
+     */
+    public void setAdaptiveSampling(final int maximumPerSecond) {
+        sampler = Sampler.adaptive(maximumPerSecond);
+    }
+
+    /**
+     * Sets the logger in asynchronous mode. Error and progress messages are handed over to a bounded buffer, from which
+     * a dedicated thread writes them in batches to the print stream. The buffer is flushed when the JVM shuts down.
+     *
+     * @param bufferCapacity   The minimal number of messages the buffer can hold.
+     * @param fullBufferPolicy The policy to apply when the buffer is full.
+     */
+    public void setAsynchronousMode(final int bufferCapacity, final FullBufferPolicy fullBufferPolicy) {
+        setSynchronousMode();
+        asynchronousWriter = new AsynchronousWriter(sink, bufferCapacity, fullBufferPolicy, numberOfDroppedMessages,
+                bufferCapacity, 0L);
+    }
+
+    /**
+     * Sets the channel to which the log messages can be appended, as an alternative to a PrintStream. Every error and
+     * progress message is encoded to UTF-8 into a reusable direct byte buffer, and written to the channel with a single
+     * write operation.
+     *
+     * @param channel The channel to which the log messages can be appended.
+     */
+    public void setChannel(final WritableByteChannel channel) {
+        setSink(new ChannelSink(channel));
+    }
+
+    /**
+     * Sets the logger in coalescing progress mode. Progress messages logged in quick succession replace each other,
+     * and only the latest one is written, at most once per interval. A pending progress message is always written
+     * before an error is logged, when the logger is flushed, and when the JVM shuts down.
+     *
+     * @param interval The minimal interval between two written progress messages.
+     */
+    public void setCoalescingProgressMode(final Duration interval) {
+        if (interval.isNegative() || interval.isZero()) {
+            throw new IllegalArgumentException("The interval between progress messages should be positive.");
+        }
+        setImmediateProgressMode();
+        progressCoalescer = new ProgressCoalescer(this::renderProgress, interval.toNanos());
+    }
+
+    /**
+     * Sets whether the logger should run in debug mode. In debug mode, tokens that are closed aren't reused, and using
+     * a closed token throws an IllegalStateException, such that using a token after it has been closed can be detected.
+     *
+     * @param debugMode True if the logger should run in debug mode.
+     */
+    public void setDebugMode(final boolean debugMode) {
+        this.debugMode = debugMode;
+    }
+
+    /**
+     * Sets the suppression of repeated errors. Errors are fingerprinted on their message and the formats of the last
+     * messages on their tokens. Within a window, only the first occurrences of an error with the same fingerprint are
+     * logged in full. The other occurrences are counted, and logged as a single summary as soon as the window has
+     * passed, or when the logger is flushed.
+     *
+     * @param window            The length of the window, or null to stop suppressing repeated errors.
+     * @param occurrencesInFull The number of occurrences logged in full within a window.
+     */
+    public void setErrorSuppression(final Duration window, final int occurrencesInFull) {
+        ErrorSuppression previousSuppression = errorSuppression;
+        errorSuppression =
+                window == null ? null : new ErrorSuppression(window.toMillis(), occurrencesInFull, this::logSummaries);
+        if (previousSuppression != null) {
+            previousSuppression.close();
+            previousSuppression.sweep(System.currentTimeMillis(), true);
+            logSummaries(previousSuppression);
+        }
+    }
+
+    /**
+     * Sets the logger in flight recorder mode. The messages logged to tokens are appended to a ring of fixed size in a
+     * memory-mapped file, such that the history of the tokens survives the JVM being killed. The file is overwritten,
+     * and can be read back with {@link FlightRecording}. Once the ring is full, the oldest entries are overwritten.
+     * Recording a message adds roughly half to all of the cost of logging it, so the flight recorder mode should only
+     * be switched on where surviving a crash is worth that price. All pages of the ring are touched when the mode is
+     * set, which takes some time for a large ring.
+     *
+     * @param file     The file for the flight recording, or null if the flight recorder mode should be switched off.
+     * @param capacity The capacity of the ring in bytes.
+     * @throws UncheckedIOException Thrown if the file can't be created or mapped.
+     */
+    public synchronized void setFlightRecorder(final Path file, final int capacity) {
+        FlightRecorder currentRecorder = flightRecorder;
+        if (file == null) {
+            flightRecorder = null;
+        } else {
+            try {
+                flightRecorder = new FlightRecorder(file, capacity);
+            } catch (IOException ioe) {
+                throw new UncheckedIOException("The flight recording couldn't be created.", ioe);
+            }
+        }
+        if (currentRecorder != null) {
+            currentRecorder.close();
+        }
+    }
+
+    /**
+     * Sets the logger in immediate progress mode, the default mode, after the pending progress message of the
+     * coalescing progress mode has been written.
+     */
+    public void setImmediateProgressMode() {
+        ProgressCoalescer coalescer = progressCoalescer;
+        if (coalescer != null) {
+            progressCoalescer = null;
+            coalescer.close();
+        }
+    }
+
+    /**
+     * Enables or disables the metrics of the logger. When enabled, the metrics are reset and registered as an MBean in
+     * the platform MBean server, and a snapshot can be obtained through {@link #getMetrics()}. When disabled, the
+     * MBean is unregistered, and the logging methods don't pay for the metrics beyond a single null check.
+     *
+     * @param enabled Whether the metrics should be enabled.
+     * @throws IllegalStateException Thrown if the metrics can't be registered as an MBean.
+     */
+    public synchronized void setMetricsEnabled(final boolean enabled) {
+        LaconicMetrics currentMetrics = metrics;
+        if (currentMetrics != null) {
+            metrics = null;
+            currentMetrics.unregister();
+        }
+        if (enabled) {
+            LaconicMetrics newMetrics = new LaconicMetrics();
+            newMetrics.register();
+            metrics = newMetrics;
+        }
+    }
+
+    /**
+     * Sets whether the messages on tokens should be stored off-heap. Off-heap messages are encoded into chunks of
+     * direct memory, one arena per thread, such that tokens only refer to an offset into a chunk instead of holding
+     * the texts of their messages on the heap. A chunk is reclaimed once no token refers to it anymore. Messages
+     * logged before off-heap storage is switched on or off keep being stored where they were stored.
+     *
+     * @param offHeapTokenStorage True if the messages on tokens should be stored off-heap.
+     */
+    public void setOffHeapTokenStorage(final boolean offHeapTokenStorage) {
+        this.offHeapTokenStorage = offHeapTokenStorage;
+    }
+
+    /**
+     * Sets the format in which error and progress messages are written. In the JSON Lines format, every error, summary
+     * of suppressed errors and progress message is written as a single JSON object on a line of its own, with the
+     * messages of the tokens of an error as an array of chains. Timestamps are always included, in milliseconds since
+     * the epoch.
+     *
+     * @param outputFormat The format in which error and progress messages should be written.
+     */
+    public void setOutputFormat(final OutputFormat outputFormat) {
+        this.outputFormat = outputFormat;
+    }
+
+    /**
+     * Sets whether the messages should be prefixed with a timestamp.
+     *
+     * @param prefixWithTimestamp Whether the messages should be prefixed with a timestamp.
      */
     public void setPrefixWithTimestamp(final boolean prefixWithTimestamp) {
         this.prefixWithTimestamp = prefixWithTimestamp;
     }
 
+    /**
+     * Sets the retention policy for new tokens. Once a token holds more messages than the maximum number of messages,
+     * the oldest messages are elided, and messages older than the time to live are elided too. Elided messages are
+     * replaced by a single marker when the token is rendered as part of an error.
+     *
+     * @param maximumNumberOfMessages The maximum number of messages a token retains, or Integer.MAX_VALUE if the number
+     *                                of messages shouldn't be limited.
+     * @param timeToLive              The time a message is retained on a token, or null if the age of the messages
+     *                                shouldn't be limited.
+     */
+    public void setTokenRetentionPolicy(final int maximumNumberOfMessages, final Duration timeToLive) {
+        if (maximumNumberOfMessages < 1) {
+            throw new IllegalArgumentException("The maximum number of messages on a token should be at least 1.");
+        }
+        if (maximumNumberOfMessages == Integer.MAX_VALUE && timeToLive == null) {
+            retentionPolicy = null;
+        } else {
+            retentionPolicy = new RetentionPolicy(maximumNumberOfMessages,
+                    timeToLive == null ? Long.MAX_VALUE : timeToLive.toMillis());
+        }
+    }
+
+    /**
+     * Sets the spilling of the packed messages on new tokens to a memory-mapped file. Once the packed messages on the
+     * tokens take up more than the maximum number of bytes on the heap, the oldest packed messages of a token are
+     * moved to the file when more messages are packed, and only a handle to the spilled messages stays on the heap.
+     * Messages stored off-heap aren't packed, and therefore aren't spilled either. The size of the file isn't
+     * limited, but space taken up by spilled messages no token refers to anymore is reused.
+     *
+     * @param directory        The directory in which the spill file should be created, or null if packed messages
+     *                         shouldn't be spilled.
+     * @param maximumHeapBytes The maximum number of bytes the packed messages may take up on the heap.
+     * @throws UncheckedIOException Thrown if the spill file can't be created.
+     */
+    public void setTokenSpilling(final Path directory, final long maximumHeapBytes) {
+        setTokenSpilling(directory, maximumHeapBytes, Long.MAX_VALUE);
+    }
+
+    /**
+     * Sets the spilling of the packed messages on new tokens to a memory-mapped file with a maximum size. Once the
+     * packed messages on the tokens take up more than the maximum number of bytes on the heap, the oldest packed
+     * messages of a token are moved to the file when more messages are packed, and only a handle to the spilled
+     * messages stays on the heap. Space taken up by spilled messages no token refers to anymore is reused. Once the
+     * file has reached its maximum size and no space can be reused, packed messages stay on the heap.
+     *
+     * @param directory        The directory in which the spill file should be created, or null if packed messages
+     *                         shouldn't be spilled.
+     * @param maximumHeapBytes The maximum number of bytes the packed messages may take up on the heap.
+     * @param maximumFileBytes The maximum size of the spill file in bytes.
+     * @throws UncheckedIOException Thrown if the spill file can't be created.
+     */
+    public synchronized void setTokenSpilling(final Path directory, final long maximumHeapBytes,
+            final long maximumFileBytes) {
+        SpillFile currentSpillFile = spillFile;
+        if (directory == null) {
+            spillFile = null;
+        } else {
+            try {
+                spillFile = new SpillFile(directory, maximumHeapBytes, maximumFileBytes);
+            } catch (IOException ioe) {
+                throw new UncheckedIOException("The spill file couldn't be created.", ioe);
+            }
+        }
+        if (currentSpillFile != null) {
+            currentSpillFile.close();
+        }
+    }
+
     /**
      * Sets the PrintStream to which the log messages can be appended.
      *
      * @param printStream The PrintStream to which the log messages can be appended.
      */
     public void setPrintStream(final PrintStream printStream) {
-        this.printStream = printStream;
-        state = State.EMPTY;
+        setSink(new PrintStreamSink(printStream));
+    }
+
+    /**
+     * Sets the logger to record one in a number of units of work, chosen at random. A unit of work starts with a
+     * message logged without tokens, outside a token scope. For the units of work that aren't sampled,
+     * <code>logMessage</code> returns a shared token to which no messages are added, without creating the message or
+     * reading the clock, and so do messages logged to that token, cloning that token, or logged in a scope of that
+     * token. An error logged with that token is marked with a line saying its context wasn't sampled. By default, all
+     * units of work are recorded.
+     *
+     * @param oneIn The one in how many units of work should be recorded, or one if all units of work should be
+     *              recorded.
+     */
+    public void setSampling(final int oneIn) {
+        sampler = oneIn == 1 ? null : Sampler.oneIn(oneIn);
+    }
+
+    /**
+     * Sets the sink to which the log messages are written.
+     *
+     * @param sink The sink to which the log messages should be written.
+     */
+    private void setSink(final Sink sink) {
+        this.sink = sink;
+        AsynchronousWriter writer = asynchronousWriter;
+        if (writer != null) {
+            writer.setSink(sink);
+        }
+        state.set(State.EMPTY);
+    }
+
+    /**
+     * Sets the logger in synchronous mode, the default mode, after all messages in the buffer of the asynchronous mode
+     * have been written.
+     */
+    public void setSynchronousMode() {
+        AsynchronousWriter writer = asynchronousWriter;
+        if (writer != null) {
+            asynchronousWriter = null;
+            writer.close();
+        }
+    }
+
+    /**
+     * Sets whether the messages on the tokens of an error should be rendered as a tree. When an error is logged with
+     * more than one token, the chains of messages of the tokens are merged into a tree, such that the history the
+     * tokens share is rendered only once, and the tree branches where the chains of the tokens diverge. Tree rendering
+     * only applies to the text output format.
+     *
+     * @param treeRendering True if the messages on the tokens of an error should be rendered as a tree.
+     */
+    public void setTreeRendering(final boolean treeRendering) {
+        this.treeRendering = treeRendering;
+    }
+
+    /**
+     * Stores a message off-heap if off-heap token storage is switched on.
+     *
+     * @param message The message to be stored.
+     * @return The stored message, or the message itself if off-heap token storage is switched off.
+     */
+    private Message store(final Message message) {
+        return offHeapTokenStorage ? MessageArena.store(message) : message;
+    }
+
+    /**
+     * Writes a rendered block of messages to the print stream, either directly or through the asynchronous writer, and
+     * hands it over to the writers of the sinks that have been added.
+     *
+     * @param block The block to be written.
+     */
+    private void write(final StringBuilder block) {
+        AsynchronousWriter writer = asynchronousWriter;
+        AsynchronousWriter[] writers = sinkWriters;
+        if (writer == null && writers.length == 0) {
+            sink.write(block);
+            return;
+        }
+        String text = block.toString();
+        if (writer == null) {
+            sink.write(text);
+        } else {
+            writer.write(text);
+        }
+        for (AsynchronousWriter sinkWriter : writers) {
+            sinkWriter.write(text);
+        }
     }
 }
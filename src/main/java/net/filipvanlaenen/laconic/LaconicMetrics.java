@@ -0,0 +1,276 @@
+package net.filipvanlaenen.laconic;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Class collecting the metrics of a logger. The metrics are kept in striped counters, such that threads logging
+ * concurrently don't contend on them. The metrics can be exposed through JMX, under an object name in the
+ * <code>net.filipvanlaenen.laconic</code> domain.
+ */
+final class LaconicMetrics implements LaconicMetricsMBean {
+    /**
+     * The number of buckets in the render latency histogram.
+     */
+    static final int NUMBER_OF_LATENCY_BUCKETS = 40;
+    /**
+     * The estimated number of bytes of a link in the chain of a token.
+     */
+    private static final long LINK_BYTES = 32L;
+    /**
+     * The estimated number of bytes of a message, excluding its texts.
+     */
+    private static final long MESSAGE_BYTES = 24L;
+    /**
+     * The estimated number of bytes of a string, excluding its characters.
+     */
+    private static final long STRING_BYTES = 40L;
+    /**
+     * The number of bits in a long, minus one.
+     */
+    private static final int LONG_BITS_MINUS_ONE = 63;
+    /**
+     * The counter used to give every registered MBean a unique object name.
+     */
+    private static final AtomicInteger MBEAN_COUNTER = new AtomicInteger();
+    /**
+     * The prefix for the object names of the MBeans.
+     */
+    private static final String OBJECT_NAME_PREFIX = "net.filipvanlaenen.laconic:type=Metrics,id=";
+
+    /**
+     * The number of tokens created.
+     */
+    private final LongAdder tokensCreated = new LongAdder();
+    /**
+     * The number of tokens obtained while the metrics were enabled that haven't been closed yet.
+     */
+    private final LongAdder liveTokens = new LongAdder();
+    /**
+     * The number of messages logged to tokens.
+     */
+    private final LongAdder messagesLogged = new LongAdder();
+    /**
+     * The number of times a message has been appended to a token.
+     */
+    private final LongAdder messageAppends = new LongAdder();
+    /**
+     * The largest number of tokens a single message has been appended to.
+     */
+    private final LongAccumulator maximumFanOut = new LongAccumulator(Math::max, 0L);
+    /**
+     * The estimated number of bytes appended to tokens.
+     */
+    private final LongAdder estimatedAppendedBytes = new LongAdder();
+    /**
+     * The number of errors logged.
+     */
+    private final LongAdder errorsLogged = new LongAdder();
+    /**
+     * The number of errors suppressed.
+     */
+    private final LongAdder errorsSuppressed = new LongAdder();
+    /**
+     * The number of progress lines written.
+     */
+    private final LongAdder progressLinesLogged = new LongAdder();
+    /**
+     * The histogram of the render latencies of errors.
+     */
+    private final LongAdder[] renderLatencyHistogram = new LongAdder[NUMBER_OF_LATENCY_BUCKETS];
+    /**
+     * The object name under which the metrics are registered, or null if they aren't registered.
+     */
+    private ObjectName objectName;
+
+    /**
+     * Default constructor.
+     */
+    LaconicMetrics() {
+        for (int i = 0; i < NUMBER_OF_LATENCY_BUCKETS; i++) {
+            renderLatencyHistogram[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Registers that an error has been logged.
+     *
+     * @param renderNanos The number of nanoseconds it took to render the error.
+     */
+    void errorLogged(final long renderNanos) {
+        errorsLogged.increment();
+        int bucket = LONG_BITS_MINUS_ONE - Long.numberOfLeadingZeros(Math.max(1L, renderNanos));
+        renderLatencyHistogram[Math.min(bucket, NUMBER_OF_LATENCY_BUCKETS - 1)].increment();
+    }
+
+    /**
+     * Registers that an error has been suppressed.
+     */
+    void errorSuppressed() {
+        errorsSuppressed.increment();
+    }
+
+    /**
+     * Registers that a message has been appended to tokens, without creating a new token.
+     *
+     * @param message The message.
+     * @param fanOut  The number of tokens the message has been appended to.
+     */
+    void messageAppended(final Message message, final int fanOut) {
+        messagesLogged.increment();
+        messageAppends.add(fanOut);
+        maximumFanOut.accumulate(fanOut);
+        estimatedAppendedBytes.add(estimateBytes(message) + fanOut * LINK_BYTES);
+    }
+
+    /**
+     * Registers that a message has been logged to a new token and appended to other tokens.
+     *
+     * @param message The message.
+     * @param fanOut  The number of tokens the message has been appended to, including the new token.
+     */
+    void messageLogged(final Message message, final int fanOut) {
+        tokensCreated.increment();
+        messageAppended(message, fanOut);
+    }
+
+    /**
+     * Registers that a progress line has been written.
+     */
+    void progressLineLogged() {
+        progressLinesLogged.increment();
+    }
+
+    /**
+     * Estimates the number of bytes a message occupies on the heap. Message formats are assumed to be shared literals.
+     *
+     * @param message The message.
+     * @return The estimated number of bytes the message occupies.
+     */
+    private static long estimateBytes(final Message message) {
+        if (message instanceof Message.Plain plain) {
+            String text = plain.message();
+            return MESSAGE_BYTES + (text == null ? 0L : STRING_BYTES + text.length());
+        } else if (message instanceof Message.FormattedText formattedText) {
+            String text = formattedText.text();
+            return MESSAGE_BYTES + (text == null ? 0L : STRING_BYTES + text.length());
+        }
+        return MESSAGE_BYTES;
+    }
+
+    /**
+     * Registers that a token counted as live has been closed.
+     */
+    void tokenClosed() {
+        liveTokens.decrement();
+    }
+
+    /**
+     * Registers that a token has been obtained, and counts it as live until it is closed.
+     */
+    void tokenObtained() {
+        liveTokens.increment();
+    }
+
+    /**
+     * Registers the metrics as an MBean in the platform MBean server.
+     */
+    void register() {
+        try {
+            objectName = new ObjectName(OBJECT_NAME_PREFIX + MBEAN_COUNTER.incrementAndGet());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        } catch (JMException jme) {
+            throw new IllegalStateException("The metrics couldn't be registered as an MBean.", jme);
+        }
+    }
+
+    /**
+     * Returns a snapshot of the metrics.
+     *
+     * @return A snapshot of the metrics.
+     */
+    MetricsSnapshot snapshot() {
+        return new MetricsSnapshot(getTokensCreated(), getLiveTokens(), getMessagesLogged(), getMessageAppends(),
+                getMaximumFanOut(), getEstimatedAppendedBytes(), getErrorsLogged(), getErrorsSuppressed(),
+                getProgressLinesLogged(), getRenderLatencyHistogram());
+    }
+
+    /**
+     * Unregisters the metrics from the platform MBean server.
+     */
+    void unregister() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException jme) {
+            // The MBean has been unregistered already by someone else.
+        }
+    }
+
+    /**
+     * Returns the object name under which the metrics are registered.
+     *
+     * @return The object name under which the metrics are registered, or null if they aren't registered.
+     */
+    ObjectName getObjectName() {
+        return objectName;
+    }
+
+    @Override
+    public long getEstimatedAppendedBytes() {
+        return estimatedAppendedBytes.sum();
+    }
+
+    @Override
+    public long getErrorsLogged() {
+        return errorsLogged.sum();
+    }
+
+    @Override
+    public long getErrorsSuppressed() {
+        return errorsSuppressed.sum();
+    }
+
+    @Override
+    public long getLiveTokens() {
+        return liveTokens.sum();
+    }
+
+    @Override
+    public long getMaximumFanOut() {
+        return maximumFanOut.get();
+    }
+
+    @Override
+    public long getMessageAppends() {
+        return messageAppends.sum();
+    }
+
+    @Override
+    public long getMessagesLogged() {
+        return messagesLogged.sum();
+    }
+
+    @Override
+    public long getProgressLinesLogged() {
+        return progressLinesLogged.sum();
+    }
+
+    @Override
+    public long[] getRenderLatencyHistogram() {
+        long[] histogram = new long[NUMBER_OF_LATENCY_BUCKETS];
+        for (int i = 0; i < NUMBER_OF_LATENCY_BUCKETS; i++) {
+            histogram[i] = renderLatencyHistogram[i].sum();
+        }
+        return histogram;
+    }
+
+    @Override
+    public long getTokensCreated() {
+        return tokensCreated.sum();
+    }
+}
@@ -0,0 +1,79 @@
+package net.filipvanlaenen.laconic;
+
+/**
+ * The management interface exposing the metrics of a logger through JMX.
+ */
+public interface LaconicMetricsMBean {
+    /**
+     * Returns the estimated number of bytes appended to tokens.
+     *
+     * @return The estimated number of bytes appended to tokens.
+     */
+    long getEstimatedAppendedBytes();
+
+    /**
+     * Returns the number of errors logged.
+     *
+     * @return The number of errors logged.
+     */
+    long getErrorsLogged();
+
+    /**
+     * Returns the number of errors suppressed as repetitions of earlier errors.
+     *
+     * @return The number of errors suppressed.
+     */
+    long getErrorsSuppressed();
+
+    /**
+     * Returns the number of tokens obtained while the metrics were enabled that haven't been closed yet. Tokens that
+     * are dropped without being closed are counted as live, so this is an upper bound for the number of tokens in use.
+     *
+     * @return The number of live tokens.
+     */
+    long getLiveTokens();
+
+    /**
+     * Returns the largest number of tokens a single message has been appended to.
+     *
+     * @return The largest number of tokens a single message has been appended to.
+     */
+    long getMaximumFanOut();
+
+    /**
+     * Returns the number of times a message has been appended to a token.
+     *
+     * @return The number of times a message has been appended to a token.
+     */
+    long getMessageAppends();
+
+    /**
+     * Returns the number of messages logged to tokens.
+     *
+     * @return The number of messages logged to tokens.
+     */
+    long getMessagesLogged();
+
+    /**
+     * Returns the number of progress lines written.
+     *
+     * @return The number of progress lines written.
+     */
+    long getProgressLinesLogged();
+
+    /**
+     * Returns the histogram of the render latencies of errors. The count at index <i>i</i> is the number of errors
+     * that took at least 2<sup><i>i</i></sup> and less than 2<sup><i>i</i>+1</sup> nanoseconds to render, except for
+     * the last index, which counts all longer render latencies too.
+     *
+     * @return The histogram of the render latencies of errors.
+     */
+    long[] getRenderLatencyHistogram();
+
+    /**
+     * Returns the number of tokens created.
+     *
+     * @return The number of tokens created.
+     */
+    long getTokensCreated();
+}
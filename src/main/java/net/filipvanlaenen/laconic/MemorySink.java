@@ -0,0 +1,48 @@
+package net.filipvanlaenen.laconic;
+
+/**
+ * A sink keeping the most recent log messages in memory, for instance to show them in a user interface or to attach
+ * them to a bug report. When the text grows beyond the maximum length, the oldest lines are discarded.
+ */
+public final class MemorySink implements Sink {
+    /**
+     * The maximum length of the text kept in memory.
+     */
+    private final int maximumLength;
+    /**
+     * The text kept in memory.
+     */
+    private final StringBuilder text = new StringBuilder();
+
+    /**
+     * Constructor taking the maximum length of the text kept in memory as its parameter.
+     *
+     * @param maximumLength The maximum number of characters to keep in memory.
+     */
+    public MemorySink(final int maximumLength) {
+        this.maximumLength = maximumLength;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    /**
+     * Returns the text kept in memory.
+     *
+     * @return The text kept in memory.
+     */
+    public synchronized String getText() {
+        return text.toString();
+    }
+
+    @Override
+    public synchronized void write(final CharSequence block) {
+        text.append(block);
+        int excess = text.length() - maximumLength;
+        if (excess > 0) {
+            int lineEnd = text.indexOf("\n", excess - 1);
+            text.delete(0, lineEnd == -1 ? text.length() : lineEnd + 1);
+        }
+    }
+}
@@ -1,20 +1,425 @@
 package net.filipvanlaenen.laconic;
 
-import java.sql.Timestamp;
+import java.nio.ByteBuffer;
+import java.util.Objects;
 
 /**
- * A record holding the information about a log message.
+ * An interface holding the information about a log message. Formatted messages keep their format and their argument
+ * unformatted, and are only rendered when the message is requested, using the compiled template for their format.
  *
- * @param message   The message.
- * @param timestamp The timestamp.
+ * Every message carries a sequence number identifying its entry. A message logged to more than one token, shared
+ * between a token and its clones, packed or stored off-heap keeps its sequence number, such that its entries on
+ * different tokens can be recognized as the same entry, even after they have been decoded into new instances. Two
+ * messages logged separately never share a sequence number, even if they have the same text and timestamp.
  */
-record Message(String message, Timestamp timestamp) {
+sealed interface Message permits Message.Plain, Message.FormattedDouble, Message.FormattedInteger,
+        Message.FormattedLong, Message.FormattedText, Message.Elided, Message.Stored {
     /**
-     * Constructor taking only a message and adding the current time as the timestamp for the log message.
+     * Returns the message.
      *
-     * @param message The message.
+     * @return The message.
      */
-    Message(final String message) {
-        this(message, new Timestamp(System.currentTimeMillis()));
+    String message();
+
+    /**
+     * Appends the message to a string builder.
+     *
+     * @param builder The string builder.
+     */
+    default void appendTo(final StringBuilder builder) {
+        builder.append(message());
+    }
+
+    /**
+     * Returns the message format, or the message itself if it isn't formatted.
+     *
+     * @return The message format, or the message itself if it isn't formatted.
+     */
+    String template();
+
+    /**
+     * Returns the hash code of the message format, or of the message itself if it isn't formatted.
+     *
+     * @return The hash code of the template, or zero if the template is null.
+     */
+    default int templateHashCode() {
+        return Objects.hashCode(template());
+    }
+
+    /**
+     * Returns the timestamp in milliseconds since the epoch.
+     *
+     * @return The timestamp in milliseconds since the epoch.
+     */
+    long timestamp();
+
+    /**
+     * Returns the sequence number identifying the entry of the message.
+     *
+     * @return The sequence number identifying the entry of the message.
+     */
+    long sequence();
+
+    /**
+     * Returns the current time as a timestamp in milliseconds since the epoch.
+     *
+     * @return The current time as a timestamp in milliseconds since the epoch.
+     */
+    private static long now() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * A record holding a plain log message.
+     *
+     * @param message   The message.
+     * @param timestamp The timestamp in milliseconds since the epoch.
+     * @param sequence  The sequence number identifying the entry of the message.
+     */
+    record Plain(String message, long timestamp, long sequence) implements Message {
+        /**
+         * Constructor taking only a message and adding the current time as the timestamp for the log message.
+         *
+         * @param message The message.
+         */
+        Plain(final String message) {
+            this(message, now());
+        }
+
+        /**
+         * Constructor taking a message and a timestamp, and adding a new sequence number for the log message.
+         *
+         * @param message   The message.
+         * @param timestamp The timestamp in milliseconds since the epoch.
+         */
+        Plain(final String message, final long timestamp) {
+            this(message, timestamp, MessageSequence.next());
+        }
+
+        @Override
+        public String template() {
+            return message;
+        }
+    }
+
+    /**
+     * A record holding a log message formatted with a double.
+     *
+     * @param format    The message format.
+     * @param number    The double number to be included in the message.
+     * @param timestamp The timestamp in milliseconds since the epoch.
+     * @param sequence  The sequence number identifying the entry of the message.
+     */
+    record FormattedDouble(String format, double number, long timestamp, long sequence) implements Message {
+        /**
+         * Compact constructor replacing a null message format by the format rendered for it.
+         */
+        public FormattedDouble {
+            format = MessageTemplate.nonNullFormat(format);
+        }
+
+        /**
+         * Constructor taking only a message format and a double, and adding the current time as the timestamp for the
+         * log message.
+         *
+         * @param format The message format.
+         * @param number The double number to be included in the message.
+         */
+        FormattedDouble(final String format, final double number) {
+            this(format, number, now());
+        }
+
+        /**
+         * Constructor taking a message format, a double and a timestamp, and adding a new sequence number for the log
+         * message.
+         *
+         * @param format    The message format.
+         * @param number    The double number to be included in the message.
+         * @param timestamp The timestamp in milliseconds since the epoch.
+         */
+        FormattedDouble(final String format, final double number, final long timestamp) {
+            this(format, number, timestamp, MessageSequence.next());
+        }
+
+        @Override
+        public String template() {
+            return format;
+        }
+
+        @Override
+        public void appendTo(final StringBuilder builder) {
+            MessageTemplate.of(format).appendTo(builder, number);
+        }
+
+        @Override
+        public String message() {
+            StringBuilder builder = new StringBuilder();
+            appendTo(builder);
+            return builder.toString();
+        }
+    }
+
+    /**
+     * A record holding a log message formatted with an integer.
+     *
+     * @param format    The message format.
+     * @param number    The integer number to be included in the message.
+     * @param timestamp The timestamp in milliseconds since the epoch.
+     * @param sequence  The sequence number identifying the entry of the message.
+     */
+    record FormattedInteger(String format, int number, long timestamp, long sequence) implements Message {
+        /**
+         * Compact constructor replacing a null message format by the format rendered for it.
+         */
+        public FormattedInteger {
+            format = MessageTemplate.nonNullFormat(format);
+        }
+
+        /**
+         * Constructor taking only a message format and an integer, and adding the current time as the timestamp for
+         * the log message.
+         *
+         * @param format The message format.
+         * @param number The integer number to be included in the message.
+         */
+        FormattedInteger(final String format, final int number) {
+            this(format, number, now());
+        }
+
+        /**
+         * Constructor taking a message format, an integer and a timestamp, and adding a new sequence number for the log
+         * message.
+         *
+         * @param format    The message format.
+         * @param number    The integer number to be included in the message.
+         * @param timestamp The timestamp in milliseconds since the epoch.
+         */
+        FormattedInteger(final String format, final int number, final long timestamp) {
+            this(format, number, timestamp, MessageSequence.next());
+        }
+
+        @Override
+        public String template() {
+            return format;
+        }
+
+        @Override
+        public void appendTo(final StringBuilder builder) {
+            MessageTemplate.of(format).appendTo(builder, number);
+        }
+
+        @Override
+        public String message() {
+            StringBuilder builder = new StringBuilder();
+            appendTo(builder);
+            return builder.toString();
+        }
+    }
+
+    /**
+     * A record holding a log message formatted with a long.
+     *
+     * @param format    The message format.
+     * @param number    The long number to be included in the message.
+     * @param timestamp The timestamp in milliseconds since the epoch.
+     * @param sequence  The sequence number identifying the entry of the message.
+     */
+    record FormattedLong(String format, long number, long timestamp, long sequence) implements Message {
+        /**
+         * Compact constructor replacing a null message format by the format rendered for it.
+         */
+        public FormattedLong {
+            format = MessageTemplate.nonNullFormat(format);
+        }
+
+        /**
+         * Constructor taking only a message format and a long, and adding the current time as the timestamp for the
+         * log message.
+         *
+         * @param format The message format.
+         * @param number The long number to be included in the message.
+         */
+        FormattedLong(final String format, final long number) {
+            this(format, number, now());
+        }
+
+        /**
+         * Constructor taking a message format, a long and a timestamp, and adding a new sequence number for the log
+         * message.
+         *
+         * @param format    The message format.
+         * @param number    The long number to be included in the message.
+         * @param timestamp The timestamp in milliseconds since the epoch.
+         */
+        FormattedLong(final String format, final long number, final long timestamp) {
+            this(format, number, timestamp, MessageSequence.next());
+        }
+
+        @Override
+        public String template() {
+            return format;
+        }
+
+        @Override
+        public void appendTo(final StringBuilder builder) {
+            MessageTemplate.of(format).appendTo(builder, number);
+        }
+
+        @Override
+        public String message() {
+            StringBuilder builder = new StringBuilder();
+            appendTo(builder);
+            return builder.toString();
+        }
+    }
+
+    /**
+     * A record holding a log message formatted with a text.
+     *
+     * @param format    The message format.
+     * @param text      The text to be included in the message.
+     * @param timestamp The timestamp in milliseconds since the epoch.
+     * @param sequence  The sequence number identifying the entry of the message.
+     */
+    record FormattedText(String format, String text, long timestamp, long sequence) implements Message {
+        /**
+         * Compact constructor replacing a null message format by the format rendered for it.
+         */
+        public FormattedText {
+            format = MessageTemplate.nonNullFormat(format);
+        }
+
+        /**
+         * Constructor taking only a message format and a text, and adding the current time as the timestamp for the
+         * log message.
+         *
+         * @param format The message format.
+         * @param text   The text to be included in the message.
+         */
+        FormattedText(final String format, final String text) {
+            this(format, text, now());
+        }
+
+        /**
+         * Constructor taking a message format, a text and a timestamp, and adding a new sequence number for the log
+         * message.
+         *
+         * @param format    The message format.
+         * @param text      The text to be included in the message.
+         * @param timestamp The timestamp in milliseconds since the epoch.
+         */
+        FormattedText(final String format, final String text, final long timestamp) {
+            this(format, text, timestamp, MessageSequence.next());
+        }
+
+        @Override
+        public String template() {
+            return format;
+        }
+
+        @Override
+        public void appendTo(final StringBuilder builder) {
+            MessageTemplate.of(format).appendTo(builder, text);
+        }
+
+        @Override
+        public String message() {
+            StringBuilder builder = new StringBuilder();
+            appendTo(builder);
+            return builder.toString();
+        }
+    }
+
+    /**
+     * A record holding a marker for messages that have been elided from a token by its retention policy.
+     *
+     * @param count     The number of messages that have been elided.
+     * @param timestamp The timestamp of the last message that has been elided, in milliseconds since the epoch.
+     * @param sequence  The sequence number identifying the entry of the marker.
+     */
+    record Elided(int count, long timestamp, long sequence) implements Message {
+        /**
+         * Constructor taking the number of elided messages and a timestamp, and adding a new sequence number for the
+         * marker.
+         *
+         * @param count     The number of messages that have been elided.
+         * @param timestamp The timestamp of the last message that has been elided, in milliseconds since the epoch.
+         */
+        Elided(final int count, final long timestamp) {
+            this(count, timestamp, MessageSequence.next());
+        }
+
+        /**
+         * Creates a marker for messages that have been elided. The sequence number of the marker is derived from the
+         * sequence number of the last elided message, such that the markers of tokens sharing the elided messages are
+         * recognized as the same entry. Derived sequence numbers are negative, and never collide with the sequence
+         * numbers of messages.
+         *
+         * @param count             The number of messages that have been elided.
+         * @param lastElidedMessage The last message that has been elided.
+         * @return A marker for the elided messages.
+         */
+        static Elided of(final int count, final Message lastElidedMessage) {
+            return new Elided(count, lastElidedMessage.timestamp(), -1L - lastElidedMessage.sequence());
+        }
+
+        @Override
+        public String message() {
+            return "… " + count + " earlier message" + (count == 1 ? "" : "s") + " elided";
+        }
+
+        @Override
+        public String template() {
+            return "…";
+        }
+    }
+
+    /**
+     * A record holding a message stored off-heap in a chunk of a message arena. The message is only decoded when it is
+     * rendered. Two stored messages are equal if they refer to the same entry in the same chunk.
+     *
+     * @param chunk  The chunk in which the message is stored.
+     * @param offset The offset of the entry in the chunk.
+     */
+    record Stored(ByteBuffer chunk, int offset) implements Message {
+        @Override
+        public boolean equals(final Object other) {
+            return other instanceof Stored stored && stored.chunk == chunk && stored.offset == offset;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(chunk) * (int) Token.FINGERPRINT_MULTIPLIER + offset;
+        }
+
+        @Override
+        public void appendTo(final StringBuilder builder) {
+            MessageArena.decode(chunk, offset).appendTo(builder);
+        }
+
+        @Override
+        public String message() {
+            return MessageArena.decode(chunk, offset).message();
+        }
+
+        @Override
+        public String template() {
+            return MessageArena.decode(chunk, offset).template();
+        }
+
+        @Override
+        public int templateHashCode() {
+            return MessageArena.templateHashCode(chunk, offset);
+        }
+
+        @Override
+        public long sequence() {
+            return MessageArena.sequence(chunk, offset);
+        }
+
+        @Override
+        public long timestamp() {
+            return chunk.getLong(offset);
+        }
     }
 }
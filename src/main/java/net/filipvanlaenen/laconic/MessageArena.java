@@ -0,0 +1,295 @@
+package net.filipvanlaenen.laconic;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A per-thread arena storing messages off-heap. Messages are encoded into chunks of direct memory, and replaced by a
+ * {@link Message.Stored} holding only the chunk and the offset of the encoded entry. Each thread appends to its own
+ * chunk without locking, and starts a new chunk when the current one is full. A chunk is reclaimed by the garbage
+ * collector, together with its direct memory, once no stored message refers to it anymore.
+ *
+ * An entry consists of the timestamp, the sequence number, a byte telling the kind of message, and the content of the
+ * message. Texts are encoded as their length in bytes followed by their UTF-8 encoding. A message formatted with a null
+ * text has its own kind of entry, holding only the format, and so has a plain message that is null, holding no text at
+ * all.
+ */
+final class MessageArena {
+    /**
+     * The size of a chunk in bytes.
+     */
+    static final int CHUNK_SIZE = 65_536;
+    /**
+     * The kind of entry for a plain message.
+     */
+    private static final byte PLAIN = 0;
+    /**
+     * The kind of entry for a message formatted with a double.
+     */
+    private static final byte FORMATTED_DOUBLE = 1;
+    /**
+     * The kind of entry for a message formatted with an integer.
+     */
+    private static final byte FORMATTED_INTEGER = 2;
+    /**
+     * The kind of entry for a message formatted with a long.
+     */
+    private static final byte FORMATTED_LONG = 3;
+    /**
+     * The kind of entry for a message formatted with a text.
+     */
+    private static final byte FORMATTED_TEXT = 4;
+    /**
+     * The kind of entry for a message formatted with a null text.
+     */
+    private static final byte FORMATTED_NULL_TEXT = 5;
+    /**
+     * The kind of entry for a plain message that is null.
+     */
+    private static final byte PLAIN_NULL = 6;
+    /**
+     * The maximum number of bytes in an entry that aren't used by the texts.
+     */
+    private static final int MAXIMUM_FIXED_ENTRY_SIZE = 2 * Long.BYTES + 1 + Long.BYTES + 2 * Integer.BYTES;
+    /**
+     * The arena of each thread.
+     */
+    private static final ThreadLocal<MessageArena> ARENAS = ThreadLocal.withInitial(MessageArena::new);
+
+    /**
+     * The current chunk, or null if no chunk has been allocated yet.
+     */
+    private ByteBuffer chunk;
+    /**
+     * A view on the current chunk keeping track of the position where the next entry will be written.
+     */
+    private ByteBuffer writer;
+
+    /**
+     * Private constructor, arenas are created per thread.
+     */
+    private MessageArena() {
+    }
+
+    /**
+     * Stores a message in the arena of the current thread.
+     *
+     * @param message The message to be stored.
+     * @return A stored message, or the message itself if it can't be stored off-heap.
+     */
+    static Message store(final Message message) {
+        return ARENAS.get().append(message);
+    }
+
+    /**
+     * Appends a message to the current chunk, starting a new chunk if it may not fit.
+     *
+     * @param message The message to be appended.
+     * @return A stored message, or the message itself if it can't be stored off-heap.
+     */
+    private Message append(final Message message) {
+        int maximumSize = maximumEntrySize(message);
+        if (maximumSize > CHUNK_SIZE) {
+            return message;
+        }
+        if (chunk == null || writer.remaining() < maximumSize) {
+            chunk = ByteBuffer.allocateDirect(CHUNK_SIZE);
+            writer = chunk.duplicate();
+        }
+        int offset = writer.position();
+        encode(writer, message);
+        return new Message.Stored(chunk, offset);
+    }
+
+    /**
+     * Encodes a message into a byte buffer, starting at its current position. The message should be a plain or a
+     * formatted message.
+     *
+     * @param writer  The byte buffer.
+     * @param message The message to be encoded.
+     */
+    static void encode(final ByteBuffer writer, final Message message) {
+        writer.putLong(message.timestamp());
+        writer.putLong(message.sequence());
+        if (message instanceof Message.Plain plain) {
+            if (plain.message() == null) {
+                writer.put(PLAIN_NULL);
+            } else {
+                writer.put(PLAIN);
+                putText(writer, plain.message());
+            }
+        } else if (message instanceof Message.FormattedDouble formattedDouble) {
+            writer.put(FORMATTED_DOUBLE);
+            writer.putDouble(formattedDouble.number());
+            putText(writer, formattedDouble.format());
+        } else if (message instanceof Message.FormattedInteger formattedInteger) {
+            writer.put(FORMATTED_INTEGER);
+            writer.putInt(formattedInteger.number());
+            putText(writer, formattedInteger.format());
+        } else if (message instanceof Message.FormattedLong formattedLong) {
+            writer.put(FORMATTED_LONG);
+            writer.putLong(formattedLong.number());
+            putText(writer, formattedLong.format());
+        } else {
+            Message.FormattedText formattedText = (Message.FormattedText) message;
+            if (formattedText.text() == null) {
+                writer.put(FORMATTED_NULL_TEXT);
+                putText(writer, formattedText.format());
+            } else {
+                writer.put(FORMATTED_TEXT);
+                putText(writer, formattedText.format());
+                putText(writer, formattedText.text());
+            }
+        }
+    }
+
+    /**
+     * Calculates the exact size of the entry for a message.
+     *
+     * @param message The message.
+     * @return The size of the entry for the message, or Integer.MAX_VALUE if the message can't be encoded.
+     */
+    static int encodedSize(final Message message) {
+        long size = 2 * Long.BYTES + 1 + Integer.BYTES;
+        if (message instanceof Message.Plain plain) {
+            if (plain.message() == null) {
+                return 2 * Long.BYTES + 1;
+            }
+            size += Utf8.encodedLength(plain.message());
+        } else if (message instanceof Message.FormattedDouble formattedDouble) {
+            size += Double.BYTES + Utf8.encodedLength(formattedDouble.format());
+        } else if (message instanceof Message.FormattedInteger formattedInteger) {
+            size += Integer.BYTES + Utf8.encodedLength(formattedInteger.format());
+        } else if (message instanceof Message.FormattedLong formattedLong) {
+            size += Long.BYTES + Utf8.encodedLength(formattedLong.format());
+        } else if (message instanceof Message.FormattedText formattedText) {
+            size += Utf8.encodedLength(formattedText.format());
+            if (formattedText.text() != null) {
+                size += Integer.BYTES + Utf8.encodedLength(formattedText.text());
+            }
+        } else {
+            return Integer.MAX_VALUE;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, size);
+    }
+
+    /**
+     * Decodes a message stored in a chunk.
+     *
+     * @param chunk  The chunk.
+     * @param offset The offset of the entry in the chunk.
+     * @return The decoded message.
+     */
+    static Message decode(final ByteBuffer chunk, final int offset) {
+        long timestamp = chunk.getLong(offset);
+        long sequence = sequence(chunk, offset);
+        int position = offset + 2 * Long.BYTES;
+        byte kind = chunk.get(position++);
+        switch (kind) {
+        case PLAIN:
+            return new Message.Plain(getText(chunk, position), timestamp, sequence);
+        case FORMATTED_DOUBLE:
+            return new Message.FormattedDouble(getText(chunk, position + Long.BYTES), chunk.getDouble(position),
+                    timestamp, sequence);
+        case FORMATTED_INTEGER:
+            return new Message.FormattedInteger(getText(chunk, position + Integer.BYTES), chunk.getInt(position),
+                    timestamp, sequence);
+        case FORMATTED_LONG:
+            return new Message.FormattedLong(getText(chunk, position + Long.BYTES), chunk.getLong(position),
+                    timestamp, sequence);
+        case FORMATTED_NULL_TEXT:
+            return new Message.FormattedText(getText(chunk, position), null, timestamp, sequence);
+        case PLAIN_NULL:
+            return new Message.Plain(null, timestamp, sequence);
+        default:
+            int textPosition = position + Integer.BYTES + chunk.getInt(position);
+            return new Message.FormattedText(getText(chunk, position), getText(chunk, textPosition), timestamp,
+                    sequence);
+        }
+    }
+
+    /**
+     * Calculates the hash code of the template of a message stored in a chunk, without decoding the message.
+     *
+     * @param chunk  The chunk.
+     * @param offset The offset of the entry in the chunk.
+     * @return The hash code of the template of the message, or zero if the template is null.
+     */
+    static int templateHashCode(final ByteBuffer chunk, final int offset) {
+        int position = offset + 2 * Long.BYTES;
+        byte kind = chunk.get(position++);
+        switch (kind) {
+        case PLAIN_NULL:
+            return 0;
+        case FORMATTED_DOUBLE:
+        case FORMATTED_LONG:
+            position += Long.BYTES;
+            break;
+        case FORMATTED_INTEGER:
+            position += Integer.BYTES;
+            break;
+        default:
+            break;
+        }
+        return Utf8.hashCode(chunk, position + Integer.BYTES, chunk.getInt(position));
+    }
+
+    /**
+     * Reads the sequence number of a message stored in a chunk.
+     *
+     * @param chunk  The chunk.
+     * @param offset The offset of the entry in the chunk.
+     * @return The sequence number of the message.
+     */
+    static long sequence(final ByteBuffer chunk, final int offset) {
+        return chunk.getLong(offset + Long.BYTES);
+    }
+
+    /**
+     * Decodes a text from a chunk.
+     *
+     * @param chunk    The chunk.
+     * @param position The position of the text in the chunk.
+     * @return The decoded text.
+     */
+    private static String getText(final ByteBuffer chunk, final int position) {
+        byte[] bytes = new byte[chunk.getInt(position)];
+        chunk.get(position + Integer.BYTES, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Calculates the maximum size of the entry for a message.
+     *
+     * @param message The message.
+     * @return The maximum size of the entry for the message, or Integer.MAX_VALUE if the message can't be stored.
+     */
+    private static int maximumEntrySize(final Message message) {
+        long numberOfChars;
+        if (message instanceof Message.FormattedText formattedText) {
+            String text = formattedText.text();
+            numberOfChars = (long) formattedText.format().length() + (text == null ? 0 : text.length());
+        } else if (message instanceof Message.Plain || message instanceof Message.FormattedDouble
+                || message instanceof Message.FormattedInteger || message instanceof Message.FormattedLong) {
+            String template = message.template();
+            numberOfChars = template == null ? 0 : template.length();
+        } else {
+            return Integer.MAX_VALUE;
+        }
+        long maximumSize = MAXIMUM_FIXED_ENTRY_SIZE + numberOfChars * Utf8.MAXIMUM_BYTES_PER_CHAR;
+        return (int) Math.min(Integer.MAX_VALUE, maximumSize);
+    }
+
+    /**
+     * Encodes a text into a byte buffer.
+     *
+     * @param writer The byte buffer.
+     * @param text   The text to be encoded.
+     */
+    private static void putText(final ByteBuffer writer, final String text) {
+        int lengthPosition = writer.position();
+        writer.position(lengthPosition + Integer.BYTES);
+        Utf8.encode(text, writer);
+        writer.putInt(lengthPosition, writer.position() - lengthPosition - Integer.BYTES);
+    }
+}
@@ -0,0 +1,43 @@
+package net.filipvanlaenen.laconic;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Utility class handing out the sequence numbers identifying the entries of messages. Each thread claims a block of
+ * sequence numbers at a time, such that handing out a sequence number doesn't contend on a shared counter. Sequence
+ * numbers are unique and never negative, but aren't ordered between threads.
+ */
+final class MessageSequence {
+    /**
+     * The number of sequence numbers a thread claims at a time.
+     */
+    private static final int BLOCK_SIZE = 1_024;
+    /**
+     * The first sequence number of the next block to be claimed.
+     */
+    private static final AtomicLong NEXT_BLOCK = new AtomicLong();
+    /**
+     * The block of each thread, holding the next sequence number and the end of the block.
+     */
+    private static final ThreadLocal<long[]> BLOCKS = ThreadLocal.withInitial(() -> new long[2]);
+
+    /**
+     * Private constructor to prevent instantiation of this utility class.
+     */
+    private MessageSequence() {
+    }
+
+    /**
+     * Returns the next sequence number for the current thread, claiming a new block if needed.
+     *
+     * @return A sequence number that hasn't been handed out before.
+     */
+    static long next() {
+        long[] block = BLOCKS.get();
+        if (block[0] == block[1]) {
+            block[0] = NEXT_BLOCK.getAndAdd(BLOCK_SIZE);
+            block[1] = block[0] + BLOCK_SIZE;
+        }
+        return block[0]++;
+    }
+}
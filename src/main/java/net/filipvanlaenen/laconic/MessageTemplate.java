@@ -0,0 +1,289 @@
+package net.filipvanlaenen.laconic;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.IllegalFormatException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A message format compiled into a template, such that the format is parsed only once. The template supports message
+ * formats with at most one <code>%d</code>, <code>%s</code>, <code>%f</code> or <code>%.<i>n</i>f</code> specifier,
+ * together with <code>%%</code> and <code>%n</code>, and renders the argument directly into a string builder. For all
+ * other message formats, rendering is delegated to {@link String#format(java.util.Locale, String, Object...)}, such
+ * that the output is always identical to what <code>String.format</code> with the US locale would produce. Since
+ * messages are only rendered long after they have been logged, a message format that doesn't match its argument
+ * doesn't throw an exception, but is rendered as the message format followed by the argument between square brackets.
+ * A null message format is rendered as the text <code>null</code>, just like a plain message that is null.
+ *
+ * Templates are cached. A small direct-mapped cache keyed on the identity of the message format makes the lookup of
+ * literal message formats cheap, and a bounded cache with the least recently used templates catches the rest.
+ */
+final class MessageTemplate {
+    /**
+     * The number of slots in the identity cache. Should be a power of two.
+     */
+    private static final int IDENTITY_CACHE_SIZE = 256;
+    /**
+     * The maximum number of templates in the least recently used cache.
+     */
+    private static final int LRU_CACHE_SIZE = 1_024;
+    /**
+     * The default precision for the <code>%f</code> specifier.
+     */
+    private static final int DEFAULT_PRECISION = 6;
+    /**
+     * The load factor of the least recently used cache.
+     */
+    private static final float LOAD_FACTOR = 0.75F;
+    /**
+     * The conversion for a message format without specifiers consuming an argument.
+     */
+    private static final char NO_CONVERSION = 0;
+    /**
+     * The message format standing in for a null message format.
+     */
+    private static final String NULL_FORMAT = "null";
+
+    /**
+     * A record holding an entry in the identity cache.
+     *
+     * @param format   The message format.
+     * @param template The template for the message format.
+     */
+    private record IdentityCacheEntry(String format, MessageTemplate template) {
+    }
+
+    /**
+     * The identity cache.
+     */
+    private static final IdentityCacheEntry[] IDENTITY_CACHE = new IdentityCacheEntry[IDENTITY_CACHE_SIZE];
+    /**
+     * The least recently used cache.
+     */
+    private static final Map<String, MessageTemplate> LRU_CACHE =
+            new LinkedHashMap<String, MessageTemplate>(LRU_CACHE_SIZE, LOAD_FACTOR, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<String, MessageTemplate> eldest) {
+                    return size() > LRU_CACHE_SIZE;
+                }
+            };
+
+    /**
+     * The template for a null message format.
+     */
+    private static final MessageTemplate NULL_TEMPLATE = new MessageTemplate(NULL_FORMAT);
+
+    /**
+     * The message format.
+     */
+    private final String format;
+    /**
+     * Whether the message format is supported by the template, or should be delegated to String.format.
+     */
+    private final boolean supported;
+    /**
+     * The literal text before the specifier.
+     */
+    private final String prefix;
+    /**
+     * The conversion of the specifier, or {@link #NO_CONVERSION} if there's no specifier consuming an argument.
+     */
+    private final char conversion;
+    /**
+     * The precision of the specifier.
+     */
+    private final int precision;
+    /**
+     * The literal text after the specifier.
+     */
+    private final String suffix;
+
+    /**
+     * Constructor compiling a message format into a template.
+     *
+     * @param format The message format.
+     */
+    private MessageTemplate(final String format) {
+        this.format = format;
+        StringBuilder prefixBuilder = new StringBuilder();
+        StringBuilder suffixBuilder = new StringBuilder();
+        StringBuilder literal = prefixBuilder;
+        char compiledConversion = NO_CONVERSION;
+        int compiledPrecision = -1;
+        boolean compiledSupported = true;
+        int length = format.length();
+        int i = 0;
+        while (i < length && compiledSupported) {
+            char c = format.charAt(i++);
+            if (c != '%') {
+                literal.append(c);
+                continue;
+            }
+            int specifierPrecision = -1;
+            if (i < length && format.charAt(i) == '.') {
+                int precisionStart = ++i;
+                while (i < length && Character.isDigit(format.charAt(i))) {
+                    i++;
+                }
+                if (i == precisionStart || i - precisionStart > 2) {
+                    compiledSupported = false;
+                    break;
+                }
+                specifierPrecision = Integer.parseInt(format.substring(precisionStart, i));
+            }
+            char specifierConversion = i < length ? format.charAt(i++) : NO_CONVERSION;
+            if (specifierConversion == '%' && specifierPrecision == -1) {
+                literal.append('%');
+            } else if (specifierConversion == 'n' && specifierPrecision == -1) {
+                literal.append(System.lineSeparator());
+            } else if (compiledConversion == NO_CONVERSION
+                    && (specifierConversion == 'f' || specifierPrecision == -1 && specifierConversion == 'd'
+                            || specifierPrecision == -1 && specifierConversion == 's')) {
+                compiledConversion = specifierConversion;
+                compiledPrecision = specifierPrecision == -1 ? DEFAULT_PRECISION : specifierPrecision;
+                literal = suffixBuilder;
+            } else {
+                compiledSupported = false;
+            }
+        }
+        this.supported = compiledSupported;
+        this.prefix = prefixBuilder.toString();
+        this.conversion = compiledConversion;
+        this.precision = compiledPrecision;
+        this.suffix = suffixBuilder.toString();
+    }
+
+    /**
+     * Appends a message formatted by {@link String#format(java.util.Locale, String, Object...)} to a string builder,
+     * falling back to the message format followed by the argument if the message format doesn't match the argument.
+     *
+     * @param builder  The string builder.
+     * @param argument The argument to be included in the message.
+     */
+    private void appendFormatted(final StringBuilder builder, final Object argument) {
+        try {
+            builder.append(String.format(Laconic.LOCALE, format, argument));
+        } catch (IllegalFormatException ife) {
+            builder.append(format).append(" [").append(argument).append(']');
+        }
+    }
+
+    /**
+     * Appends a message formatted with a double to a string builder.
+     *
+     * @param builder The string builder.
+     * @param number  The double number to be included in the message.
+     */
+    void appendTo(final StringBuilder builder, final double number) {
+        if (!supported || conversion == 'd' || conversion == 'f' && !Double.isFinite(number)) {
+            appendFormatted(builder, number);
+            return;
+        }
+        builder.append(prefix);
+        if (conversion == 'f') {
+            if (Double.doubleToRawLongBits(number) < 0L) {
+                builder.append('-');
+            }
+            BigDecimal decimal = new BigDecimal(Double.toString(Math.abs(number)));
+            builder.append(decimal.setScale(precision, RoundingMode.HALF_UP).toPlainString());
+        } else if (conversion == 's') {
+            builder.append(number);
+        }
+        builder.append(suffix);
+    }
+
+    /**
+     * Appends a message formatted with an integer to a string builder.
+     *
+     * @param builder The string builder.
+     * @param number  The integer number to be included in the message.
+     */
+    void appendTo(final StringBuilder builder, final int number) {
+        if (!supported || conversion == 'f') {
+            appendFormatted(builder, number);
+            return;
+        }
+        builder.append(prefix);
+        if (conversion != NO_CONVERSION) {
+            builder.append(number);
+        }
+        builder.append(suffix);
+    }
+
+    /**
+     * Appends a message formatted with a long to a string builder.
+     *
+     * @param builder The string builder.
+     * @param number  The long number to be included in the message.
+     */
+    void appendTo(final StringBuilder builder, final long number) {
+        if (!supported || conversion == 'f') {
+            appendFormatted(builder, number);
+            return;
+        }
+        builder.append(prefix);
+        if (conversion != NO_CONVERSION) {
+            builder.append(number);
+        }
+        builder.append(suffix);
+    }
+
+    /**
+     * Appends a message formatted with a text to a string builder.
+     *
+     * @param builder The string builder.
+     * @param text    The text to be included in the message.
+     */
+    void appendTo(final StringBuilder builder, final String text) {
+        if (!supported || conversion == 'd' || conversion == 'f') {
+            appendFormatted(builder, text);
+            return;
+        }
+        builder.append(prefix);
+        if (conversion == 's') {
+            builder.append(text);
+        }
+        builder.append(suffix);
+    }
+
+    /**
+     * Returns a message format, replacing a null message format by the message format standing in for it.
+     *
+     * @param format The message format, or null.
+     * @return The message format, or the message format standing in for null.
+     */
+    static String nonNullFormat(final String format) {
+        return format == null ? NULL_FORMAT : format;
+    }
+
+    /**
+     * Returns the template for a message format, compiling it if it isn't cached yet. A null message format gets a
+     * template rendering the text <code>null</code>.
+     *
+     * @param format The message format, or null.
+     * @return The template for the message format.
+     */
+    static MessageTemplate of(final String format) {
+        if (format == null) {
+            return NULL_TEMPLATE;
+        }
+        int slot = System.identityHashCode(format) & (IDENTITY_CACHE_SIZE - 1);
+        IdentityCacheEntry entry = IDENTITY_CACHE[slot];
+        if (entry != null && entry.format() == format) {
+            return entry.template();
+        }
+        MessageTemplate template;
+        synchronized (LRU_CACHE) {
+            template = LRU_CACHE.get(format);
+            if (template == null) {
+                template = new MessageTemplate(format);
+                LRU_CACHE.put(format, template);
+            }
+        }
+        IDENTITY_CACHE[slot] = new IdentityCacheEntry(format, template);
+        return template;
+    }
+}
@@ -0,0 +1,32 @@
+package net.filipvanlaenen.laconic;
+
+/**
+ * A record holding a snapshot of the metrics of a logger.
+ *
+ * @param tokensCreated          The number of tokens created.
+ * @param liveTokens             The number of tokens obtained while the metrics were enabled that haven't been closed
+ *                               yet. Tokens that are dropped without being closed are counted as live.
+ * @param messagesLogged         The number of messages logged to tokens.
+ * @param messageAppends         The number of times a message has been appended to a token.
+ * @param maximumFanOut          The largest number of tokens a single message has been appended to.
+ * @param estimatedAppendedBytes The estimated number of bytes appended to tokens. This is an upper bound for the
+ *                               number of bytes retained by the tokens, since messages that have been elided or packed,
+ *                               and tokens that have been garbage collected, aren't subtracted.
+ * @param errorsLogged           The number of errors logged.
+ * @param errorsSuppressed       The number of errors suppressed as repetitions of earlier errors.
+ * @param progressLinesLogged    The number of progress lines written.
+ * @param renderLatencyHistogram The histogram of the render latencies of errors, with power of two buckets in
+ *                               nanoseconds.
+ */
+public record MetricsSnapshot(long tokensCreated, long liveTokens, long messagesLogged, long messageAppends,
+        long maximumFanOut, long estimatedAppendedBytes, long errorsLogged, long errorsSuppressed,
+        long progressLinesLogged, long[] renderLatencyHistogram) {
+    /**
+     * Returns the average number of tokens a message has been appended to.
+     *
+     * @return The average number of tokens a message has been appended to, or zero if no messages have been logged.
+     */
+    public double averageFanOut() {
+        return messagesLogged == 0L ? 0D : (double) messageAppends / messagesLogged;
+    }
+}
@@ -0,0 +1,15 @@
+package net.filipvanlaenen.laconic;
+
+/**
+ * Enumeration with the formats in which a logger can write its error and progress messages.
+ */
+public enum OutputFormat {
+    /**
+     * Human-readable text, with the messages on the tokens of an error marked with <code>‡ ⬐</code>.
+     */
+    TEXT,
+    /**
+     * JSON Lines, with one JSON object per error, summary or progress message.
+     */
+    JSON_LINES
+}
@@ -0,0 +1,528 @@
+package net.filipvanlaenen.laconic;
+
+import java.lang.ref.Reference;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An immutable, compact sequence of messages packed into a byte array. Every entry consists of the difference between
+ * its timestamp and the timestamp of the previous entry as a variable-length integer, the difference between its
+ * sequence number and the sequence number of the previous entry as a variable-length integer, a byte telling the kind
+ * of message, and the content of the message. Texts are encoded as their length in bytes followed by their UTF-8
+ * encoding. A message formatted with a null text has its own kind of entry, holding only the format, and so has a plain
+ * message that is null, holding no text at all. The messages are only decoded when they're requested.
+ *
+ * Packed sequences can be shared between tokens. A sequence extended with more messages reuses the byte array of the
+ * original sequence if no other sequence has claimed the free space at its end yet, such that packing the messages of a
+ * growing token takes amortized linear time.
+ *
+ * When a spill file is used, and the packed messages take up too much space on the heap, the bytes of a sequence are
+ * spilled to the file before more messages are appended to it. The spilled sequence is then followed by a new sequence
+ * on the heap, and is decoded directly from the mapping of the file when the messages are requested.
+ */
+final class PackedMessages {
+    /**
+     * The kind of entry for a plain message.
+     */
+    private static final byte PLAIN = 0;
+    /**
+     * The kind of entry for a message formatted with a double.
+     */
+    private static final byte FORMATTED_DOUBLE = 1;
+    /**
+     * The kind of entry for a message formatted with an integer.
+     */
+    private static final byte FORMATTED_INTEGER = 2;
+    /**
+     * The kind of entry for a message formatted with a long.
+     */
+    private static final byte FORMATTED_LONG = 3;
+    /**
+     * The kind of entry for a message formatted with a text.
+     */
+    private static final byte FORMATTED_TEXT = 4;
+    /**
+     * The kind of entry for a marker for elided messages.
+     */
+    private static final byte ELIDED = 5;
+    /**
+     * The kind of entry for a message formatted with a null text.
+     */
+    private static final byte FORMATTED_NULL_TEXT = 6;
+    /**
+     * The kind of entry for a plain message that is null.
+     */
+    private static final byte PLAIN_NULL = 7;
+    /**
+     * The maximum number of bytes in a variable-length integer.
+     */
+    private static final int MAXIMUM_VARINT_SIZE = 10;
+    /**
+     * The maximum number of bytes in an entry that aren't used by the texts.
+     */
+    private static final int MAXIMUM_FIXED_ENTRY_SIZE = 1 + 3 * MAXIMUM_VARINT_SIZE + 2 * MAXIMUM_VARINT_SIZE;
+    /**
+     * The minimal capacity of a byte array.
+     */
+    private static final int MINIMAL_CAPACITY = 64;
+    /**
+     * The number of payload bits in a byte of a variable-length integer.
+     */
+    private static final int VARINT_PAYLOAD_BITS = 7;
+    /**
+     * The mask for the payload bits in a byte of a variable-length integer.
+     */
+    private static final int VARINT_PAYLOAD_MASK = 0x7F;
+    /**
+     * The bit telling that more bytes follow in a variable-length integer.
+     */
+    private static final int VARINT_CONTINUATION_BIT = 0x80;
+    /**
+     * The number of bits to shift to get the sign of a long.
+     */
+    private static final int SIGN_SHIFT = 63;
+    /**
+     * The minimal number of bytes in a sequence on the heap before it is spilled.
+     */
+    private static final int MINIMAL_SPILL_LENGTH = 1_024;
+
+    /**
+     * Class holding a byte array and the number of bytes that have been claimed in it.
+     */
+    private static final class Buffer {
+        /**
+         * The bytes.
+         */
+        private final byte[] bytes;
+        /**
+         * The number of bytes that have been claimed.
+         */
+        private final AtomicInteger claimed;
+
+        /**
+         * Constructor taking the capacity as its parameter.
+         *
+         * @param capacity The capacity of the buffer.
+         */
+        private Buffer(final int capacity) {
+            bytes = new byte[capacity];
+            claimed = new AtomicInteger();
+        }
+    }
+
+    /**
+     * The buffer with the bytes, or null if the bytes have been spilled.
+     */
+    private final Buffer buffer;
+    /**
+     * A read-only view on the spilled bytes, or null if the bytes are on the heap.
+     */
+    private final ByteBuffer spilled;
+    /**
+     * The spilled sequence preceding the bytes of this sequence, or null if there is none.
+     */
+    private final PackedMessages colder;
+    /**
+     * The number of bytes belonging to this sequence, not counting the bytes of the preceding spilled sequence.
+     */
+    private final int length;
+    /**
+     * The number of messages in this sequence, including the messages in the preceding spilled sequence.
+     */
+    private final int count;
+    /**
+     * The timestamp of the last message in this sequence.
+     */
+    private final long lastTimestamp;
+    /**
+     * The sequence number of the last message in this sequence.
+     */
+    private final long lastSequence;
+    /**
+     * The hash codes of the templates of the last messages in this sequence, starting with the last message.
+     */
+    private final int[] lastTemplateHashCodes;
+
+    /**
+     * Constructor for a sequence on the heap.
+     *
+     * @param buffer                The buffer with the bytes.
+     * @param colder                The spilled sequence preceding the bytes of this sequence, or null.
+     * @param length                The number of bytes belonging to this sequence.
+     * @param count                 The number of messages in this sequence.
+     * @param lastTimestamp         The timestamp of the last message in this sequence.
+     * @param lastSequence          The sequence number of the last message in this sequence.
+     * @param lastTemplateHashCodes The hash codes of the templates of the last messages, starting with the last one.
+     */
+    private PackedMessages(final Buffer buffer, final PackedMessages colder, final int length, final int count,
+            final long lastTimestamp, final long lastSequence, final int[] lastTemplateHashCodes) {
+        this.buffer = buffer;
+        this.spilled = null;
+        this.colder = colder;
+        this.length = length;
+        this.count = count;
+        this.lastTimestamp = lastTimestamp;
+        this.lastSequence = lastSequence;
+        this.lastTemplateHashCodes = lastTemplateHashCodes;
+    }
+
+    /**
+     * Constructor for a sequence whose bytes have been spilled.
+     *
+     * @param sequence The sequence on the heap that has been spilled.
+     * @param spilled  A read-only view on the spilled bytes.
+     */
+    private PackedMessages(final PackedMessages sequence, final ByteBuffer spilled) {
+        this.buffer = null;
+        this.spilled = spilled;
+        this.colder = sequence.colder;
+        this.length = sequence.length;
+        this.count = sequence.count;
+        this.lastTimestamp = sequence.lastTimestamp;
+        this.lastSequence = sequence.lastSequence;
+        this.lastTemplateHashCodes = sequence.lastTemplateHashCodes;
+    }
+
+    /**
+     * Returns whether a message can be packed.
+     *
+     * @param message The message.
+     * @return True if the message can be packed.
+     */
+    static boolean canPack(final Message message) {
+        return !(message instanceof Message.Stored);
+    }
+
+    /**
+     * Returns the number of messages in this sequence.
+     *
+     * @return The number of messages in this sequence.
+     */
+    int count() {
+        return count;
+    }
+
+    /**
+     * Decodes the messages in this sequence into the start of an array.
+     *
+     * @param messages The array into which the messages should be decoded.
+     */
+    void decodeInto(final Message[] messages) {
+        for (PackedMessages sequence = this; sequence != null; sequence = sequence.colder) {
+            sequence.decodeOwnEntriesInto(messages);
+        }
+    }
+
+    /**
+     * Decodes the messages in this sequence, except for the messages in the preceding spilled sequence, into an array.
+     *
+     * @param messages The array into which the messages should be decoded.
+     */
+    private void decodeOwnEntriesInto(final Message[] messages) {
+        ByteBuffer in = buffer == null ? spilled.duplicate() : ByteBuffer.wrap(buffer.bytes, 0, length);
+        long timestamp = colder == null ? 0L : colder.lastTimestamp;
+        long sequence = colder == null ? 0L : colder.lastSequence;
+        for (int i = colder == null ? 0 : colder.count; i < count; i++) {
+            timestamp += decodeZigZag(getVarint(in));
+            sequence += decodeZigZag(getVarint(in));
+            byte kind = in.get();
+            switch (kind) {
+            case PLAIN:
+                messages[i] = new Message.Plain(getText(in), timestamp, sequence);
+                break;
+            case FORMATTED_DOUBLE:
+                double doubleNumber = Double.longBitsToDouble(getVarint(in));
+                messages[i] = new Message.FormattedDouble(getText(in), doubleNumber, timestamp, sequence);
+                break;
+            case FORMATTED_INTEGER:
+                int integerNumber = (int) decodeZigZag(getVarint(in));
+                messages[i] = new Message.FormattedInteger(getText(in), integerNumber, timestamp, sequence);
+                break;
+            case FORMATTED_LONG:
+                long longNumber = decodeZigZag(getVarint(in));
+                messages[i] = new Message.FormattedLong(getText(in), longNumber, timestamp, sequence);
+                break;
+            case FORMATTED_TEXT:
+                String format = getText(in);
+                messages[i] = new Message.FormattedText(format, getText(in), timestamp, sequence);
+                break;
+            case FORMATTED_NULL_TEXT:
+                messages[i] = new Message.FormattedText(getText(in), null, timestamp, sequence);
+                break;
+            case PLAIN_NULL:
+                messages[i] = new Message.Plain(null, timestamp, sequence);
+                break;
+            default:
+                messages[i] = new Message.Elided((int) getVarint(in), timestamp, sequence);
+            }
+        }
+        // The spill file may reuse the region of the view as soon as the view is unreachable.
+        Reference.reachabilityFence(spilled);
+    }
+
+    /**
+     * Decodes a zigzag-encoded number.
+     *
+     * @param value The zigzag-encoded number.
+     * @return The decoded number.
+     */
+    private static long decodeZigZag(final long value) {
+        return (value >>> 1) ^ -(value & 1L);
+    }
+
+    /**
+     * Encodes a number with zigzag encoding, such that small negative numbers become small positive numbers.
+     *
+     * @param value The number to be encoded.
+     * @return The zigzag-encoded number.
+     */
+    private static long encodeZigZag(final long value) {
+        return (value << 1) ^ (value >> SIGN_SHIFT);
+    }
+
+    /**
+     * Reads a text from a byte buffer.
+     *
+     * @param in The byte buffer.
+     * @return The text.
+     */
+    private static String getText(final ByteBuffer in) {
+        int textLength = (int) getVarint(in);
+        if (!in.hasArray()) {
+            byte[] bytes = new byte[textLength];
+            in.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        String text = new String(in.array(), in.position(), textLength, StandardCharsets.UTF_8);
+        in.position(in.position() + textLength);
+        return text;
+    }
+
+    /**
+     * Reads a variable-length integer from a byte buffer.
+     *
+     * @param in The byte buffer.
+     * @return The integer.
+     */
+    private static long getVarint(final ByteBuffer in) {
+        long value = 0L;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (long) (b & VARINT_PAYLOAD_MASK) << shift;
+            shift += VARINT_PAYLOAD_BITS;
+        } while ((b & VARINT_CONTINUATION_BIT) != 0);
+        return value;
+    }
+
+    /**
+     * Calculates the maximum size of the entry for a message.
+     *
+     * @param message The message.
+     * @return The maximum size of the entry.
+     */
+    private static long maximumEntrySize(final Message message) {
+        long numberOfChars;
+        if (message instanceof Message.FormattedText formattedText) {
+            String text = formattedText.text();
+            numberOfChars = (long) formattedText.format().length() + (text == null ? 0 : text.length());
+        } else if (message instanceof Message.Elided) {
+            numberOfChars = 0L;
+        } else {
+            String template = message.template();
+            numberOfChars = template == null ? 0 : template.length();
+        }
+        return MAXIMUM_FIXED_ENTRY_SIZE + numberOfChars * Utf8.MAXIMUM_BYTES_PER_CHAR;
+    }
+
+    /**
+     * Packs messages, appending them to a packed sequence. All messages should be packable. If a spill file is given,
+     * and the packed messages take up too much space on the heap, the packed sequence is spilled first.
+     *
+     * @param base      The packed sequence to which the messages should be appended, or null.
+     * @param messages  An array with the messages.
+     * @param from      The index of the first message to be packed.
+     * @param to        The index after the last message to be packed.
+     * @param spillFile The spill file, or null if packed messages shouldn't be spilled.
+     * @return The packed sequence with the messages appended.
+     */
+    static PackedMessages pack(final PackedMessages base, final Message[] messages, final int from, final int to,
+            final SpillFile spillFile) {
+        if (from == to) {
+            return base;
+        }
+        long maximumSize = 0L;
+        for (int i = from; i < to; i++) {
+            maximumSize += maximumEntrySize(messages[i]);
+        }
+        PackedMessages start = base;
+        if (spillFile != null && base != null && base.buffer != null && base.length >= MINIMAL_SPILL_LENGTH
+                && spillFile.isOverThreshold()) {
+            start = base.spill(spillFile);
+        }
+        Buffer baseBuffer = start == null ? null : start.buffer;
+        int baseLength = baseBuffer == null ? 0 : start.length;
+        if (baseLength + maximumSize > Integer.MAX_VALUE) {
+            throw new IllegalStateException("The packed messages don't fit into a byte array.");
+        }
+        int claim = (int) (baseLength + maximumSize);
+        Buffer buffer;
+        if (baseBuffer != null && claim <= baseBuffer.bytes.length
+                && baseBuffer.claimed.compareAndSet(baseLength, claim)) {
+            buffer = baseBuffer;
+        } else {
+            int capacity = Math.max(MINIMAL_CAPACITY, claim);
+            if (baseBuffer != null) {
+                long grownCapacity = baseBuffer.bytes.length + (long) (baseBuffer.bytes.length >> 1);
+                capacity = (int) Math.min(Integer.MAX_VALUE, Math.max(capacity, grownCapacity));
+            }
+            buffer = new Buffer(capacity);
+            if (spillFile != null) {
+                spillFile.track(buffer.bytes);
+            }
+            if (baseBuffer != null) {
+                System.arraycopy(baseBuffer.bytes, 0, buffer.bytes, 0, baseLength);
+            }
+            buffer.claimed.set(claim);
+        }
+        ByteBuffer out = ByteBuffer.wrap(buffer.bytes);
+        out.position(baseLength);
+        long timestamp = start == null ? 0L : start.lastTimestamp;
+        long sequence = start == null ? 0L : start.lastSequence;
+        for (int i = from; i < to; i++) {
+            Message message = messages[i];
+            putVarint(out, encodeZigZag(message.timestamp() - timestamp));
+            timestamp = message.timestamp();
+            putVarint(out, encodeZigZag(message.sequence() - sequence));
+            sequence = message.sequence();
+            putEntry(out, message);
+        }
+        buffer.claimed.compareAndSet(claim, out.position());
+        PackedMessages colder = start == null || baseBuffer == null ? start : start.colder;
+        return new PackedMessages(buffer, colder, out.position(), (start == null ? 0 : start.count) + to - from,
+                timestamp, sequence, lastTemplateHashCodes(start, messages, from, to));
+    }
+
+    /**
+     * Writes the kind and the content of a message to a byte buffer.
+     *
+     * @param out     The byte buffer.
+     * @param message The message.
+     */
+    private static void putEntry(final ByteBuffer out, final Message message) {
+        if (message instanceof Message.Plain plain) {
+            if (plain.message() == null) {
+                out.put(PLAIN_NULL);
+            } else {
+                out.put(PLAIN);
+                putText(out, plain.message());
+            }
+        } else if (message instanceof Message.FormattedDouble formattedDouble) {
+            out.put(FORMATTED_DOUBLE);
+            putVarint(out, Double.doubleToRawLongBits(formattedDouble.number()));
+            putText(out, formattedDouble.format());
+        } else if (message instanceof Message.FormattedInteger formattedInteger) {
+            out.put(FORMATTED_INTEGER);
+            putVarint(out, encodeZigZag(formattedInteger.number()));
+            putText(out, formattedInteger.format());
+        } else if (message instanceof Message.FormattedLong formattedLong) {
+            out.put(FORMATTED_LONG);
+            putVarint(out, encodeZigZag(formattedLong.number()));
+            putText(out, formattedLong.format());
+        } else if (message instanceof Message.FormattedText formattedText) {
+            if (formattedText.text() == null) {
+                out.put(FORMATTED_NULL_TEXT);
+                putText(out, formattedText.format());
+            } else {
+                out.put(FORMATTED_TEXT);
+                putText(out, formattedText.format());
+                putText(out, formattedText.text());
+            }
+        } else {
+            out.put(ELIDED);
+            putVarint(out, ((Message.Elided) message).count());
+        }
+    }
+
+    /**
+     * Writes a text to a byte buffer.
+     *
+     * @param out  The byte buffer.
+     * @param text The text.
+     */
+    private static void putText(final ByteBuffer out, final String text) {
+        putVarint(out, Utf8.encodedLength(text));
+        Utf8.encode(text, out);
+    }
+
+    /**
+     * Writes a variable-length integer to a byte buffer.
+     *
+     * @param out   The byte buffer.
+     * @param value The integer, interpreted as unsigned.
+     */
+    private static void putVarint(final ByteBuffer out, final long value) {
+        long remaining = value;
+        while ((remaining & ~VARINT_PAYLOAD_MASK) != 0L) {
+            out.put((byte) ((remaining & VARINT_PAYLOAD_MASK) | VARINT_CONTINUATION_BIT));
+            remaining >>>= VARINT_PAYLOAD_BITS;
+        }
+        out.put((byte) remaining);
+    }
+
+    /**
+     * Spills the bytes of this sequence to a spill file.
+     *
+     * @param spillFile The spill file.
+     * @return The spilled sequence, or this sequence if the bytes couldn't be spilled.
+     */
+    private PackedMessages spill(final SpillFile spillFile) {
+        ByteBuffer region = spillFile.spill(buffer.bytes, length);
+        if (region == null) {
+            return this;
+        }
+        return new PackedMessages(this, region);
+    }
+
+    /**
+     * Returns the hash code of the template of a message in this sequence, counting back from the last message.
+     *
+     * @param index The index of the message, counting back from the last message.
+     * @return The hash code of the template of the message.
+     */
+    int templateHashCode(final int index) {
+        return lastTemplateHashCodes[index];
+    }
+
+    /**
+     * Returns the number of template hash codes available, counting back from the last message.
+     *
+     * @return The number of template hash codes available.
+     */
+    int numberOfTemplateHashCodes() {
+        return lastTemplateHashCodes.length;
+    }
+
+    /**
+     * Calculates the hash codes of the templates of the last messages after messages have been appended to a packed
+     * sequence, starting with the last message.
+     *
+     * @param base     The packed sequence to which the messages are appended, or null.
+     * @param messages An array with the messages.
+     * @param from     The index of the first message appended.
+     * @param to       The index after the last message appended.
+     * @return The hash codes of the templates of the last messages.
+     */
+    private static int[] lastTemplateHashCodes(final PackedMessages base, final Message[] messages, final int from,
+            final int to) {
+        int baseLength = base == null ? 0 : base.lastTemplateHashCodes.length;
+        int[] hashCodes = new int[Math.min(Token.MAXIMUM_FINGERPRINT_LENGTH, to - from + baseLength)];
+        for (int i = 0; i < hashCodes.length; i++) {
+            hashCodes[i] = i < to - from ? messages[to - 1 - i].templateHashCode()
+                    : base.lastTemplateHashCodes[i - (to - from)];
+        }
+        return hashCodes;
+    }
+}
@@ -0,0 +1,20 @@
+package net.filipvanlaenen.laconic;
+
+import java.io.PrintStream;
+
+/**
+ * A sink writing the blocks of log messages to a PrintStream.
+ *
+ * @param printStream The PrintStream to which the blocks are written.
+ */
+public record PrintStreamSink(PrintStream printStream) implements Sink {
+    @Override
+    public void flush() {
+        printStream.flush();
+    }
+
+    @Override
+    public void write(final CharSequence block) {
+        printStream.print(block);
+    }
+}
@@ -0,0 +1,124 @@
+package net.filipvanlaenen.laconic;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Class coalescing progress messages logged in quick succession. A new progress message replaces the pending one, and
+ * a dedicated ticker thread emits the pending progress message at a maximum rate. The pending progress message can be
+ * emitted on demand too, e.g. before an error is logged, such that no progress message logged before an error is lost.
+ * A shutdown hook makes sure that the pending progress message is emitted before the JVM exits.
+ */
+final class ProgressCoalescer {
+    /**
+     * The pending progress message, or null if there's no pending progress message.
+     */
+    private final AtomicReference<Message> pending = new AtomicReference<Message>();
+    /**
+     * The emitter for the progress messages.
+     */
+    private final Consumer<Message> emitter;
+    /**
+     * The minimal interval between two progress messages emitted by the ticker thread, in nanoseconds.
+     */
+    private final long intervalNanos;
+    /**
+     * The thread emitting the pending progress messages.
+     */
+    private final Thread tickerThread;
+    /**
+     * The shutdown hook emitting the pending progress message.
+     */
+    private final Thread shutdownHook;
+    /**
+     * Whether the ticker thread should keep on running.
+     */
+    private volatile boolean running = true;
+    /**
+     * Whether the ticker thread is parked waiting for a new progress message.
+     */
+    private volatile boolean sleeping;
+
+    /**
+     * Constructor taking the emitter and the minimal interval between two emitted progress messages as its parameters.
+     *
+     * @param emitter       The emitter for the progress messages.
+     * @param intervalNanos The minimal interval between two progress messages emitted by the ticker thread, in
+     *                      nanoseconds.
+     */
+    ProgressCoalescer(final Consumer<Message> emitter, final long intervalNanos) {
+        this.emitter = emitter;
+        this.intervalNanos = intervalNanos;
+        tickerThread = new Thread(this::tick, "laconic-progress-ticker");
+        tickerThread.setDaemon(true);
+        tickerThread.start();
+        shutdownHook = new Thread(this::emitPending, "laconic-shutdown-progress");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * Stops the ticker thread, emits the pending progress message, and removes the shutdown hook.
+     */
+    void close() {
+        running = false;
+        LockSupport.unpark(tickerThread);
+        try {
+            tickerThread.join();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        emitPending();
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException ise) {
+            // The JVM is already shutting down, and the shutdown hook has been started already.
+        }
+    }
+
+    /**
+     * Emits the pending progress message, if there is one. Emissions are serialized, such that a progress message
+     * emitted by the ticker thread is completely written before a caller of this method continues.
+     */
+    synchronized void emitPending() {
+        Message progress = pending.getAndSet(null);
+        if (progress != null) {
+            emitter.accept(progress);
+        }
+    }
+
+    /**
+     * Replaces the pending progress message with a new one.
+     *
+     * @param progress The new progress message.
+     */
+    void offer(final Message progress) {
+        if (pending.getAndSet(progress) == null && sleeping) {
+            sleeping = false;
+            LockSupport.unpark(tickerThread);
+        }
+    }
+
+    /**
+     * Emits the pending progress messages at the maximum rate. Runs on the ticker thread.
+     */
+    private void tick() {
+        while (running) {
+            if (pending.get() == null) {
+                sleeping = true;
+                if (pending.get() == null && running) {
+                    LockSupport.park(this);
+                }
+                sleeping = false;
+                continue;
+            }
+            emitPending();
+            long deadline = System.nanoTime() + intervalNanos;
+            long remaining = intervalNanos;
+            while (running && remaining > 0L) {
+                LockSupport.parkNanos(this, remaining);
+                remaining = deadline - System.nanoTime();
+            }
+        }
+    }
+}
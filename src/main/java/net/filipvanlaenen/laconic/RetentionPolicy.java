@@ -0,0 +1,41 @@
+package net.filipvanlaenen.laconic;
+
+/**
+ * A record holding the retention policy for the messages on a token.
+ *
+ * @param maximumNumberOfMessages The maximum number of messages to be retained on a token.
+ * @param timeToLive              The number of milliseconds a message is retained on a token.
+ */
+record RetentionPolicy(int maximumNumberOfMessages, long timeToLive) {
+    /**
+     * The minimal number of messages on a token before the retention policy is applied when only a time to live is
+     * set.
+     */
+    private static final int MINIMAL_CHECK_SIZE = 16;
+
+    /**
+     * Returns the timestamp of the oldest message that should be retained.
+     *
+     * @param now The current time in milliseconds.
+     * @return The timestamp of the oldest message that should be retained.
+     */
+    long oldestTimestamp(final long now) {
+        return timeToLive == Long.MAX_VALUE ? Long.MIN_VALUE : now - timeToLive;
+    }
+
+    /**
+     * Returns the size of the chain of messages on a token at which the retention policy should be applied again. The
+     * chain is allowed to grow to twice its retained size, such that the cost of applying the retention policy is
+     * amortized over the messages added in between.
+     *
+     * @param retainedSize The size of the chain of messages after the retention policy has been applied.
+     * @return The size at which the retention policy should be applied again.
+     */
+    int nextCheckSize(final int retainedSize) {
+        long byTimeToLive =
+                timeToLive == Long.MAX_VALUE ? Integer.MAX_VALUE : Math.max(2L * retainedSize, MINIMAL_CHECK_SIZE);
+        long byMaximumNumberOfMessages =
+                maximumNumberOfMessages == Integer.MAX_VALUE ? Integer.MAX_VALUE : 2L * maximumNumberOfMessages + 1;
+        return (int) Math.min(Integer.MAX_VALUE, Math.min(byTimeToLive, byMaximumNumberOfMessages));
+    }
+}
@@ -0,0 +1,117 @@
+package net.filipvanlaenen.laconic;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded, lock-free ring buffer for many producers and a single consumer. Every slot carries a sequence number
+ * telling whether it is ready to be written to by a producer or read from by the consumer, such that producers only
+ * compete on a single compare-and-set of the enqueue position.
+ *
+ * @param <E> The element type.
+ */
+final class RingBuffer<E> {
+    /**
+     * The elements in the buffer.
+     */
+    private final Object[] elements;
+    /**
+     * The sequence numbers of the slots.
+     */
+    private final AtomicLongArray sequences;
+    /**
+     * The mask to convert a position into an index.
+     */
+    private final int mask;
+    /**
+     * The position where the next element will be enqueued.
+     */
+    private final AtomicLong enqueuePosition = new AtomicLong();
+    /**
+     * The position where the next element will be dequeued. Only accessed by the consumer.
+     */
+    private long dequeuePosition;
+
+    /**
+     * Constructor taking the minimal capacity as its parameter. The capacity is rounded up to a power of two.
+     *
+     * @param minimalCapacity The minimal capacity of the buffer.
+     */
+    RingBuffer(final int minimalCapacity) {
+        if (minimalCapacity < 1) {
+            throw new IllegalArgumentException("The capacity of a ring buffer should be at least 1.");
+        }
+        int capacity = Integer.highestOneBit(minimalCapacity);
+        if (capacity < minimalCapacity) {
+            capacity <<= 1;
+        }
+        elements = new Object[capacity];
+        sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+        mask = capacity - 1;
+    }
+
+    /**
+     * Returns the capacity of the buffer.
+     *
+     * @return The capacity of the buffer.
+     */
+    int capacity() {
+        return elements.length;
+    }
+
+    /**
+     * Returns the total number of elements that have been enqueued so far.
+     *
+     * @return The total number of elements that have been enqueued so far.
+     */
+    long getEnqueuedCount() {
+        return enqueuePosition.get();
+    }
+
+    /**
+     * Tries to add an element to the buffer. Can be called by many threads concurrently.
+     *
+     * @param element The element to be added.
+     * @return True if the element was added, false if the buffer was full.
+     */
+    boolean offer(final E element) {
+        long position = enqueuePosition.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (enqueuePosition.compareAndSet(position, position + 1)) {
+                    elements[index] = element;
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = enqueuePosition.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = enqueuePosition.get();
+            }
+        }
+    }
+
+    /**
+     * Removes and returns the element at the head of the buffer. May only be called by the consumer thread.
+     *
+     * @return The element at the head of the buffer, or null if the buffer is empty.
+     */
+    E poll() {
+        int index = (int) (dequeuePosition & mask);
+        if (sequences.get(index) != dequeuePosition + 1) {
+            return null;
+        }
+        @SuppressWarnings("unchecked")
+        E element = (E) elements[index];
+        elements[index] = null;
+        sequences.set(index, dequeuePosition + mask + 1);
+        dequeuePosition++;
+        return element;
+    }
+}
@@ -0,0 +1,92 @@
+package net.filipvanlaenen.laconic;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A sampler deciding whether a new unit of work is recorded, i.e. whether the messages logged for it are kept on its
+ * tokens. A sampler either samples one in a fixed number of units of work at random, or samples adaptively: all units
+ * of work are sampled as long as at most a maximum number of units of work are started per second, and under a higher
+ * load, only the first units of work of every second up to that maximum are sampled.
+ */
+final class Sampler {
+    /**
+     * The number of nanoseconds in a second, the length of the windows of the adaptive sampler.
+     */
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    /**
+     * The one in how many units of work should be sampled, or zero if the sampler is adaptive.
+     */
+    private final int oneIn;
+    /**
+     * The maximum number of units of work sampled per second by the adaptive sampler.
+     */
+    private final int maximumPerSecond;
+    /**
+     * The start of the current window of the adaptive sampler, in nanoseconds.
+     */
+    private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+    /**
+     * The number of units of work sampled in the current window of the adaptive sampler.
+     */
+    private final AtomicInteger sampledInWindow = new AtomicInteger();
+
+    /**
+     * Constructor taking the one in how many units of work should be sampled and the maximum number of units of work
+     * to be sampled per second as its parameters.
+     *
+     * @param oneIn            The one in how many units of work should be sampled, or zero if the sampler is adaptive.
+     * @param maximumPerSecond The maximum number of units of work sampled per second by the adaptive sampler.
+     */
+    private Sampler(final int oneIn, final int maximumPerSecond) {
+        this.oneIn = oneIn;
+        this.maximumPerSecond = maximumPerSecond;
+    }
+
+    /**
+     * Creates an adaptive sampler.
+     *
+     * @param maximumPerSecond The maximum number of units of work to be sampled per second.
+     * @return An adaptive sampler.
+     */
+    static Sampler adaptive(final int maximumPerSecond) {
+        if (maximumPerSecond < 1) {
+            throw new IllegalArgumentException("The maximum number of units of work sampled per second should be at"
+                    + " least 1.");
+        }
+        return new Sampler(0, maximumPerSecond);
+    }
+
+    /**
+     * Creates a sampler sampling one in a number of units of work at random.
+     *
+     * @param oneIn The one in how many units of work should be sampled.
+     * @return A sampler sampling one in a number of units of work.
+     */
+    static Sampler oneIn(final int oneIn) {
+        if (oneIn < 1) {
+            throw new IllegalArgumentException("The sampling rate should be one in at least 1 unit of work.");
+        }
+        return new Sampler(oneIn, 0);
+    }
+
+    /**
+     * Decides whether a new unit of work should be sampled. Samplers sampling one in a number of units of work don't
+     * read the clock, and adaptive samplers read the monotonic clock once.
+     *
+     * @return True if the new unit of work should be sampled.
+     */
+    boolean sample() {
+        if (oneIn != 0) {
+            return ThreadLocalRandom.current().nextInt(oneIn) == 0;
+        }
+        long now = System.nanoTime();
+        long start = windowStart.get();
+        if (now - start >= NANOS_PER_SECOND && windowStart.compareAndSet(start, now)) {
+            sampledInWindow.set(0);
+        }
+        return sampledInWindow.get() < maximumPerSecond && sampledInWindow.incrementAndGet() <= maximumPerSecond;
+    }
+}
@@ -0,0 +1,21 @@
+package net.filipvanlaenen.laconic;
+
+/**
+ * Interface for the destinations to which rendered blocks of log messages are written. Besides the print stream or the
+ * channel of a logger, sinks can be added to a logger with their own asynchronous writer, such that a slow sink never
+ * blocks the logging threads or the other sinks. A sink added to a logger is only called from the thread of its
+ * writer, but the same sink shouldn't be added to more than one logger unless it's thread-safe.
+ */
+public interface Sink {
+    /**
+     * Flushes the blocks written so far.
+     */
+    void flush();
+
+    /**
+     * Writes a rendered block of log messages.
+     *
+     * @param block The block to be written.
+     */
+    void write(CharSequence block);
+}
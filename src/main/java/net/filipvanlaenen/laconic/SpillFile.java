@@ -0,0 +1,268 @@
+package net.filipvanlaenen.laconic;
+
+import java.io.IOException;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A memory-mapped file to which the packed messages of tokens are spilled when the packed messages on the heap take up
+ * too much space. The file keeps track of the number of bytes the packed messages of its tokens take up on the heap,
+ * and releases them again when the garbage collector reclaims the byte arrays. Spilled messages are appended to
+ * regions of the file mapped into memory, and are decoded directly from the mapping when they're requested.
+ *
+ * Spilled messages can be shared by many tokens, so a region can't be released when a single token is closed. Instead,
+ * the file keeps track of the number of live bytes in every region, and releases the bytes of a spilled sequence when
+ * the garbage collector reclaims its view. A region without live bytes is reused before the file is grown with a new
+ * region. The file can't grow beyond a maximum size; once that size has been reached and no region can be reused, the
+ * messages simply stay on the heap.
+ *
+ * The file is created as a temporary file, and deleted when it is closed or when the JVM exits. Mappings remain valid
+ * after the file has been closed, such that tokens referring to spilled messages can still be rendered.
+ */
+final class SpillFile {
+    /**
+     * The size of a mapped region in bytes.
+     */
+    static final int MAPPING_SIZE = 16_777_216;
+    /**
+     * The cleaner releasing the heap bytes of byte arrays reclaimed by the garbage collector.
+     */
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    /**
+     * A region of the file mapped into memory.
+     */
+    private static final class Region {
+        /**
+         * The mapping of the region.
+         */
+        private final MappedByteBuffer mapping;
+        /**
+         * The number of bytes in the region still referred to by a view.
+         */
+        private long liveBytes;
+
+        /**
+         * Constructor taking the mapping of the region as its parameter.
+         *
+         * @param mapping The mapping of the region.
+         */
+        private Region(final MappedByteBuffer mapping) {
+            this.mapping = mapping;
+        }
+    }
+
+    /**
+     * The channel to the file.
+     */
+    private final FileChannel channel;
+    /**
+     * The maximum number of bytes packed messages may take up on the heap before they're spilled.
+     */
+    private final long maximumHeapBytes;
+    /**
+     * The maximum size of the file in bytes.
+     */
+    private final long maximumFileBytes;
+    /**
+     * The number of bytes packed messages take up on the heap.
+     */
+    private final AtomicLong heapBytes = new AtomicLong();
+    /**
+     * The number of bytes spilled to the file.
+     */
+    private final AtomicLong spilledBytes = new AtomicLong();
+    /**
+     * The regions without live bytes, available for reuse.
+     */
+    private final ArrayDeque<Region> freeRegions = new ArrayDeque<Region>();
+    /**
+     * The region currently being filled, or null if there is none.
+     */
+    private Region current;
+    /**
+     * The size of the file, i.e. the offset at which the next region will be mapped.
+     */
+    private long fileSize;
+
+    /**
+     * Constructor taking the directory in which the file should be created and the maximum number of bytes packed
+     * messages may take up on the heap as its parameters. The size of the file isn't limited.
+     *
+     * @param directory        The directory in which the file should be created.
+     * @param maximumHeapBytes The maximum number of bytes packed messages may take up on the heap.
+     * @throws IOException Thrown if the file can't be created.
+     */
+    SpillFile(final Path directory, final long maximumHeapBytes) throws IOException {
+        this(directory, maximumHeapBytes, Long.MAX_VALUE);
+    }
+
+    /**
+     * Constructor taking the directory in which the file should be created, the maximum number of bytes packed
+     * messages may take up on the heap and the maximum size of the file as its parameters.
+     *
+     * @param directory        The directory in which the file should be created.
+     * @param maximumHeapBytes The maximum number of bytes packed messages may take up on the heap.
+     * @param maximumFileBytes The maximum size of the file in bytes.
+     * @throws IOException Thrown if the file can't be created.
+     */
+    SpillFile(final Path directory, final long maximumHeapBytes, final long maximumFileBytes) throws IOException {
+        this.maximumHeapBytes = maximumHeapBytes;
+        this.maximumFileBytes = maximumFileBytes;
+        Path path = Files.createTempFile(directory, "laconic-", ".spill");
+        path.toFile().deleteOnExit();
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE);
+    }
+
+    /**
+     * Closes and deletes the file. Spilled messages remain readable.
+     */
+    void close() {
+        try {
+            channel.close();
+        } catch (IOException ioe) {
+            // The file will be deleted when the JVM exits.
+        }
+    }
+
+    /**
+     * Returns the size of the file in bytes.
+     *
+     * @return The size of the file in bytes.
+     */
+    synchronized long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * Returns the number of bytes packed messages take up on the heap.
+     *
+     * @return The number of bytes packed messages take up on the heap.
+     */
+    long getHeapBytes() {
+        return heapBytes.get();
+    }
+
+    /**
+     * Returns the number of bytes spilled to the file.
+     *
+     * @return The number of bytes spilled to the file.
+     */
+    long getSpilledBytes() {
+        return spilledBytes.get();
+    }
+
+    /**
+     * Returns whether the packed messages take up more bytes on the heap than allowed.
+     *
+     * @return True if the packed messages take up more bytes on the heap than allowed.
+     */
+    boolean isOverThreshold() {
+        return heapBytes.get() > maximumHeapBytes;
+    }
+
+    /**
+     * Appends bytes to the file, and returns a read-only view on them in the mapping. The bytes are released again
+     * when the garbage collector reclaims the view.
+     *
+     * @param bytes  An array with the bytes to be spilled.
+     * @param length The number of bytes to be spilled, starting at the start of the array.
+     * @return A read-only view on the spilled bytes, or null if the bytes couldn't be spilled.
+     */
+    synchronized ByteBuffer spill(final byte[] bytes, final int length) {
+        if (current == null || current.mapping.remaining() < length) {
+            if (!channel.isOpen()) {
+                return null;
+            }
+            retireCurrentRegion();
+            current = obtainRegion(length);
+            if (current == null) {
+                return null;
+            }
+        }
+        Region region = current;
+        ByteBuffer view = region.mapping.slice(region.mapping.position(), length).asReadOnlyBuffer();
+        region.mapping.put(bytes, 0, length);
+        region.liveBytes += length;
+        spilledBytes.addAndGet(length);
+        CLEANER.register(view, () -> release(region, length));
+        return view;
+    }
+
+    /**
+     * Stops filling the current region, and makes it available for reuse if it has no live bytes.
+     */
+    private void retireCurrentRegion() {
+        if (current != null && current.liveBytes == 0L) {
+            freeRegions.add(current);
+        }
+        current = null;
+    }
+
+    /**
+     * Returns an empty region large enough for a number of bytes, reusing a free region if possible and mapping a new
+     * region otherwise.
+     *
+     * @param length The number of bytes the region should be able to hold.
+     * @return An empty region, or null if no region could be reused or mapped.
+     */
+    private Region obtainRegion(final int length) {
+        Iterator<Region> iterator = freeRegions.iterator();
+        while (iterator.hasNext()) {
+            Region region = iterator.next();
+            if (region.mapping.capacity() >= length) {
+                iterator.remove();
+                region.mapping.clear();
+                return region;
+            }
+        }
+        int size = Math.max(MAPPING_SIZE, length);
+        if (size > maximumFileBytes - fileSize) {
+            return null;
+        }
+        try {
+            Region region = new Region(channel.map(FileChannel.MapMode.READ_WRITE, fileSize, size));
+            fileSize += size;
+            return region;
+        } catch (IOException ioe) {
+            // Logging should never make the program fail, so the bytes stay on the heap.
+            return null;
+        }
+    }
+
+    /**
+     * Releases the bytes of a view reclaimed by the garbage collector, and makes the region available for reuse once
+     * it has no live bytes anymore and isn't being filled.
+     *
+     * @param region The region of the view.
+     * @param length The number of bytes in the view.
+     */
+    private synchronized void release(final Region region, final int length) {
+        region.liveBytes -= length;
+        if (region.liveBytes == 0L && region != current) {
+            freeRegions.add(region);
+        }
+    }
+
+    /**
+     * Starts keeping track of the bytes a byte array takes up on the heap, until it is reclaimed by the garbage
+     * collector.
+     *
+     * @param bytes The byte array.
+     */
+    void track(final byte[] bytes) {
+        long capacity = bytes.length;
+        AtomicLong counter = heapBytes;
+        counter.addAndGet(capacity);
+        CLEANER.register(bytes, () -> counter.addAndGet(-capacity));
+    }
+}
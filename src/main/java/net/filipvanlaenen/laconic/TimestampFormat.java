@@ -0,0 +1,84 @@
+package net.filipvanlaenen.laconic;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Class formatting timestamps in milliseconds since the epoch in the format yyyy-MM-dd'T'HH:mm:ss.SSSXXX. The date and
+ * time up to the second and the time zone offset are cached, such that consecutive timestamps within the same second
+ * only need their milliseconds to be formatted.
+ */
+final class TimestampFormat {
+    /**
+     * The number of milliseconds in a second.
+     */
+    private static final int MILLIS_PER_SECOND = 1_000;
+    /**
+     * The number of milliseconds from which on the milliseconds don't need to be padded with a zero.
+     */
+    private static final int TEN = 10;
+    /**
+     * The number of milliseconds from which on the milliseconds don't need to be padded with two zeros.
+     */
+    private static final int HUNDRED = 100;
+
+    /**
+     * A record holding the formatted parts of a timestamp for a second.
+     *
+     * @param epochSecond The number of seconds since the epoch.
+     * @param second      The date and the time up to the second.
+     * @param offset      The time zone offset.
+     */
+    private record CachedSecond(long epochSecond, String second, String offset) {
+    }
+
+    /**
+     * The format for the date and the time up to the second.
+     */
+    private final DateTimeFormatter secondFormat;
+    /**
+     * The format for the time zone offset.
+     */
+    private final DateTimeFormatter offsetFormat;
+    /**
+     * The formatted parts of the last second that has been formatted.
+     */
+    private volatile CachedSecond cachedSecond;
+
+    /**
+     * Constructor taking the time zone as its parameter.
+     *
+     * @param zone The time zone.
+     */
+    TimestampFormat(final ZoneId zone) {
+        secondFormat = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss").withZone(zone);
+        offsetFormat = DateTimeFormatter.ofPattern("XXX").withZone(zone);
+        this.cachedSecond = new CachedSecond(Long.MIN_VALUE, null, null);
+    }
+
+    /**
+     * Appends a formatted timestamp to a block of text.
+     *
+     * @param block     The block of text to which the timestamp should be appended.
+     * @param timestamp The timestamp in milliseconds since the epoch.
+     */
+    void appendTo(final StringBuilder block, final long timestamp) {
+        long epochSecond = Math.floorDiv(timestamp, MILLIS_PER_SECOND);
+        CachedSecond cached = cachedSecond;
+        if (cached.epochSecond() != epochSecond) {
+            Instant instant = Instant.ofEpochSecond(epochSecond);
+            cached = new CachedSecond(epochSecond, secondFormat.format(instant), offsetFormat.format(instant));
+            cachedSecond = cached;
+        }
+        int millis = Math.floorMod(timestamp, MILLIS_PER_SECOND);
+        block.append(cached.second()).append('.');
+        if (millis < HUNDRED) {
+            block.append('0');
+        }
+        if (millis < TEN) {
+            block.append('0');
+        }
+        block.append(millis).append(cached.offset());
+    }
+}
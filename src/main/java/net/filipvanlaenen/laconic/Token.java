@@ -1,33 +1,379 @@
 package net.filipvanlaenen.laconic;
 
-import net.filipvanlaenen.kolektoj.ModifiableOrderedCollection;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
 import net.filipvanlaenen.kolektoj.OrderedCollection;
-import net.filipvanlaenen.kolektoj.array.ModifiableOrderedArrayCollection;
 import net.filipvanlaenen.kolektoj.array.OrderedArrayCollection;
 
 /**
- * A token to link log messages to error messages.
+ * A token to link log messages to error messages. The messages are kept in an immutable chain of links pointing back
+ * to their predecessors, such that cloned tokens share their common history. Messages are appended without locking, so
+ * a token can be shared between threads. Once enough messages have been appended, the older messages in the chain are
+ * packed into a compact, immutable sequence of bytes, which is shared between cloned tokens too, and only decoded when
+ * the messages are requested. A token can have a retention policy limiting the number and the age of the messages it
+ * retains, in which case the elided messages are replaced by a marker at the start of the chain. If the token has a
+ * spill file, the packed messages can be spilled to it when they take up too much space on the heap.
+ *
+ * A token can be closed once it isn't needed anymore. Unless an error has been logged with it, a closed token is
+ * returned to a pool of the closing thread, and reused for the next message logged on that thread. A closed token
+ * shouldn't be used anymore. In debug mode, closed tokens aren't reused, and using them throws an exception.
+ *
+ * When a logger samples its units of work, the work that isn't sampled gets a shared, immutable token to which no
+ * messages are added, and which is never returned to a pool.
  */
-public class Token {
+public class Token implements AutoCloseable {
+    /**
+     * The multiplier used to combine hash codes into a fingerprint.
+     */
+    static final long FINGERPRINT_MULTIPLIER = 31L;
+    /**
+     * The maximum number of messages, counting back from the last one, included in the fingerprint of a token.
+     */
+    static final int MAXIMUM_FINGERPRINT_LENGTH = 16;
+    /**
+     * The number of unpacked messages in a chain at which they are packed.
+     */
+    private static final int PACKING_THRESHOLD = 32;
+    /**
+     * The maximum number of closed tokens kept in the pool of a thread.
+     */
+    private static final int POOL_SIZE = 16;
+    /**
+     * The pool with closed tokens of each thread.
+     */
+    private static final ThreadLocal<Token[]> POOLS = ThreadLocal.withInitial(() -> new Token[POOL_SIZE]);
     /**
-     * The messages logged to this token.
+     * The number of closed tokens in the pool of each thread.
+     */
+    private static final ThreadLocal<int[]> POOL_SIZES = ThreadLocal.withInitial(() -> new int[1]);
+    /**
+     * Updater for the link to the last message, used to append messages without locking.
+     */
+    private static final AtomicReferenceFieldUpdater<Token, Link> LAST_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(Token.class, Link.class, "last");
+    /**
+     * Updater for the identifier in the flight recording, used to assign an identifier only once.
+     */
+    private static final AtomicLongFieldUpdater<Token> FLIGHT_RECORDER_ID_UPDATER =
+            AtomicLongFieldUpdater.newUpdater(Token.class, "flightRecorderId");
+    /**
+     * The shared token for units of work that aren't sampled.
+     */
+    static final Token UNSAMPLED = new Token();
+
+    /**
+     * A record holding a link in the chain of messages logged to a token.
+     *
+     * @param message  The message.
+     * @param previous The link to the previous message, or null if this is the first unpacked message.
+     * @param packed   The packed messages preceding the first unpacked message, or null if there are none.
+     * @param size     The number of messages in the chain up to and including this link.
      */
-    private final ModifiableOrderedCollection<Message> messages;
+    private record Link(Message message, Link previous, PackedMessages packed, int size) {
+        /**
+         * Constructor creating a new link appending a message to a chain.
+         *
+         * @param message  The message.
+         * @param previous The link to the previous message, or null if this is the first message.
+         */
+        Link(final Message message, final Link previous) {
+            this(message, previous, previous == null ? null : previous.packed(),
+                    previous == null ? 1 : previous.size() + 1);
+        }
 
+        /**
+         * Constructor creating a new link appending a message to packed messages.
+         *
+         * @param message The message.
+         * @param packed  The packed messages preceding the message, or null if there are none.
+         */
+        Link(final Message message, final PackedMessages packed) {
+            this(message, null, packed, packed == null ? 1 : packed.count() + 1);
+        }
+
+        /**
+         * Returns the number of unpacked messages in the chain up to and including this link.
+         *
+         * @return The number of unpacked messages in the chain up to and including this link.
+         */
+        int numberOfUnpackedMessages() {
+            return packed == null ? size : size - packed.count();
+        }
+    }
+
+    /**
+     * The link to the last message logged to this token, or null if no messages have been logged yet.
+     */
+    private volatile Link last;
+    /**
+     * The retention policy, or null if all messages are retained.
+     */
+    private RetentionPolicy retentionPolicy;
+    /**
+     * The spill file, or null if packed messages shouldn't be spilled.
+     */
+    private SpillFile spillFile;
+    /**
+     * The size of the chain at which the retention policy should be applied again.
+     */
+    private volatile int retentionCheckSize;
+    /**
+     * Whether the token is used in debug mode.
+     */
+    private boolean debugMode;
+    /**
+     * Whether the token has been closed since it was obtained.
+     */
+    private boolean closed;
+    /**
+     * Whether an error has been logged with this token.
+     */
+    private boolean errorLogged;
+    /**
+     * The identifier of this token in the flight recording, or zero if no identifier has been assigned yet.
+     */
+    private volatile long flightRecorderId;
+    /**
+     * The metrics counting this token as live, or null if the token isn't counted.
+     */
+    private LaconicMetrics metrics;
     /**
-     * Default constructor creating a new token.
+     * The logger that created this token, or null if the token wasn't created by a logger.
+     */
+    private Laconic logger;
+
+    /**
+     * Default constructor creating a new token retaining all messages.
      */
     Token() {
-        messages = new ModifiableOrderedArrayCollection<Message>();
+        this((RetentionPolicy) null);
     }
 
     /**
-     * Constructor creating a new token based on a source token.
+     * Constructor creating a new token with a retention policy.
+     *
+     * @param retentionPolicy The retention policy, or null if all messages should be retained.
+     */
+    Token(final RetentionPolicy retentionPolicy) {
+        reset(retentionPolicy, null, false);
+    }
+
+    /**
+     * Constructor creating a new token based on a source token. The new token shares the messages and the retention
+     * policy of the source token, so cloning is done in constant time.
      *
      * @param sourceToken The token to be cloned.
      */
     Token(final Token sourceToken) {
-        messages = new ModifiableOrderedArrayCollection<Message>(sourceToken.getMessages());
+        reset(sourceToken);
+    }
+
+    /**
+     * Throws an exception if the token has been closed in debug mode.
+     */
+    private void checkNotClosed() {
+        if (closed && debugMode) {
+            throw new IllegalStateException("The token has been closed already.");
+        }
+    }
+
+    /**
+     * Closes the token. Unless an error has been logged with it, the token is returned to the pool of the current
+     * thread, unless the token is used in debug mode. Closing a token more than once has no effect, such that a token
+     * never ends up in a pool twice.
+     */
+    @Override
+    public void close() {
+        if (closed || this == UNSAMPLED) {
+            return;
+        }
+        closed = true;
+        if (metrics != null) {
+            metrics.tokenClosed();
+            metrics = null;
+        }
+        if (debugMode) {
+            last = null;
+            return;
+        }
+        if (errorLogged) {
+            return;
+        }
+        last = null;
+        int[] poolSize = POOL_SIZES.get();
+        if (poolSize[0] < POOL_SIZE) {
+            POOLS.get()[poolSize[0]++] = this;
+        }
+    }
+
+    /**
+     * Returns the identifier of this token in the flight recording, assigning a new identifier if none has been
+     * assigned yet. Identifiers are drawn from the sequence numbers of messages, such that they're unique without
+     * contending on a shared counter.
+     *
+     * @return The identifier of this token in the flight recording.
+     */
+    long flightRecorderId() {
+        long id = flightRecorderId;
+        if (id == 0L) {
+            long newId = MessageSequence.next() + 1L;
+            id = FLIGHT_RECORDER_ID_UPDATER.compareAndSet(this, 0L, newId) ? newId : flightRecorderId;
+        }
+        return id;
+    }
+
+    /**
+     * Returns the identifier of a new token in the flight recording, assigning a new identifier if none has been
+     * assigned yet. Since the token hasn't been handed out to other threads yet, the identifier is assigned without a
+     * compare-and-set.
+     *
+     * @return The identifier of this token in the flight recording.
+     */
+    long newTokenFlightRecorderId() {
+        long id = flightRecorderId;
+        if (id == 0L) {
+            id = MessageSequence.next() + 1L;
+            FLIGHT_RECORDER_ID_UPDATER.lazySet(this, id);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the logger that created this token.
+     *
+     * @return The logger that created this token, or null if the token wasn't created by a logger.
+     */
+    Laconic getLogger() {
+        return logger;
+    }
+
+    /**
+     * Sets the logger that created this token.
+     *
+     * @param owner The logger that created this token.
+     */
+    void setLogger(final Laconic owner) {
+        logger = owner;
+    }
+
+    /**
+     * Counts this token as live in metrics until it is closed.
+     *
+     * @param liveMetrics The metrics in which the token should be counted.
+     */
+    void countIn(final LaconicMetrics liveMetrics) {
+        metrics = liveMetrics;
+        liveMetrics.tokenObtained();
+    }
+
+    /**
+     * Returns whether the unit of work of this token has been sampled, i.e. whether messages are recorded on it.
+     *
+     * @return True if the unit of work of this token has been sampled.
+     */
+    public boolean isSampled() {
+        return this != UNSAMPLED;
+    }
+
+    /**
+     * Marks that an error has been logged with this token.
+     */
+    void markErrorLogged() {
+        checkNotClosed();
+        errorLogged = true;
+    }
+
+    /**
+     * Returns a new token with a retention policy and a spill file, reusing a closed token from the pool of the current
+     * thread if possible.
+     *
+     * @param retentionPolicy The retention policy, or null if all messages should be retained.
+     * @param spillFile       The spill file, or null if packed messages shouldn't be spilled.
+     * @param debugMode       Whether the token is used in debug mode.
+     * @return A new token.
+     */
+    static Token obtain(final RetentionPolicy retentionPolicy, final SpillFile spillFile, final boolean debugMode) {
+        Token token = pop();
+        if (token == null) {
+            token = new Token();
+        }
+        token.reset(retentionPolicy, spillFile, debugMode);
+        return token;
+    }
+
+    /**
+     * Returns a new token based on a source token, reusing a closed token from the pool of the current thread if
+     * possible.
+     *
+     * @param sourceToken The token to be cloned.
+     * @return A new token sharing the messages and the retention policy of the source token.
+     */
+    static Token obtain(final Token sourceToken) {
+        Token token = pop();
+        if (token == null) {
+            return new Token(sourceToken);
+        }
+        token.reset(sourceToken);
+        return token;
+    }
+
+    /**
+     * Removes a closed token from the pool of the current thread.
+     *
+     * @return A closed token, or null if the pool is empty.
+     */
+    private static Token pop() {
+        int[] poolSize = POOL_SIZES.get();
+        if (poolSize[0] == 0) {
+            return null;
+        }
+        Token[] pool = POOLS.get();
+        Token token = pool[--poolSize[0]];
+        pool[poolSize[0]] = null;
+        return token;
+    }
+
+    /**
+     * Resets the token to an empty token with a retention policy and a spill file.
+     *
+     * @param policy The retention policy, or null if all messages should be retained.
+     * @param spill  The spill file, or null if packed messages shouldn't be spilled.
+     * @param debug  Whether the token is used in debug mode.
+     */
+    private void reset(final RetentionPolicy policy, final SpillFile spill, final boolean debug) {
+        retentionPolicy = policy;
+        spillFile = spill;
+        retentionCheckSize = policy == null ? Integer.MAX_VALUE : policy.nextCheckSize(0);
+        debugMode = debug;
+        closed = false;
+        errorLogged = false;
+        flightRecorderId = 0L;
+        metrics = null;
+        logger = null;
+        last = null;
+    }
+
+    /**
+     * Resets the token to a clone of a source token.
+     *
+     * @param sourceToken The token to be cloned.
+     */
+    private void reset(final Token sourceToken) {
+        sourceToken.checkNotClosed();
+        retentionPolicy = sourceToken.retentionPolicy;
+        spillFile = sourceToken.spillFile;
+        retentionCheckSize = sourceToken.retentionCheckSize;
+        debugMode = sourceToken.debugMode;
+        closed = false;
+        errorLogged = false;
+        flightRecorderId = 0L;
+        metrics = null;
+        logger = sourceToken.logger;
+        last = sourceToken.last;
     }
 
     /**
@@ -36,7 +382,152 @@ public class Token {
      * @param message A message to be added to this token.
      */
     void addMessage(final String message) {
-        messages.add(new Message(message));
+        addMessage(new Message.Plain(message));
+    }
+
+    /**
+     * Adds a message to this token. The same message instance can be added to more than one token.
+     *
+     * @param message A message to be added to this token.
+     */
+    void addMessage(final Message message) {
+        if (this == UNSAMPLED) {
+            return;
+        }
+        checkNotClosed();
+        Link previous;
+        Link link;
+        do {
+            previous = last;
+            link = new Link(message, previous);
+        } while (!LAST_UPDATER.compareAndSet(this, previous, link));
+        compact(link);
+    }
+
+    /**
+     * Adds a batch of messages to this token in a single update of the chain, such that the retention policy and the
+     * packing of the messages are applied only once for the whole batch. The same message instances can be added to
+     * more than one token.
+     *
+     * @param messages The messages to be added to this token, in the order in which they were logged.
+     */
+    void addMessages(final Message[] messages) {
+        if (this == UNSAMPLED || messages.length == 0) {
+            return;
+        }
+        checkNotClosed();
+        Link previous;
+        Link link;
+        do {
+            previous = last;
+            link = previous;
+            for (Message message : messages) {
+                link = new Link(message, link);
+            }
+        } while (!LAST_UPDATER.compareAndSet(this, previous, link));
+        compact(link);
+    }
+
+    /**
+     * Builds a chain from an array of messages, packing all messages except the last one if possible.
+     *
+     * @param messages  The messages.
+     * @param spillFile The spill file, or null if packed messages shouldn't be spilled.
+     * @return The last link of the chain.
+     */
+    private static Link build(final Message[] messages, final SpillFile spillFile) {
+        int last = messages.length - 1;
+        for (int i = 0; i < last; i++) {
+            if (!PackedMessages.canPack(messages[i])) {
+                Link link = null;
+                for (Message message : messages) {
+                    link = new Link(message, link);
+                }
+                return link;
+            }
+        }
+        return new Link(messages[last], PackedMessages.pack(null, messages, 0, last, spillFile));
+    }
+
+    /**
+     * Applies the retention policy to the chain if it has grown enough since it was applied last, and packs the
+     * unpacked messages if there are enough of them.
+     *
+     * @param appendedLink The link that has just been appended to the chain.
+     */
+    private void compact(final Link appendedLink) {
+        Link link = appendedLink;
+        if (link.size() >= retentionCheckSize) {
+            Message[] messages = toArray(link);
+            Message[] retained = retain(messages, retentionPolicy, System.currentTimeMillis());
+            if (retained == messages) {
+                retentionCheckSize = retentionPolicy.nextCheckSize(messages.length);
+            } else {
+                Link retainedLink = build(retained, spillFile);
+                if (LAST_UPDATER.compareAndSet(this, link, retainedLink)) {
+                    retentionCheckSize = retentionPolicy.nextCheckSize(retained.length);
+                    link = retainedLink;
+                }
+            }
+        }
+        if (link.numberOfUnpackedMessages() >= PACKING_THRESHOLD) {
+            Link packedLink = pack(link, spillFile);
+            if (packedLink != null) {
+                LAST_UPDATER.compareAndSet(this, link, packedLink);
+            }
+        }
+    }
+
+    /**
+     * Calculates a fingerprint of the structure of this token, based on the formats of its last messages. Only a
+     * bounded number of messages is included, such that the fingerprint can be calculated cheaply.
+     *
+     * @return A fingerprint of the structure of this token.
+     */
+    long fingerprint() {
+        long fingerprint = 0L;
+        int length = 0;
+        Link link = last;
+        PackedMessages packed = link == null ? null : link.packed();
+        for (; link != null && length < MAXIMUM_FINGERPRINT_LENGTH; link = link.previous()) {
+            fingerprint = FINGERPRINT_MULTIPLIER * fingerprint + link.message().templateHashCode();
+            length++;
+        }
+        for (int i = 0; packed != null && i < packed.numberOfTemplateHashCodes() && length < MAXIMUM_FINGERPRINT_LENGTH;
+                i++) {
+            fingerprint = FINGERPRINT_MULTIPLIER * fingerprint + packed.templateHashCode(i);
+            length++;
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Returns the messages logged to tokens, one array per token, leaving out the messages that have already been
+     * returned for an earlier token. A message logged to more than one of the tokens, or shared between a token and its
+     * clones, is thus returned only once. Messages are recognized as the same entry by their sequence number, not by
+     * their text and timestamp, such that messages logged separately are all returned.
+     *
+     * @param tokens The tokens.
+     * @return The messages logged to the tokens, without the messages returned for an earlier token.
+     */
+    static Message[][] getDistinctMessages(final Token[] tokens) {
+        Message[][] distinctMessages = new Message[tokens.length][];
+        Set<Long> returnedSequences = tokens.length > 1 ? new HashSet<Long>() : null;
+        for (int t = 0; t < tokens.length; t++) {
+            OrderedCollection<Message> messages = tokens[t].getMessages();
+            int size = messages.size();
+            Message[] tokenMessages = new Message[size];
+            int numberOfDistinctMessages = 0;
+            for (int i = 0; i < size; i++) {
+                Message message = messages.getAt(i);
+                if (returnedSequences == null || returnedSequences.add(message.sequence())) {
+                    tokenMessages[numberOfDistinctMessages++] = message;
+                }
+            }
+            distinctMessages[t] = numberOfDistinctMessages == size ? tokenMessages
+                    : Arrays.copyOf(tokenMessages, numberOfDistinctMessages);
+        }
+        return distinctMessages;
     }
 
     /**
@@ -45,6 +536,88 @@ public class Token {
      * @return The messages logged to this token.
      */
     OrderedCollection<Message> getMessages() {
+        checkNotClosed();
+        Message[] messages = toArray(last);
+        if (retentionPolicy != null) {
+            messages = retain(messages, retentionPolicy, System.currentTimeMillis());
+        }
         return new OrderedArrayCollection<Message>(messages);
     }
+
+    /**
+     * Packs all unpacked messages in a chain except the last one.
+     *
+     * @param last      The last link of the chain.
+     * @param spillFile The spill file, or null if packed messages shouldn't be spilled.
+     * @return The last link of the packed chain, or null if the messages can't be packed.
+     */
+    private static Link pack(final Link last, final SpillFile spillFile) {
+        int numberOfUnpackedMessages = last.numberOfUnpackedMessages();
+        Message[] unpacked = new Message[numberOfUnpackedMessages];
+        Link link = last;
+        for (int i = numberOfUnpackedMessages - 1; i >= 0; i--) {
+            if (!PackedMessages.canPack(link.message())) {
+                return null;
+            }
+            unpacked[i] = link.message();
+            link = link.previous();
+        }
+        int lastIndex = numberOfUnpackedMessages - 1;
+        return new Link(unpacked[lastIndex],
+                PackedMessages.pack(last.packed(), unpacked, 0, lastIndex, spillFile));
+    }
+
+    /**
+     * Applies a retention policy to an array of messages. If messages have to be elided, a new array is created with
+     * the retained messages, starting with a marker for the elided messages.
+     *
+     * @param messages        The messages.
+     * @param retentionPolicy The retention policy.
+     * @param now             The current time in milliseconds.
+     * @return The array itself if no messages have to be elided, or a new array with the retained messages.
+     */
+    private static Message[] retain(final Message[] messages, final RetentionPolicy retentionPolicy, final long now) {
+        long oldestTimestamp = retentionPolicy.oldestTimestamp(now);
+        int numberOfRetainedMessages = 0;
+        int firstElidedIndex = messages.length - 1;
+        while (firstElidedIndex >= 0 && !(messages[firstElidedIndex] instanceof Message.Elided)
+                && numberOfRetainedMessages < retentionPolicy.maximumNumberOfMessages()
+                && messages[firstElidedIndex].timestamp() >= oldestTimestamp) {
+            numberOfRetainedMessages++;
+            firstElidedIndex--;
+        }
+        if (firstElidedIndex < 0 || messages[firstElidedIndex] instanceof Message.Elided) {
+            return messages;
+        }
+        int numberOfElidedMessages = 0;
+        for (int i = 0; i <= firstElidedIndex; i++) {
+            numberOfElidedMessages += messages[i] instanceof Message.Elided elided ? elided.count() : 1;
+        }
+        Message[] retained = new Message[numberOfRetainedMessages + 1];
+        retained[0] = Message.Elided.of(numberOfElidedMessages, messages[firstElidedIndex]);
+        System.arraycopy(messages, firstElidedIndex + 1, retained, 1, numberOfRetainedMessages);
+        return retained;
+    }
+
+    /**
+     * Collects the messages in a chain into an array, decoding the packed messages.
+     *
+     * @param last The last link of the chain, or null if the chain is empty.
+     * @return An array with the messages in the chain.
+     */
+    private static Message[] toArray(final Link last) {
+        if (last == null) {
+            return new Message[0];
+        }
+        Message[] messages = new Message[last.size()];
+        Link link = last;
+        for (int i = last.size() - 1; link != null; i--) {
+            messages[i] = link.message();
+            link = link.previous();
+        }
+        if (last.packed() != null) {
+            last.packed().decodeInto(messages);
+        }
+        return messages;
+    }
 }
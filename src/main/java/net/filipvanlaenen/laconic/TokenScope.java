@@ -0,0 +1,192 @@
+package net.filipvanlaenen.laconic;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * A scope making a token the current token of a thread. While a scope is open, messages logged without tokens are
+ * added to the current token too, and errors logged without tokens are logged with the current token. Scopes are meant
+ * to be opened in a try-with-resources statement, and can be nested:
+ *
+ * <pre>
+ * try (TokenScope scope = TokenScope.open(token)) {
+ *     Laconic.LOGGER.logMessage("Something happened.");
+ * }
+ * </pre>
+ *
+ * Tasks handed over to another thread through the wrappers in this class get a child token of the current token: a
+ * clone sharing the messages logged so far, such that the messages logged by the tasks don't end up in the current
+ * token or in each other's tokens. The current token is kept in a thread local variable, which is cheap to look up
+ * and doesn't pin virtual threads to their carrier threads.
+ */
+public final class TokenScope implements AutoCloseable {
+    /**
+     * The current token of each thread.
+     */
+    private static final ThreadLocal<Token> CURRENT_TOKEN = new ThreadLocal<Token>();
+
+    /**
+     * The token that was the current token when the scope was opened, or null if there was no current token.
+     */
+    private final Token previousToken;
+
+    /**
+     * Constructor taking the previous token as its parameter.
+     *
+     * @param previousToken The token that was the current token when the scope was opened.
+     */
+    private TokenScope(final Token previousToken) {
+        this.previousToken = previousToken;
+    }
+
+    /**
+     * Restores the token that was the current token when the scope was opened.
+     */
+    @Override
+    public void close() {
+        if (previousToken == null) {
+            CURRENT_TOKEN.remove();
+        } else {
+            CURRENT_TOKEN.set(previousToken);
+        }
+    }
+
+    /**
+     * Returns the current token of this thread.
+     *
+     * @return The current token of this thread, or null if no scope is open.
+     */
+    public static Token current() {
+        return CURRENT_TOKEN.get();
+    }
+
+    /**
+     * Returns a child token of the current token, or null if no scope is open. The child of a token for a unit of work
+     * that hasn't been sampled is that same token. Children are cloned by the logger that created the current token,
+     * like any other token cloned by that logger, such that closed tokens are reused, and the clone is recorded in its
+     * flight recorder mode and counted in its metrics.
+     *
+     * @return A child token of the current token, or null if no scope is open.
+     */
+    private static Token currentChild() {
+        Token current = CURRENT_TOKEN.get();
+        if (current == null || !current.isSampled()) {
+            return current;
+        }
+        Laconic logger = current.getLogger();
+        return logger == null ? Token.obtain(current) : logger.cloneToken(current);
+    }
+
+    /**
+     * Opens a scope making a token the current token of this thread.
+     *
+     * @param token The token to become the current token.
+     * @return A scope restoring the previous current token when it's closed.
+     */
+    public static TokenScope open(final Token token) {
+        TokenScope scope = new TokenScope(CURRENT_TOKEN.get());
+        CURRENT_TOKEN.set(token);
+        return scope;
+    }
+
+    /**
+     * Runs a task asynchronously on an executor with a child token of the current token.
+     *
+     * @param task     The task to be run.
+     * @param executor The executor to run the task on.
+     * @return A completable future for the task.
+     */
+    public static CompletableFuture<Void> runAsync(final Runnable task, final Executor executor) {
+        return CompletableFuture.runAsync(wrap(task), executor);
+    }
+
+    /**
+     * Runs a task asynchronously on an executor with a child token of the current token, and returns its result.
+     *
+     * @param <T>      The type of the result.
+     * @param supplier The task to be run.
+     * @param executor The executor to run the task on.
+     * @return A completable future for the result of the task.
+     */
+    public static <T> CompletableFuture<T> supplyAsync(final Supplier<T> supplier, final Executor executor) {
+        return CompletableFuture.supplyAsync(wrap(supplier), executor);
+    }
+
+    /**
+     * Wraps a callable such that it runs with a child token of the current token.
+     *
+     * @param <T>      The type of the result.
+     * @param callable The callable to be wrapped.
+     * @return The wrapped callable, or the callable itself if no scope is open.
+     */
+    public static <T> Callable<T> wrap(final Callable<T> callable) {
+        Token child = currentChild();
+        if (child == null) {
+            return callable;
+        }
+        return () -> {
+            TokenScope scope = open(child);
+            try {
+                return callable.call();
+            } finally {
+                scope.close();
+            }
+        };
+    }
+
+    /**
+     * Wraps an executor such that every task it runs gets a child token of the token that was current when the task
+     * was submitted.
+     *
+     * @param executor The executor to be wrapped.
+     * @return The wrapped executor.
+     */
+    public static Executor wrap(final Executor executor) {
+        return task -> executor.execute(wrap(task));
+    }
+
+    /**
+     * Wraps a runnable such that it runs with a child token of the current token.
+     *
+     * @param task The runnable to be wrapped.
+     * @return The wrapped runnable, or the runnable itself if no scope is open.
+     */
+    public static Runnable wrap(final Runnable task) {
+        Token child = currentChild();
+        if (child == null) {
+            return task;
+        }
+        return () -> {
+            TokenScope scope = open(child);
+            try {
+                task.run();
+            } finally {
+                scope.close();
+            }
+        };
+    }
+
+    /**
+     * Wraps a supplier such that it runs with a child token of the current token.
+     *
+     * @param <T>      The type of the result.
+     * @param supplier The supplier to be wrapped.
+     * @return The wrapped supplier, or the supplier itself if no scope is open.
+     */
+    public static <T> Supplier<T> wrap(final Supplier<T> supplier) {
+        Token child = currentChild();
+        if (child == null) {
+            return supplier;
+        }
+        return () -> {
+            TokenScope scope = open(child);
+            try {
+                return supplier.get();
+            } finally {
+                scope.close();
+            }
+        };
+    }
+}
@@ -0,0 +1,205 @@
+package net.filipvanlaenen.laconic;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.filipvanlaenen.kolektoj.OrderedCollection;
+
+/**
+ * A tree merging the chains of messages of tokens, such that the history tokens share, e.g. because they have been
+ * cloned from the same source token, is rendered only once. The chains are merged into a trie on the entries of their
+ * messages, recognized by their sequence numbers, and the tree branches where the chains diverge. Messages with the
+ * same text and timestamp logged separately to different tokens are different entries, and end up in different
+ * branches. Nodes with a single child are rendered one after the other without
+ * indentation, so a tree costs no more lines than there are distinct messages. The last message of a token is marked
+ * with <code>⬐</code>, like when the chains are rendered one after the other:
+ *
+ * <pre>
+ * ‡ ⬐ Foo
+ * ‡   Bar
+ * ‡ ⬐ ├ Baz
+ * ‡   └ Qux
+ * ‡ ⬐   Quux
+ * </pre>
+ */
+final class TokenTree {
+    /**
+     * The line separator.
+     */
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    /**
+     * The guide for the first line of a branch that isn't the last branch.
+     */
+    private static final String BRANCH = "├ ";
+    /**
+     * The guide for the first line of the last branch.
+     */
+    private static final String LAST_BRANCH = "└ ";
+    /**
+     * The guide for the other lines of a branch that isn't the last branch.
+     */
+    private static final String CONTINUATION = "│ ";
+    /**
+     * The guide for the other lines of the last branch.
+     */
+    private static final String LAST_CONTINUATION = "  ";
+
+    /**
+     * A node in the tree, holding a message and the messages that follow it in the chains of the tokens.
+     */
+    private static final class Node {
+        /**
+         * The message, or null for the root of the tree.
+         */
+        private final Message message;
+        /**
+         * Whether the message is the last message of a token.
+         */
+        private boolean last;
+        /**
+         * The only child of the node, or null if the node has no children or more than one child.
+         */
+        private Node onlyChild;
+        /**
+         * The children of the node by the sequence number of their message, in the order in which they were added, or
+         * null if the node has less than two children.
+         */
+        private Map<Long, Node> children;
+
+        /**
+         * Constructor taking the message as its parameter.
+         *
+         * @param message The message.
+         */
+        private Node(final Message message) {
+            this.message = message;
+        }
+
+        /**
+         * Returns the child with a message, adding it if needed.
+         *
+         * @param childMessage The message of the child.
+         * @return The child with the message.
+         */
+        private Node child(final Message childMessage) {
+            if (onlyChild != null) {
+                if (onlyChild.message.sequence() == childMessage.sequence()) {
+                    return onlyChild;
+                }
+                children = new LinkedHashMap<Long, Node>();
+                children.put(onlyChild.message.sequence(), onlyChild);
+                onlyChild = null;
+            }
+            if (children != null) {
+                return children.computeIfAbsent(childMessage.sequence(), sequence -> new Node(childMessage));
+            }
+            onlyChild = new Node(childMessage);
+            return onlyChild;
+        }
+
+        /**
+         * Returns the children of the node.
+         *
+         * @return The children of the node.
+         */
+        private Collection<Node> getChildren() {
+            if (children != null) {
+                return children.values();
+            }
+            return onlyChild == null ? List.of() : List.of(onlyChild);
+        }
+    }
+
+    /**
+     * The root of the tree, without a message.
+     */
+    private final Node root = new Node(null);
+
+    /**
+     * Constructor merging the chains of messages of tokens into a tree.
+     *
+     * @param tokens The tokens.
+     */
+    TokenTree(final Token[] tokens) {
+        for (Token token : tokens) {
+            OrderedCollection<Message> messages = token.getMessages();
+            int size = messages.size();
+            Node node = root;
+            for (int i = 0; i < size; i++) {
+                node = node.child(messages.getAt(i));
+            }
+            node.last = node != root;
+        }
+    }
+
+    /**
+     * Appends a branch of the tree to a block of text, starting with a node and rendering the nodes with a single
+     * child one after the other.
+     *
+     * @param block             The block of text.
+     * @param timestampFormat   The format for the timestamps, or null if the messages shouldn't be prefixed with a
+     *                          timestamp.
+     * @param start             The first node of the branch.
+     * @param firstGuide        The guide for the first line of the branch.
+     * @param continuationGuide The guide for the other lines of the branch.
+     */
+    private static void appendBranch(final StringBuilder block, final TimestampFormat timestampFormat,
+            final Node start, final String firstGuide, final String continuationGuide) {
+        Node node = start;
+        String guide = firstGuide;
+        while (true) {
+            if (timestampFormat != null) {
+                timestampFormat.appendTo(block, node.message.timestamp());
+                block.append(' ');
+            }
+            block.append(node.last ? "‡ ⬐ " : "‡   ").append(guide);
+            node.message.appendTo(block);
+            block.append(LINE_SEPARATOR);
+            if (node.onlyChild == null) {
+                break;
+            }
+            node = node.onlyChild;
+            guide = continuationGuide;
+        }
+        appendChildren(block, timestampFormat, node, continuationGuide);
+    }
+
+    /**
+     * Appends the children of a node to a block of text as branches.
+     *
+     * @param block           The block of text.
+     * @param timestampFormat The format for the timestamps, or null if the messages shouldn't be prefixed with a
+     *                        timestamp.
+     * @param parent          The node.
+     * @param guide           The guide of the node.
+     */
+    private static void appendChildren(final StringBuilder block, final TimestampFormat timestampFormat,
+            final Node parent, final String guide) {
+        if (parent.onlyChild != null) {
+            appendBranch(block, timestampFormat, parent.onlyChild, guide, guide);
+            return;
+        }
+        int remaining = parent.getChildren().size();
+        for (Node child : parent.getChildren()) {
+            remaining--;
+            if (remaining == 0) {
+                appendBranch(block, timestampFormat, child, guide + LAST_BRANCH, guide + LAST_CONTINUATION);
+            } else {
+                appendBranch(block, timestampFormat, child, guide + BRANCH, guide + CONTINUATION);
+            }
+        }
+    }
+
+    /**
+     * Appends the tree to a block of text.
+     *
+     * @param block           The block of text.
+     * @param timestampFormat The format for the timestamps, or null if the messages shouldn't be prefixed with a
+     *                        timestamp.
+     */
+    void appendTo(final StringBuilder block, final TimestampFormat timestampFormat) {
+        appendChildren(block, timestampFormat, root, "");
+    }
+}
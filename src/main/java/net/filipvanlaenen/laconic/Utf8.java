@@ -0,0 +1,189 @@
+package net.filipvanlaenen.laconic;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Utility class encoding character sequences to UTF-8 without intermediate arrays, and hashing UTF-8 encoded texts
+ * without decoding them into strings.
+ */
+final class Utf8 {
+    /**
+     * The maximum number of bytes a UTF-16 character is encoded to.
+     */
+    static final int MAXIMUM_BYTES_PER_CHAR = 3;
+    /**
+     * The number of bytes a surrogate pair is encoded to.
+     */
+    private static final int BYTES_PER_SURROGATE_PAIR = 4;
+    /**
+     * The largest character encoded as a single byte.
+     */
+    private static final int MAXIMUM_ONE_BYTE_CHAR = 0x7F;
+    /**
+     * The largest character encoded as two bytes.
+     */
+    private static final int MAXIMUM_TWO_BYTES_CHAR = 0x7FF;
+    /**
+     * The replacement byte for malformed surrogates.
+     */
+    private static final byte REPLACEMENT = (byte) '?';
+    /**
+     * The number of bits in a continuation byte.
+     */
+    private static final int CONTINUATION_BITS = 6;
+    /**
+     * The mask for the bits in a continuation byte.
+     */
+    private static final int CONTINUATION_MASK = 0x3F;
+    /**
+     * The prefix for a continuation byte.
+     */
+    private static final int CONTINUATION_PREFIX = 0x80;
+    /**
+     * The prefix for the first byte of a two bytes sequence.
+     */
+    private static final int TWO_BYTES_PREFIX = 0xC0;
+    /**
+     * The prefix for the first byte of a three bytes sequence.
+     */
+    private static final int THREE_BYTES_PREFIX = 0xE0;
+    /**
+     * The prefix for the first byte of a four bytes sequence.
+     */
+    private static final int FOUR_BYTES_PREFIX = 0xF0;
+    /**
+     * The number of bits shifted out for the first byte of a three bytes sequence.
+     */
+    private static final int THREE_BYTES_SHIFT = 12;
+    /**
+     * The number of bits shifted out for the first byte of a four bytes sequence.
+     */
+    private static final int FOUR_BYTES_SHIFT = 18;
+    /**
+     * The mask for the prefix of the first byte of a three bytes sequence.
+     */
+    private static final int THREE_BYTES_PREFIX_MASK = 0xF0;
+    /**
+     * The mask for the bits in the first byte of a two bytes sequence.
+     */
+    private static final int TWO_BYTES_MASK = 0x1F;
+    /**
+     * The mask for the bits in the first byte of a three bytes sequence.
+     */
+    private static final int THREE_BYTES_MASK = 0x0F;
+    /**
+     * The mask for the bits in the first byte of a four bytes sequence.
+     */
+    private static final int FOUR_BYTES_MASK = 0x07;
+    /**
+     * The mask for the bits of a byte.
+     */
+    private static final int BYTE_MASK = 0xFF;
+    /**
+     * The multiplier used by {@link String#hashCode()}.
+     */
+    private static final int HASH_MULTIPLIER = 31;
+
+    /**
+     * Private constructor to prevent instantiation of this utility class.
+     */
+    private Utf8() {
+    }
+
+    /**
+     * Calculates the number of bytes a character sequence is encoded to in UTF-8.
+     *
+     * @param text The character sequence.
+     * @return The number of bytes the character sequence is encoded to.
+     */
+    static int encodedLength(final CharSequence text) {
+        int length = text.length();
+        int encodedLength = 0;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c <= MAXIMUM_ONE_BYTE_CHAR) {
+                encodedLength++;
+            } else if (c <= MAXIMUM_TWO_BYTES_CHAR) {
+                encodedLength += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                encodedLength += BYTES_PER_SURROGATE_PAIR;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                encodedLength++;
+            } else {
+                encodedLength += MAXIMUM_BYTES_PER_CHAR;
+            }
+        }
+        return encodedLength;
+    }
+
+    /**
+     * Encodes a character sequence to UTF-8 into a byte buffer. The buffer should have at least
+     * {@link #MAXIMUM_BYTES_PER_CHAR} bytes remaining per character. Malformed surrogates are replaced by a question
+     * mark, like {@link String#getBytes(java.nio.charset.Charset)} does.
+     *
+     * @param text   The character sequence to be encoded.
+     * @param buffer The byte buffer to encode into.
+     */
+    static void encode(final CharSequence text, final ByteBuffer buffer) {
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c <= MAXIMUM_ONE_BYTE_CHAR) {
+                buffer.put((byte) c);
+            } else if (c <= MAXIMUM_TWO_BYTES_CHAR) {
+                buffer.put((byte) (TWO_BYTES_PREFIX | (c >> CONTINUATION_BITS)));
+                buffer.put((byte) (CONTINUATION_PREFIX | (c & CONTINUATION_MASK)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                buffer.put((byte) (FOUR_BYTES_PREFIX | (codePoint >> FOUR_BYTES_SHIFT)));
+                buffer.put((byte) (CONTINUATION_PREFIX | ((codePoint >> THREE_BYTES_SHIFT) & CONTINUATION_MASK)));
+                buffer.put((byte) (CONTINUATION_PREFIX | ((codePoint >> CONTINUATION_BITS) & CONTINUATION_MASK)));
+                buffer.put((byte) (CONTINUATION_PREFIX | (codePoint & CONTINUATION_MASK)));
+            } else if (Character.isSurrogate(c)) {
+                buffer.put(REPLACEMENT);
+            } else {
+                buffer.put((byte) (THREE_BYTES_PREFIX | (c >> THREE_BYTES_SHIFT)));
+                buffer.put((byte) (CONTINUATION_PREFIX | ((c >> CONTINUATION_BITS) & CONTINUATION_MASK)));
+                buffer.put((byte) (CONTINUATION_PREFIX | (c & CONTINUATION_MASK)));
+            }
+        }
+    }
+
+    /**
+     * Calculates the hash code of a UTF-8 encoded text, as {@link String#hashCode()} would calculate it for the decoded
+     * text, without decoding the text into a string. The text should have been encoded by {@link #encode}.
+     *
+     * @param buffer   The byte buffer holding the encoded text.
+     * @param position The position of the encoded text in the byte buffer.
+     * @param length   The number of bytes in the encoded text.
+     * @return The hash code of the decoded text.
+     */
+    static int hashCode(final ByteBuffer buffer, final int position, final int length) {
+        int hashCode = 0;
+        int end = position + length;
+        int i = position;
+        while (i < end) {
+            int b = buffer.get(i++) & BYTE_MASK;
+            if (b <= MAXIMUM_ONE_BYTE_CHAR) {
+                hashCode = HASH_MULTIPLIER * hashCode + b;
+            } else if (b < THREE_BYTES_PREFIX) {
+                int c = (b & TWO_BYTES_MASK) << CONTINUATION_BITS | buffer.get(i++) & CONTINUATION_MASK;
+                hashCode = HASH_MULTIPLIER * hashCode + c;
+            } else if ((b & THREE_BYTES_PREFIX_MASK) == THREE_BYTES_PREFIX) {
+                int c = (b & THREE_BYTES_MASK) << THREE_BYTES_SHIFT
+                        | (buffer.get(i++) & CONTINUATION_MASK) << CONTINUATION_BITS
+                        | buffer.get(i++) & CONTINUATION_MASK;
+                hashCode = HASH_MULTIPLIER * hashCode + c;
+            } else {
+                int codePoint = (b & FOUR_BYTES_MASK) << FOUR_BYTES_SHIFT
+                        | (buffer.get(i++) & CONTINUATION_MASK) << THREE_BYTES_SHIFT
+                        | (buffer.get(i++) & CONTINUATION_MASK) << CONTINUATION_BITS
+                        | buffer.get(i++) & CONTINUATION_MASK;
+                hashCode = HASH_MULTIPLIER * hashCode + Character.highSurrogate(codePoint);
+                hashCode = HASH_MULTIPLIER * hashCode + Character.lowSurrogate(codePoint);
+            }
+        }
+        return hashCode;
+    }
+}
@@ -0,0 +1,124 @@
+package net.filipvanlaenen.laconic;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests on the {@link net.filipvanlaen.laconic.ErrorSuppression} class.
+ */
+public class ErrorSuppressionTest {
+    /**
+     * The length of the window in milliseconds.
+     */
+    private static final long WINDOW = 1_000L;
+    /**
+     * A short window in milliseconds, for the tests on the sweeper thread.
+     */
+    private static final long SHORT_WINDOW = 50L;
+    /**
+     * A fingerprint for the tests.
+     */
+    private static final long FINGERPRINT = 42L;
+    /**
+     * A timestamp at the start of the window.
+     */
+    private static final long START = 1_000_000L;
+
+    /**
+     * Verifies that only the first occurrences within a window are admitted.
+     */
+    @Test
+    public void admitShouldOnlyAdmitTheFirstOccurrencesWithinAWindow() {
+        ErrorSuppression suppression = new ErrorSuppression(WINDOW, 2);
+        assertTrue(suppression.admit(FINGERPRINT, new Message.Plain("Foo", START)));
+        assertTrue(suppression.admit(FINGERPRINT, new Message.Plain("Foo", START + 1)));
+        assertFalse(suppression.admit(FINGERPRINT, new Message.Plain("Foo", START + 2)));
+        assertNull(suppression.pollSummary());
+    }
+
+    /**
+     * Verifies that a summary is added when an error occurs again after the window has passed.
+     */
+    @Test
+    public void admitShouldAddASummaryWhenTheWindowHasPassed() {
+        ErrorSuppression suppression = new ErrorSuppression(WINDOW, 1);
+        suppression.admit(FINGERPRINT, new Message.Plain("Foo", START));
+        suppression.admit(FINGERPRINT, new Message.Plain("Foo", START + 1));
+        assertTrue(suppression.admit(FINGERPRINT, new Message.Plain("Foo", START + WINDOW)));
+        ErrorSuppression.Summary summary = suppression.pollSummary();
+        assertEquals("Repeated 1 more time: Foo", summary.message());
+        assertEquals(START + WINDOW, summary.timestamp());
+    }
+
+    /**
+     * Verifies that a forced sweep adds summaries for all suppressed repetitions.
+     */
+    @Test
+    public void forcedSweepShouldAddSummariesForAllSuppressedRepetitions() {
+        ErrorSuppression suppression = new ErrorSuppression(WINDOW, 1);
+        suppression.admit(FINGERPRINT, new Message.Plain("Foo", START));
+        suppression.admit(FINGERPRINT, new Message.Plain("Foo", START + 1));
+        suppression.admit(FINGERPRINT, new Message.Plain("Foo", START + 2));
+        suppression.sweep(START + 2, true);
+        assertEquals("Repeated 2 more times: Foo", suppression.pollSummary().message());
+        assertNull(suppression.pollSummary());
+    }
+
+    /**
+     * Verifies that the fingerprint depends on the formats of the messages on the tokens, not on their arguments.
+     */
+    @Test
+    public void fingerprintShouldDependOnTheFormatsOnly() {
+        Token token1 = new Token();
+        token1.addMessage(new Message.FormattedInteger("Item %d", 1));
+        Token token2 = new Token();
+        token2.addMessage(new Message.FormattedInteger("Item %d", 2));
+        Token token3 = new Token();
+        token3.addMessage(new Message.FormattedInteger("Element %d", 1));
+        Message error = new Message.Plain("Foo");
+        assertEquals(ErrorSuppression.fingerprint(error, new Token[] {token1}),
+                ErrorSuppression.fingerprint(error, new Token[] {token2}));
+        assertNotEquals(ErrorSuppression.fingerprint(error, new Token[] {token1}),
+                ErrorSuppression.fingerprint(error, new Token[] {token3}));
+    }
+
+    /**
+     * Verifies that the fingerprint depends on the values formatted into the message of the error.
+     */
+    @Test
+    public void fingerprintShouldDependOnTheValuesInTheError() {
+        Token[] tokens = new Token[0];
+        assertNotEquals(ErrorSuppression.fingerprint(new Message.FormattedText("Could not open %s", "a.txt"), tokens),
+                ErrorSuppression.fingerprint(new Message.FormattedText("Could not open %s", "b.txt"), tokens));
+    }
+
+    /**
+     * Verifies that the sweeper thread emits a summary once the window has passed, without further errors.
+     */
+    @Test
+    public void sweeperShouldEmitASummaryOnceTheWindowHasPassed() {
+        Queue<ErrorSuppression.Summary> summaries = new ConcurrentLinkedQueue<ErrorSuppression.Summary>();
+        ErrorSuppression suppression = new ErrorSuppression(SHORT_WINDOW, 1, s -> {
+            ErrorSuppression.Summary summary = s.pollSummary();
+            while (summary != null) {
+                summaries.add(summary);
+                summary = s.pollSummary();
+            }
+        });
+        suppression.admit(FINGERPRINT, new Message.Plain("Foo"));
+        suppression.admit(FINGERPRINT, new Message.Plain("Foo"));
+        while (summaries.isEmpty()) {
+            Thread.onSpinWait();
+        }
+        suppression.close();
+        assertEquals("Repeated 1 more time: Foo", summaries.poll().message());
+    }
+}
@@ -0,0 +1,100 @@
+package net.filipvanlaenen.laconic;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests on the {@link net.filipvanlaen.laconic.FileSink} class.
+ */
+public class FileSinkTest {
+    /**
+     * The maximum size of the file for the tests.
+     */
+    private static final long MAXIMUM_SIZE = 8L;
+    /**
+     * The number of backups for the rotation test.
+     */
+    private static final int NUMBER_OF_BACKUPS = 2;
+
+    /**
+     * Verifies that the blocks are appended to the file, encoded in UTF-8, when the sink is flushed.
+     *
+     * @param directory A temporary directory for the file.
+     * @throws IOException Thrown if the file can't be written or read.
+     */
+    @Test
+    public void flushShouldWriteTheBlocksToTheFile(@TempDir final Path directory) throws IOException {
+        Path file = directory.resolve("laconic.log");
+        FileSink sink = new FileSink(file, Long.MAX_VALUE, 1);
+        sink.write("‡ Foo\n");
+        sink.write("‡ Bar\n");
+        sink.flush();
+        assertEquals("‡ Foo\n‡ Bar\n", Files.readString(file, StandardCharsets.UTF_8));
+        sink.close();
+    }
+
+    /**
+     * Verifies that blocks are appended to an existing file.
+     *
+     * @param directory A temporary directory for the file.
+     * @throws IOException Thrown if the file can't be written or read.
+     */
+    @Test
+    public void writeShouldAppendToAnExistingFile(@TempDir final Path directory) throws IOException {
+        Path file = directory.resolve("laconic.log");
+        Files.writeString(file, "Foo\n");
+        FileSink sink = new FileSink(file, Long.MAX_VALUE, 1);
+        sink.write("Bar\n");
+        sink.close();
+        assertEquals("Foo\nBar\n", Files.readString(file));
+    }
+
+    /**
+     * Verifies that the file is rotated before a block would make it grow beyond the maximum size, and that only the
+     * requested number of backups is kept.
+     *
+     * @param directory A temporary directory for the file.
+     * @throws IOException Thrown if the file can't be written or read.
+     */
+    @Test
+    public void writeShouldRotateTheFile(@TempDir final Path directory) throws IOException {
+        Path file = directory.resolve("laconic.log");
+        FileSink sink = new FileSink(file, MAXIMUM_SIZE, NUMBER_OF_BACKUPS);
+        sink.write("Foo\n");
+        sink.write("Bar\n");
+        sink.write("Baz\n");
+        sink.write("Qux\n");
+        sink.write("Quux\n");
+        sink.close();
+        assertEquals("Quux\n", Files.readString(file));
+        assertEquals("Baz\nQux\n", Files.readString(sink.backup(1)));
+        assertEquals("Foo\nBar\n", Files.readString(sink.backup(NUMBER_OF_BACKUPS)));
+        assertFalse(Files.exists(sink.backup(NUMBER_OF_BACKUPS + 1)));
+    }
+
+    /**
+     * Verifies that without backups, the file is started anew when it is rotated.
+     *
+     * @param directory A temporary directory for the file.
+     * @throws IOException Thrown if the file can't be written or read.
+     */
+    @Test
+    public void writeShouldDeleteTheFileWhenRotatingWithoutBackups(@TempDir final Path directory) throws IOException {
+        Path file = directory.resolve("laconic.log");
+        FileSink sink = new FileSink(file, MAXIMUM_SIZE, 0);
+        sink.write("Foo\n");
+        sink.write("Bar\n");
+        sink.write("Baz\n");
+        sink.close();
+        assertEquals("Baz\n", Files.readString(file));
+        assertFalse(Files.exists(sink.backup(1)));
+    }
+}
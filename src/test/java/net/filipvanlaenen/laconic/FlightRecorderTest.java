@@ -0,0 +1,87 @@
+package net.filipvanlaenen.laconic;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests on the {@link net.filipvanlaen.laconic.FlightRecorder} class.
+ */
+public class FlightRecorderTest {
+    /**
+     * The capacity of the ring for the tests.
+     */
+    private static final int CAPACITY = 8_192;
+
+    /**
+     * Verifies that the constructor rejects a capacity that is too small.
+     *
+     * @param directory A temporary directory for the flight recording.
+     */
+    @Test
+    public void constructorShouldRejectATooSmallCapacity(@TempDir final Path directory) {
+        assertThrows(IllegalArgumentException.class,
+                () -> new FlightRecorder(directory.resolve("laconic.rec"), FlightRecorder.MINIMAL_CAPACITY - 1));
+    }
+
+    /**
+     * Verifies that the constructor writes the header of the file.
+     *
+     * @param directory A temporary directory for the flight recording.
+     * @throws IOException Thrown if the flight recording can't be created or read.
+     */
+    @Test
+    public void constructorShouldWriteTheHeader(@TempDir final Path directory) throws IOException {
+        Path file = directory.resolve("laconic.rec");
+        new FlightRecorder(file, CAPACITY).close();
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file));
+        assertEquals(FlightRecorder.HEADER_SIZE + CAPACITY, bytes.capacity());
+        assertEquals(FlightRecorder.MAGIC, bytes.getLong(0));
+        assertEquals(CAPACITY, bytes.getLong(FlightRecorder.CAPACITY_OFFSET));
+        assertEquals(0L, bytes.getLong(FlightRecorder.WRITE_POSITION_OFFSET));
+    }
+
+    /**
+     * Verifies that the write position advances with aligned entries.
+     *
+     * @param directory A temporary directory for the flight recording.
+     * @throws IOException Thrown if the flight recording can't be created or read.
+     */
+    @Test
+    public void recordMessageShouldAdvanceTheWritePositionWithAlignedEntries(@TempDir final Path directory)
+            throws IOException {
+        Path file = directory.resolve("laconic.rec");
+        FlightRecorder recorder = new FlightRecorder(file, CAPACITY);
+        recorder.recordMessage(new Message.Plain("Foo"), new Token(), null, null);
+        recorder.close();
+        long writePosition = ByteBuffer.wrap(Files.readAllBytes(file)).getLong(FlightRecorder.WRITE_POSITION_OFFSET);
+        int entrySize = FlightRecorder.ENTRY_HEADER_SIZE + Integer.BYTES + Long.BYTES
+                + MessageArena.encodedSize(new Message.Plain("Foo"));
+        assertEquals(0L, writePosition % FlightRecorder.ALIGNMENT);
+        assertTrue(writePosition >= entrySize && writePosition < entrySize + FlightRecorder.ALIGNMENT);
+    }
+
+    /**
+     * Verifies that messages that don't fit into the ring aren't recorded.
+     *
+     * @param directory A temporary directory for the flight recording.
+     * @throws IOException Thrown if the flight recording can't be created or read.
+     */
+    @Test
+    public void recordMessageShouldSkipMessagesThatDontFitIntoTheRing(@TempDir final Path directory)
+            throws IOException {
+        Path file = directory.resolve("laconic.rec");
+        FlightRecorder recorder = new FlightRecorder(file, CAPACITY);
+        recorder.recordMessage(new Message.Plain("x".repeat(CAPACITY)), new Token(), null, null);
+        recorder.close();
+        assertEquals(0L, ByteBuffer.wrap(Files.readAllBytes(file)).getLong(FlightRecorder.WRITE_POSITION_OFFSET));
+    }
+}
@@ -0,0 +1,162 @@
+package net.filipvanlaenen.laconic;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneId;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests on the {@link net.filipvanlaen.laconic.FlightRecording} class.
+ */
+public class FlightRecordingTest {
+    /**
+     * The capacity of the ring for the tests.
+     */
+    private static final int CAPACITY = 4_096;
+    /**
+     * A timestamp for the tests.
+     */
+    private static final long TIMESTAMP = 1_729_152_591_432L;
+    /**
+     * The rendered timestamp for the tests. Flight recordings are rendered in the time zone of the system, so the
+     * expected timestamp is rendered in that time zone too.
+     */
+    private static final String RENDERED_TIMESTAMP = renderTimestamp(TIMESTAMP);
+    /**
+     * The number of messages to wrap around the ring.
+     */
+    private static final int NUMBER_OF_MESSAGES = 1_000;
+
+    /**
+     * Renders a timestamp in the time zone of the system.
+     *
+     * @param timestamp The timestamp in milliseconds since the epoch.
+     * @return The rendered timestamp.
+     */
+    private static String renderTimestamp(final long timestamp) {
+        StringBuilder builder = new StringBuilder();
+        new TimestampFormat(ZoneId.systemDefault()).appendTo(builder, timestamp);
+        return builder.toString();
+    }
+
+    /**
+     * Verifies that the chains of messages of the tokens are rebuilt, including fan-out and cloned tokens.
+     *
+     * @param directory A temporary directory for the flight recording.
+     * @throws IOException Thrown if the flight recording can't be created or read.
+     */
+    @Test
+    public void readShouldRebuildTheChainsOfTheTokens(@TempDir final Path directory) throws IOException {
+        Path file = directory.resolve("laconic.rec");
+        FlightRecorder recorder = new FlightRecorder(file, CAPACITY);
+        Token token1 = new Token();
+        recorder.recordMessage(new Message.Plain("Foo", TIMESTAMP), token1, null, null);
+        Token token2 = new Token();
+        recorder.recordMessage(new Message.FormattedInteger("Bar %d", 1, TIMESTAMP), token2, token1, null);
+        Token token3 = new Token(token1);
+        recorder.recordClone(token3, token1);
+        recorder.recordMessage(new Message.FormattedText("Baz %s", "‡", TIMESTAMP), token3, new Token[0]);
+        recorder.close();
+        FlightRecording recording = FlightRecording.read(file);
+        long id1 = token1.flightRecorderId();
+        long id2 = token2.flightRecorderId();
+        long id3 = token3.flightRecorderId();
+        assertArrayEquals(new long[] {id1, id2, id3}, recording.getTokenIds());
+        assertEquals(RENDERED_TIMESTAMP + " ‡   Foo\n" + RENDERED_TIMESTAMP + " ‡ ⬐ Bar 1\n", recording.render(id1));
+        assertEquals(RENDERED_TIMESTAMP + " ‡ ⬐ Bar 1\n", recording.render(id2));
+        assertEquals(RENDERED_TIMESTAMP + " ‡   Foo\n" + RENDERED_TIMESTAMP + " ‡   Bar 1\n" + RENDERED_TIMESTAMP
+                + " ‡ ⬐ Baz ‡\n", recording.render(id3));
+    }
+
+    /**
+     * Verifies that a message formatted with a null text is recorded and read back.
+     *
+     * @param directory A temporary directory for the flight recording.
+     * @throws IOException Thrown if the flight recording can't be created or read.
+     */
+    @Test
+    public void readShouldReadAMessageFormattedWithANullText(@TempDir final Path directory) throws IOException {
+        Path file = directory.resolve("laconic.rec");
+        FlightRecorder recorder = new FlightRecorder(file, CAPACITY);
+        Token token = new Token();
+        recorder.recordMessage(new Message.FormattedText("Foo %s", null, TIMESTAMP), token, null, null);
+        recorder.close();
+        FlightRecording recording = FlightRecording.read(file);
+        assertEquals(RENDERED_TIMESTAMP + " ‡ ⬐ Foo null\n",
+                recording.render(token.flightRecorderId()));
+    }
+
+    /**
+     * Verifies that a plain message that is null is logged in flight recorder mode, and read back from the recording.
+     *
+     * @param directory A temporary directory for the flight recording.
+     * @throws IOException Thrown if the flight recording can't be created or read.
+     */
+    @Test
+    public void readShouldReadAPlainMessageThatIsNull(@TempDir final Path directory) throws IOException {
+        Path file = directory.resolve("laconic.rec");
+        Laconic laconic = new Laconic();
+        laconic.setFlightRecorder(file, CAPACITY);
+        Token token = laconic.logMessage((String) null);
+        laconic.setFlightRecorder(null, CAPACITY);
+        assertTrue(FlightRecording.read(file).render(token.flightRecorderId()).endsWith(" ‡ ⬐ null\n"));
+    }
+
+    /**
+     * Verifies that only the most recent messages are read back once the ring has wrapped around.
+     *
+     * @param directory A temporary directory for the flight recording.
+     * @throws IOException Thrown if the flight recording can't be created or read.
+     */
+    @Test
+    public void readShouldReadTheMostRecentMessagesAfterTheRingHasWrappedAround(@TempDir final Path directory)
+            throws IOException {
+        Path file = directory.resolve("laconic.rec");
+        FlightRecorder recorder = new FlightRecorder(file, CAPACITY);
+        Token token = new Token();
+        for (int i = 0; i < NUMBER_OF_MESSAGES; i++) {
+            recorder.recordMessage(new Message.FormattedInteger("Message %d", i, TIMESTAMP), token, null, null);
+        }
+        recorder.close();
+        String[] lines = FlightRecording.read(file).render(token.flightRecorderId()).split("\n");
+        assertTrue(lines.length > 1 && lines.length < NUMBER_OF_MESSAGES);
+        int first = NUMBER_OF_MESSAGES - lines.length;
+        for (int i = 0; i < lines.length; i++) {
+            assertTrue(lines[i].endsWith(" Message " + (first + i)));
+        }
+    }
+
+    /**
+     * Verifies that reading a file that isn't a flight recording throws an exception.
+     *
+     * @param directory A temporary directory for the file.
+     * @throws IOException Thrown if the file can't be written.
+     */
+    @Test
+    public void readShouldRejectAFileThatIsntAFlightRecording(@TempDir final Path directory) throws IOException {
+        Path file = directory.resolve("laconic.rec");
+        Files.writeString(file, "Foo");
+        assertThrows(IOException.class, () -> FlightRecording.read(file));
+    }
+
+    /**
+     * Verifies that rendering a token that isn't in the recording returns an empty string.
+     *
+     * @param directory A temporary directory for the flight recording.
+     * @throws IOException Thrown if the flight recording can't be created or read.
+     */
+    @Test
+    public void renderShouldReturnAnEmptyStringForAnUnknownToken(@TempDir final Path directory) throws IOException {
+        Path file = directory.resolve("laconic.rec");
+        new FlightRecorder(file, CAPACITY).close();
+        assertEquals("", FlightRecording.read(file).render(1L));
+    }
+}
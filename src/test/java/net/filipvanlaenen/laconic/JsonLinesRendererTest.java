@@ -0,0 +1,102 @@
+package net.filipvanlaenen.laconic;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests on the {@link net.filipvanlaen.laconic.JsonLinesRenderer} class.
+ */
+public class JsonLinesRendererTest {
+    /**
+     * A timestamp for the tests.
+     */
+    private static final long TIMESTAMP = 1_729_152_651_432L;
+    /**
+     * The number of repetitions for the summary test.
+     */
+    private static final int REPETITIONS = 97;
+
+    /**
+     * Verifies that quotes, backslashes and control characters are escaped.
+     */
+    @Test
+    public void appendEscapedShouldEscapeSpecialCharacters() {
+        StringBuilder block = new StringBuilder();
+        JsonLinesRenderer.appendEscaped(block, "\"a\\b\"\n\r\t\u0001‡");
+        assertEquals("\\\"a\\\\b\\\"\\n\\r\\t\\u0001‡", block.toString());
+    }
+
+    /**
+     * Verifies that an error is rendered with the chains of its tokens, rendering a message shared by tokens only once.
+     */
+    @Test
+    public void renderErrorShouldRenderTheChainsOfTheTokens() {
+        Message shared = new Message.Plain("Foo", TIMESTAMP);
+        Token token1 = new Token();
+        token1.addMessage(shared);
+        token1.addMessage(new Message.FormattedInteger("Bar %d", 1, TIMESTAMP + 1L));
+        Token token2 = new Token();
+        token2.addMessage(shared);
+        Message error = new Message.Plain("Baz \"qux\"", TIMESTAMP + 2L);
+        assertEquals("{\"type\":\"error\",\"timestamp\":1729152651434,\"message\":\"Baz \\\"qux\\\"\",\"chains\":[["
+                + "{\"timestamp\":1729152651432,\"message\":\"Foo\"},"
+                + "{\"timestamp\":1729152651433,\"message\":\"Bar 1\"}],[]]}\n",
+                JsonLinesRenderer.renderError(error, new Token[] {token1, token2}).toString());
+    }
+
+    /**
+     * Verifies that messages with the same text and timestamp logged separately to different tokens are all rendered.
+     */
+    @Test
+    public void renderErrorShouldRenderEqualMessagesLoggedSeparately() {
+        Token token1 = new Token();
+        token1.addMessage(new Message.Plain("Foo", TIMESTAMP));
+        Token token2 = new Token();
+        token2.addMessage(new Message.Plain("Foo", TIMESTAMP));
+        assertEquals("{\"type\":\"error\",\"timestamp\":1729152651432,\"message\":\"Bar\",\"chains\":[["
+                + "{\"timestamp\":1729152651432,\"message\":\"Foo\"}],"
+                + "[{\"timestamp\":1729152651432,\"message\":\"Foo\"}]]}\n",
+                JsonLinesRenderer.renderError(new Message.Plain("Bar", TIMESTAMP), new Token[] {token1, token2})
+                        .toString());
+    }
+
+    /**
+     * Verifies that an error without tokens is rendered with an empty array of chains.
+     */
+    @Test
+    public void renderErrorShouldRenderAnEmptyArrayWithoutTokens() {
+        assertEquals("{\"type\":\"error\",\"timestamp\":1729152651432,\"message\":\"Foo\",\"chains\":[]}\n",
+                JsonLinesRenderer.renderError(new Message.Plain("Foo", TIMESTAMP), new Token[0]).toString());
+    }
+
+    /**
+     * Verifies that the chain of a token for a unit of work that hasn't been sampled is rendered as null.
+     */
+    @Test
+    public void renderErrorShouldRenderNullForAnUnsampledToken() {
+        assertEquals("{\"type\":\"error\",\"timestamp\":1729152651432,\"message\":\"Foo\",\"chains\":[null,[]]}\n",
+                JsonLinesRenderer.renderError(new Message.Plain("Foo", TIMESTAMP),
+                        new Token[] {Token.UNSAMPLED, new Token()}).toString());
+    }
+
+    /**
+     * Verifies that a progress message is rendered.
+     */
+    @Test
+    public void renderProgressShouldRenderTheMessage() {
+        assertEquals("{\"type\":\"progress\",\"timestamp\":1729152651432,\"message\":\"Foo\"}\n",
+                JsonLinesRenderer.renderProgress(new Message.Plain("Foo", TIMESTAMP)).toString());
+    }
+
+    /**
+     * Verifies that a summary is rendered with the message of the error and the number of repetitions.
+     */
+    @Test
+    public void renderSummaryShouldRenderTheErrorAndTheRepetitions() {
+        ErrorSuppression.Summary summary =
+                new ErrorSuppression.Summary(new Message.Plain("Foo", TIMESTAMP), REPETITIONS, TIMESTAMP);
+        assertEquals("{\"type\":\"summary\",\"timestamp\":1729152651432,\"message\":\"Foo\",\"repetitions\":97}\n",
+                JsonLinesRenderer.renderSummary(summary).toString());
+    }
+}
@@ -0,0 +1,114 @@
+package net.filipvanlaenen.laconic;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests on the {@link net.filipvanlaen.laconic.LaconicMetrics} class.
+ */
+public class LaconicMetricsTest {
+    /**
+     * The smallest render latency in nanoseconds counted in bucket 10.
+     */
+    private static final long TWO_TO_THE_TENTH = 1_024L;
+    /**
+     * Index of the bucket for render latencies of at least 2<sup>10</sup> nanoseconds.
+     */
+    private static final int BUCKET_TEN = 10;
+    /**
+     * The number three.
+     */
+    private static final long THREE = 3L;
+
+    /**
+     * Verifies that render latencies are counted in power of two buckets.
+     */
+    @Test
+    public void errorLoggedShouldCountRenderLatenciesInPowerOfTwoBuckets() {
+        LaconicMetrics metrics = new LaconicMetrics();
+        metrics.errorLogged(0L);
+        metrics.errorLogged(1L);
+        metrics.errorLogged(TWO_TO_THE_TENTH - 1L);
+        metrics.errorLogged(TWO_TO_THE_TENTH);
+        metrics.errorLogged(Long.MAX_VALUE);
+        long[] histogram = metrics.getRenderLatencyHistogram();
+        assertEquals(2L, histogram[0]);
+        assertEquals(1L, histogram[BUCKET_TEN - 1]);
+        assertEquals(1L, histogram[BUCKET_TEN]);
+        assertEquals(1L, histogram[LaconicMetrics.NUMBER_OF_LATENCY_BUCKETS - 1]);
+        assertEquals(Arrays.stream(histogram).sum(), metrics.getErrorsLogged());
+    }
+
+    /**
+     * Verifies that the estimated number of appended bytes grows with the length of the message.
+     */
+    @Test
+    public void messageLoggedShouldEstimateMoreBytesForALongerMessage() {
+        LaconicMetrics metrics = new LaconicMetrics();
+        metrics.messageLogged(new Message.Plain("Foo"), 1);
+        long shortMessage = metrics.getEstimatedAppendedBytes();
+        metrics.messageLogged(new Message.Plain("FooBarBaz"), 1);
+        assertEquals(shortMessage + "BarBaz".length(), metrics.getEstimatedAppendedBytes() - shortMessage);
+    }
+
+    /**
+     * Verifies that the estimated number of appended bytes grows with the fan-out.
+     */
+    @Test
+    public void messageLoggedShouldEstimateMoreBytesForALargerFanOut() {
+        LaconicMetrics metrics = new LaconicMetrics();
+        metrics.messageLogged(new Message.FormattedInteger("Foo %d", 1), 1);
+        long singleToken = metrics.getEstimatedAppendedBytes();
+        metrics.messageLogged(new Message.FormattedInteger("Foo %d", 1), 2);
+        assertTrue(metrics.getEstimatedAppendedBytes() - singleToken > singleToken);
+    }
+
+    /**
+     * Verifies that the messages, the appends and the maximum fan-out are counted.
+     */
+    @Test
+    public void messageLoggedShouldCountMessagesAppendsAndTheMaximumFanOut() {
+        LaconicMetrics metrics = new LaconicMetrics();
+        metrics.messageLogged(new Message.Plain("Foo"), 2);
+        metrics.messageLogged(new Message.Plain("Bar"), 0);
+        MetricsSnapshot snapshot = metrics.snapshot();
+        assertEquals(2L, snapshot.tokensCreated());
+        assertEquals(2L, snapshot.messagesLogged());
+        assertEquals(2L, snapshot.messageAppends());
+        assertEquals(2L, snapshot.maximumFanOut());
+        assertEquals(1D, snapshot.averageFanOut());
+    }
+
+    /**
+     * Verifies that the estimated number of appended bytes is calculated for a plain message that is null.
+     */
+    @Test
+    public void messageLoggedShouldEstimateTheBytesOfAPlainMessageThatIsNull() {
+        LaconicMetrics metrics = new LaconicMetrics();
+        metrics.messageLogged(new Message.Plain(null), 1);
+        assertTrue(metrics.getEstimatedAppendedBytes() > 0L);
+    }
+
+    /**
+     * Verifies that tokens are counted as live until they are closed, also when they are closed twice.
+     */
+    @Test
+    public void liveTokensShouldCountTheTokensThatHaventBeenClosed() {
+        Laconic laconic = new Laconic();
+        laconic.setMetricsEnabled(true);
+        Token token1 = laconic.logMessage("Foo");
+        Token token2 = laconic.logMessage(token1, "Bar");
+        laconic.logMessage("Baz");
+        token1.close();
+        token2.close();
+        token2.close();
+        MetricsSnapshot snapshot = laconic.getMetrics();
+        laconic.setMetricsEnabled(false);
+        assertEquals(1L, snapshot.liveTokens());
+        assertEquals(THREE, snapshot.tokensCreated());
+    }
+}
@@ -1,19 +1,71 @@
 package net.filipvanlaenen.laconic;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.sun.management.ThreadMXBean;
 
 /**
  * Unit tests on the {@link net.filipvanlaen.laconic.Laconic} class.
  */
 public class LaconicTest {
+    /**
+     * The number of threads to use in the concurrency tests.
+     */
+    private static final int NUMBER_OF_THREADS = 8;
+    /**
+     * The number of errors each thread logs in the concurrency tests.
+     */
+    private static final int NUMBER_OF_ERRORS = 100;
+    /**
+     * The capacity of the buffer in the asynchronous mode tests.
+     */
+    private static final int ASYNCHRONOUS_BUFFER_CAPACITY = 4;
+    /**
+     * The number of rounds in the allocation test, allowing the JIT compiler to warm up.
+     */
+    private static final int NUMBER_OF_ALLOCATION_ROUNDS = 20;
+    /**
+     * The number of calls per round in the allocation test.
+     */
+    private static final int NUMBER_OF_ALLOCATION_CALLS = 10_000;
+    /**
+     * A sink for the objects created in the allocation test, preventing them from being optimized away.
+     */
+    private static volatile Object allocationSink;
+    /**
+     * The number of repetitions for a message longer than the initial buffer of the channel sink.
+     */
+    private static final int LONG_MESSAGE_REPETITIONS = 10_000;
+    /**
+     * A number of messages large enough to make a token pack its older messages.
+     */
+    private static final int NUMBER_OF_MESSAGES_TO_BE_PACKED = 40;
+
     /**
      * Verifies that an error message can be logged.
      */
@@ -269,4 +321,830 @@ public class LaconicTest {
         ;
         assertEquals(expected, outputStream.toString());
     }
+
+    /**
+     * Verifies that a message logged to more than one token is shared by those tokens.
+     */
+    @Test
+    public void logMessageShouldShareTheMessageBetweenAllTokens() {
+        Laconic laconic = new Laconic();
+        Token token1 = laconic.logMessage("Foo");
+        Token token2 = laconic.logMessage("Bar");
+        Token token3 = laconic.logMessage("Baz", token1, token2);
+        Message message = token3.getMessages().getAt(0);
+        assertSame(message, token1.getMessages().getAt(1));
+        assertSame(message, token2.getMessages().getAt(1));
+    }
+
+    /**
+     * Verifies that a message shared by more than one token is rendered only once in an error message.
+     */
+    @Test
+    public void logErrorShouldRenderASharedMessageOnlyOnce() {
+        Laconic laconic = new Laconic();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        PrintStream printStream = new PrintStream(outputStream);
+        laconic.setPrintStream(printStream);
+        laconic.setPrefixWithTimestamp(false);
+        Token token1 = laconic.logMessage("Foo");
+        Token token2 = laconic.logMessage("Qux");
+        laconic.logMessage("Bar", token1, token2);
+        laconic.logMessage("Quux", token2);
+        laconic.logError("Baz", token1, token2);
+        assertEquals("‡   Foo\n‡ ⬐ Bar\n‡   Qux\n‡ ⬐ Quux\n‡ Baz\n", outputStream.toString());
+    }
+
+    /**
+     * Verifies that a message shared by more than one token is rendered only once in an error message, even after it
+     * has been packed separately on each token.
+     */
+    @Test
+    public void logErrorShouldRenderAPackedSharedMessageOnlyOnce() {
+        Laconic laconic = new Laconic();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        PrintStream printStream = new PrintStream(outputStream);
+        laconic.setPrintStream(printStream);
+        laconic.setPrefixWithTimestamp(false);
+        Token token1 = laconic.logMessage("Foo");
+        Token token2 = laconic.logMessage("Qux");
+        laconic.logMessage("Bar", token1, token2);
+        for (int i = 0; i < NUMBER_OF_MESSAGES_TO_BE_PACKED; i++) {
+            laconic.logMessage("Quux", token1);
+            laconic.logMessage("Quux", token2);
+        }
+        laconic.logError("Baz", token1, token2);
+        String output = outputStream.toString();
+        assertEquals(output.indexOf("Bar"), output.lastIndexOf("Bar"));
+        assertTrue(output.startsWith("‡   Foo\n‡   Bar\n‡   Quux\n"));
+    }
+
+    /**
+     * Verifies that messages with the same text and timestamp logged separately to different tokens are all rendered
+     * in an error message.
+     */
+    @Test
+    public void logErrorShouldRenderEqualMessagesLoggedSeparately() {
+        Laconic laconic = new Laconic();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        PrintStream printStream = new PrintStream(outputStream);
+        laconic.setPrintStream(printStream);
+        laconic.setPrefixWithTimestamp(false);
+        long timestamp = System.currentTimeMillis();
+        Token token1 = new Token();
+        token1.addMessage(new Message.Plain("Foo", timestamp));
+        Token token2 = new Token();
+        token2.addMessage(new Message.Plain("Foo", timestamp));
+        laconic.logError("Bar", token1, token2);
+        assertEquals("‡ ⬐ Foo\n‡ ⬐ Foo\n‡ Bar\n", outputStream.toString());
+    }
+
+    /**
+     * Verifies that errors logged concurrently from different threads don't get interleaved.
+     *
+     * @throws InterruptedException Thrown if the test is interrupted while waiting for the threads.
+     */
+    @Test
+    public void logErrorShouldNotInterleaveErrorsLoggedConcurrently() throws InterruptedException {
+        Laconic laconic = new Laconic();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        PrintStream printStream = new PrintStream(outputStream);
+        laconic.setPrintStream(printStream);
+        laconic.setPrefixWithTimestamp(false);
+        laconic.logError("Start");
+        Thread[] threads = new Thread[NUMBER_OF_THREADS];
+        for (int i = 0; i < NUMBER_OF_THREADS; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < NUMBER_OF_ERRORS; j++) {
+                    Token token = laconic.logMessage("Foo");
+                    laconic.logMessage("Bar", token);
+                    laconic.logError("Baz", token);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        String[] blocks = outputStream.toString().split("\n\n");
+        assertEquals(NUMBER_OF_THREADS * NUMBER_OF_ERRORS + 1, blocks.length);
+        for (int i = 1; i < blocks.length; i++) {
+            assertEquals("‡   Foo\n‡ ⬐ Bar\n‡ Baz", blocks[i].trim());
+        }
+    }
+
+    /**
+     * Verifies that in asynchronous mode, the same output is produced as in synchronous mode.
+     */
+    @Test
+    public void logErrorShouldLogInAsynchronousMode() {
+        Laconic laconic = new Laconic();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        PrintStream printStream = new PrintStream(outputStream);
+        laconic.setPrintStream(printStream);
+        laconic.setPrefixWithTimestamp(false);
+        laconic.setAsynchronousMode(ASYNCHRONOUS_BUFFER_CAPACITY, FullBufferPolicy.BLOCK);
+        laconic.logProgress("Foo");
+        Token token = laconic.logMessage("Bar");
+        laconic.logError("Baz", token);
+        laconic.logProgress("Qux");
+        laconic.flush();
+        laconic.setSynchronousMode();
+        assertEquals("Foo\n\n‡ ⬐ Bar\n‡ Baz\n\nQux\n", outputStream.toString());
+    }
+
+    /**
+     * Verifies that in asynchronous mode, messages are dropped and counted when the buffer is full.
+     *
+     * @throws InterruptedException Thrown if the test is interrupted while waiting for the writer.
+     */
+    @Test
+    public void logProgressShouldDropAndCountMessagesWhenTheBufferIsFull() throws InterruptedException {
+        Laconic laconic = new Laconic();
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        PrintStream printStream = new PrintStream(new OutputStream() {
+            @Override
+            public void write(final int b) {
+                writing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+                outputStream.write(b);
+            }
+        });
+        laconic.setPrintStream(printStream);
+        laconic.setPrefixWithTimestamp(false);
+        laconic.setAsynchronousMode(ASYNCHRONOUS_BUFFER_CAPACITY, FullBufferPolicy.DROP_AND_COUNT);
+        laconic.logProgress("Foo");
+        writing.await();
+        for (int i = 0; i < ASYNCHRONOUS_BUFFER_CAPACITY + 1; i++) {
+            laconic.logProgress("Bar");
+        }
+        release.countDown();
+        laconic.flush();
+        laconic.setSynchronousMode();
+        assertEquals(1L, laconic.getNumberOfDroppedMessages());
+        assertEquals("Foo\n" + "Bar\n".repeat(ASYNCHRONOUS_BUFFER_CAPACITY), outputStream.toString());
+    }
+
+    /**
+     * Verifies that error and progress messages are written to the added sinks too.
+     */
+    @Test
+    public void addSinkShouldWriteMessagesToTheAddedSinks() {
+        Laconic laconic = new Laconic();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        laconic.setPrintStream(new PrintStream(outputStream));
+        laconic.setPrefixWithTimestamp(false);
+        MemorySink batchingSink = new MemorySink(Integer.MAX_VALUE);
+        laconic.addSink(batchingSink, ASYNCHRONOUS_BUFFER_CAPACITY, 2, Duration.ofHours(1L));
+        MemorySink immediateSink = new MemorySink(Integer.MAX_VALUE);
+        laconic.addSink(immediateSink, ASYNCHRONOUS_BUFFER_CAPACITY, 1, Duration.ZERO);
+        laconic.logProgress("Foo");
+        Token token = laconic.logMessage("Bar");
+        laconic.logError("Baz", token);
+        laconic.flush();
+        laconic.removeSink(batchingSink);
+        laconic.removeSink(immediateSink);
+        assertEquals("Foo\n\n‡ ⬐ Bar\n‡ Baz\n", outputStream.toString());
+        assertEquals("Foo\n\n‡ ⬐ Bar\n‡ Baz\n", batchingSink.getText());
+        assertEquals("Foo\n\n‡ ⬐ Bar\n‡ Baz\n", immediateSink.getText());
+    }
+
+    /**
+     * Verifies that a slow sink doesn't block the other sinks, and that the messages it drops are counted.
+     *
+     * @throws InterruptedException Thrown if the test is interrupted while waiting for the writer.
+     */
+    @Test
+    public void addSinkShouldNotLetASlowSinkBlockTheOtherSinks() throws InterruptedException {
+        Laconic laconic = new Laconic();
+        laconic.setPrintStream(new PrintStream(new ByteArrayOutputStream()));
+        laconic.setPrefixWithTimestamp(false);
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        MemorySink slowText = new MemorySink(Integer.MAX_VALUE);
+        Sink slowSink = new Sink() {
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void write(final CharSequence block) {
+                writing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+                slowText.write(block);
+            }
+        };
+        MemorySink fastSink = new MemorySink(Integer.MAX_VALUE);
+        laconic.addSink(slowSink, ASYNCHRONOUS_BUFFER_CAPACITY, 1, Duration.ZERO);
+        laconic.addSink(fastSink, ASYNCHRONOUS_BUFFER_CAPACITY, 1, Duration.ZERO);
+        laconic.logProgress("Foo");
+        writing.await();
+        for (int i = 0; i < ASYNCHRONOUS_BUFFER_CAPACITY + 1; i++) {
+            laconic.logProgress("Bar");
+            while (!fastSink.getText().endsWith("Bar\n".repeat(i + 1))) {
+                Thread.onSpinWait();
+            }
+        }
+        release.countDown();
+        laconic.flush();
+        laconic.removeSink(slowSink);
+        laconic.removeSink(fastSink);
+        assertEquals(1L, laconic.getNumberOfDroppedMessages());
+        assertEquals("Foo\n" + "Bar\n".repeat(ASYNCHRONOUS_BUFFER_CAPACITY), slowText.getText());
+        assertEquals("Foo\n" + "Bar\n".repeat(ASYNCHRONOUS_BUFFER_CAPACITY + 1), fastSink.getText());
+    }
+
+    /**
+     * Verifies that messages aren't written to a sink anymore once it has been removed.
+     */
+    @Test
+    public void removeSinkShouldStopWritingToTheSink() {
+        Laconic laconic = new Laconic();
+        laconic.setPrintStream(new PrintStream(new ByteArrayOutputStream()));
+        laconic.setPrefixWithTimestamp(false);
+        MemorySink sink = new MemorySink(Integer.MAX_VALUE);
+        laconic.addSink(sink, ASYNCHRONOUS_BUFFER_CAPACITY, ASYNCHRONOUS_BUFFER_CAPACITY, Duration.ofHours(1L));
+        laconic.logProgress("Foo");
+        laconic.removeSink(sink);
+        laconic.logProgress("Bar");
+        laconic.flush();
+        assertEquals("Foo\n", sink.getText());
+    }
+
+    /**
+     * Verifies that in the JSON Lines format, errors and progress messages are written as one JSON object per line.
+     */
+    @Test
+    public void setOutputFormatShouldWriteJsonLines() {
+        Laconic laconic = new Laconic();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        laconic.setPrintStream(new PrintStream(outputStream));
+        laconic.setOutputFormat(OutputFormat.JSON_LINES);
+        laconic.logProgress("Foo");
+        Token token = laconic.logMessage("Bar");
+        laconic.logError("Baz", token);
+        String output = outputStream.toString().replaceAll("\"timestamp\":\\d+", "\"timestamp\":0");
+        assertEquals("{\"type\":\"progress\",\"timestamp\":0,\"message\":\"Foo\"}\n"
+                + "{\"type\":\"error\",\"timestamp\":0,\"message\":\"Baz\",\"chains\":[[{\"timestamp\":0,"
+                + "\"message\":\"Bar\"}]]}\n", output);
+    }
+
+    /**
+     * Verifies that with tree rendering, the history shared by cloned tokens is logged only once.
+     */
+    @Test
+    public void setTreeRenderingShouldLogTheSharedHistoryOnce() {
+        Laconic laconic = new Laconic();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        laconic.setPrintStream(new PrintStream(outputStream));
+        laconic.setPrefixWithTimestamp(false);
+        laconic.setTreeRendering(true);
+        Token token = laconic.logMessage("Foo");
+        Token token1 = laconic.logMessage(token, "Bar");
+        Token token2 = laconic.logMessage(token, "Baz");
+        laconic.logError("Qux", token1, token2);
+        assertEquals("‡   Foo\n‡ ⬐ ├ Bar\n‡ ⬐ └ Baz\n‡ Qux\n", outputStream.toString());
+    }
+
+    /**
+     * Verifies that a batch of messages is appended to all tokens, sharing a single timestamp.
+     */
+    @Test
+    public void logMessagesShouldAppendTheBatchToTheTokens() {
+        Laconic laconic = new Laconic();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        laconic.setPrintStream(new PrintStream(outputStream));
+        laconic.setPrefixWithTimestamp(false);
+        Token token1 = laconic.logMessage("Foo");
+        Token token2 = laconic.logMessage("Bar");
+        laconic.logMessages(new String[] {"Baz", "Qux"}, token1, token2);
+        assertEquals(token1.getMessages().getAt(1).timestamp(), token2.getMessages().getAt(2).timestamp());
+        laconic.logError("Quux", token1);
+        laconic.logError("Corge", token2);
+        assertEquals("‡   Foo\n‡   Baz\n‡ ⬐ Qux\n‡ Quux\n\n‡   Bar\n‡   Baz\n‡ ⬐ Qux\n‡ Corge\n",
+                outputStream.toString());
+    }
+
+    /**
+     * Verifies that a stream of messages is appended to the current token if no tokens are passed.
+     */
+    @Test
+    public void logMessagesShouldAppendAStreamToTheCurrentToken() {
+        Laconic laconic = new Laconic();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        laconic.setPrintStream(new PrintStream(outputStream));
+        laconic.setPrefixWithTimestamp(false);
+        Token token = laconic.logMessage("Foo");
+        TokenScope scope = TokenScope.open(token);
+        try {
+            laconic.logMessages(Stream.of("Bar", "Baz"));
+        } finally {
+            scope.close();
+        }
+        laconic.logError("Qux", token);
+        assertEquals("‡   Foo\n‡   Bar\n‡ ⬐ Baz\n‡ Qux\n", outputStream.toString());
+    }
+
+    /**
+     * Verifies that units of work that aren't sampled get the shared unsampled token, and that their context isn't
+     * recorded.
+     */
+    @Test
+    public void setSamplingShouldReturnTheUnsampledTokenForUnitsOfWorkThatArentSampled() {
+        Laconic laconic = new Laconic();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        laconic.setPrintStream(new PrintStream(outputStream));
+        laconic.setPrefixWithTimestamp(false);
+        laconic.setSampling(Integer.MAX_VALUE);
+        Token token = laconic.logMessage("Foo");
+        assertSame(Token.UNSAMPLED, token);
+        assertSame(Token.UNSAMPLED, laconic.logMessage("Bar %d", 1, token));
+        assertSame(Token.UNSAMPLED, laconic.logMessage(token, "Baz"));
+        token.close();
+        laconic.logError("Qux", token);
+        assertEquals("‡ ⬐ … context not sampled\n‡ Qux\n", outputStream.toString());
+    }
+
+    /**
+     * Verifies that messages logged with a sampled token are recorded when sampling is switched on, and that a
+     * sampled token is marked as such.
+     */
+    @Test
+    public void setSamplingShouldKeepRecordingSampledTokens() {
+        Laconic laconic = new Laconic();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        laconic.setPrintStream(new PrintStream(outputStream));
+        laconic.setPrefixWithTimestamp(false);
+        Token token = laconic.logMessage("Foo");
+        laconic.setSampling(Integer.MAX_VALUE);
+        Token token1 = laconic.logMessage("Bar", token, Token.UNSAMPLED);
+        assertTrue(token1.isSampled());
+        laconic.logError("Baz", token1);
+        assertEquals("‡ ⬐ Bar\n‡ Baz\n", outputStream.toString());
+    }
+
+    /**
+     * Verifies that a message cloning an unsampled token is still added to the sampled tokens it's logged to.
+     */
+    @Test
+    public void setSamplingShouldAddMessagesCloningAnUnsampledTokenToSampledTokens() {
+        Laconic laconic = new Laconic();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        laconic.setPrintStream(new PrintStream(outputStream));
+        laconic.setPrefixWithTimestamp(false);
+        Token token = laconic.logMessage("Foo");
+        laconic.setSampling(Integer.MAX_VALUE);
+        Token unsampled = laconic.logMessage("Bar");
+        assertSame(Token.UNSAMPLED, unsampled);
+        Token token1 = laconic.logMessage(unsampled, "Baz %d", 1, token);
+        assertTrue(token1.isSampled());
+        assertSame(Token.UNSAMPLED, laconic.logMessage(unsampled, "Qux %d", 1, unsampled));
+        laconic.logError("Quux", token);
+        assertEquals("‡   Foo\n‡ ⬐ Baz 1\n‡ Quux\n", outputStream.toString());
+    }
+
+    /**
+     * Verifies that a message logged to an empty array of tokens within the scope of a sampled token is recorded, even
+     * if the sampler wouldn't sample a new unit of work.
+     */
+    @Test
+    public void setSamplingShouldSampleMessagesLoggedToNoTokensInTheScopeOfASampledToken() {
+        Laconic laconic = new Laconic();
+        Token token = laconic.logMessage("Foo");
+        laconic.setSampling(Integer.MAX_VALUE);
+        TokenScope scope = TokenScope.open(token);
+        try {
+            assertTrue(laconic.logMessage("Bar %d", 1, new Token[0]).isSampled());
+        } finally {
+            scope.close();
+        }
+        assertSame(Token.UNSAMPLED, laconic.logMessage("Baz %d", 1, new Token[0]));
+    }
+
+    /**
+     * Verifies that with adaptive sampling, units of work beyond the maximum per second aren't sampled.
+     */
+    @Test
+    public void setAdaptiveSamplingShouldNotSampleUnitsOfWorkBeyondTheMaximum() {
+        Laconic laconic = new Laconic();
+        laconic.setAdaptiveSampling(1);
+        assertTrue(laconic.logMessage("Foo").isSampled());
+        assertSame(Token.UNSAMPLED, laconic.logMessage("Bar"));
+    }
+
+    /**
+     * Verifies that a marker is logged for the messages elided by the retention policy.
+     */
+    @Test
+    public void logErrorShouldLogAMarkerForElidedMessages() {
+        Laconic laconic = new Laconic();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        PrintStream printStream = new PrintStream(outputStream);
+        laconic.setPrintStream(printStream);
+        laconic.setPrefixWithTimestamp(false);
+        laconic.setTokenRetentionPolicy(2, null);
+        Token token = laconic.logMessage("Foo");
+        laconic.logMessage("Bar", token);
+        laconic.logMessage("Qux", token);
+        laconic.logError("Baz", token);
+        assertEquals("‡   … 1 earlier message elided\n‡   Bar\n‡ ⬐ Qux\n‡ Baz\n", outputStream.toString());
+    }
+
+    /**
+     * Verifies that logging a message to an existing token allocates nothing beyond the stored entry and the new token.
+     */
+    @Test
+    public void logMessageWithATokenShouldOnlyAllocateTheStoredEntryAndTheNewToken() {
+        ThreadMXBean threadMXBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threadMXBean.isThreadAllocatedMemorySupported());
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+        Laconic laconic = new Laconic();
+        long referenceBytes = 0L;
+        long logMessageBytes = 0L;
+        for (int round = 0; round < NUMBER_OF_ALLOCATION_ROUNDS; round++) {
+            Token target = new Token();
+            long before = threadMXBean.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < NUMBER_OF_ALLOCATION_CALLS; i++) {
+                Token token = new Token();
+                Message message = new Message.Plain("Foo");
+                token.addMessage(message);
+                target.addMessage(message);
+                allocationSink = token;
+            }
+            long middle = threadMXBean.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < NUMBER_OF_ALLOCATION_CALLS; i++) {
+                allocationSink = laconic.logMessage("Foo", target);
+            }
+            long after = threadMXBean.getThreadAllocatedBytes(threadId);
+            referenceBytes = middle - before;
+            logMessageBytes = after - middle;
+        }
+        assertTrue(logMessageBytes / NUMBER_OF_ALLOCATION_CALLS <= referenceBytes / NUMBER_OF_ALLOCATION_CALLS,
+                "logMessage allocated " + logMessageBytes / NUMBER_OF_ALLOCATION_CALLS + " bytes per call instead of "
+                        + referenceBytes / NUMBER_OF_ALLOCATION_CALLS + ".");
+    }
+
+    /**
+     * Verifies that errors can be logged to a channel.
+     */
+    @Test
+    public void logErrorShouldLogToAChannel() {
+        Laconic laconic = new Laconic();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        laconic.setChannel(Channels.newChannel(outputStream));
+        laconic.setPrefixWithTimestamp(false);
+        Token token = laconic.logMessage("Foo");
+        laconic.logMessage("Bar", token);
+        laconic.logError("Baz", token);
+        String longMessage = "Qux ‡".repeat(LONG_MESSAGE_REPETITIONS);
+        laconic.logError(longMessage);
+        assertEquals("‡   Foo\n‡ ⬐ Bar\n‡ Baz\n\n‡ " + longMessage + "\n",
+                new String(outputStream.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Verifies that repetitions of an error are suppressed and summarized when the logger is flushed.
+     */
+    @Test
+    public void logErrorShouldSuppressAndSummarizeRepeatedErrors() {
+        Laconic laconic = new Laconic();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        PrintStream printStream = new PrintStream(outputStream);
+        laconic.setPrintStream(printStream);
+        laconic.setPrefixWithTimestamp(false);
+        laconic.setErrorSuppression(Duration.ofHours(1L), 1);
+        for (int i = 0; i < NUMBER_OF_ERRORS; i++) {
+            Token token = laconic.logMessage("Processing item %d.", i);
+            laconic.logError("Failed to process the item.", token);
+        }
+        laconic.logError("Something else failed.");
+        laconic.flush();
+        assertEquals("‡ ⬐ Processing item 0.\n‡ Failed to process the item.\n\n‡ Something else failed.\n\n‡ Repeated "
+                + (NUMBER_OF_ERRORS - 1) + " more times: Failed to process the item.\n", outputStream.toString());
+    }
+
+    /**
+     * Verifies that errors are suppressed when they or the messages on their tokens are null.
+     */
+    @Test
+    public void logErrorShouldSuppressRepeatedErrorsThatAreNull() {
+        Laconic laconic = new Laconic();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        PrintStream printStream = new PrintStream(outputStream);
+        laconic.setPrintStream(printStream);
+        laconic.setPrefixWithTimestamp(false);
+        laconic.setErrorSuppression(Duration.ofHours(1L), 1);
+        laconic.logError((String) null, laconic.logMessage((String) null));
+        laconic.logError((String) null, laconic.logMessage((String) null));
+        laconic.flush();
+        assertEquals("‡ ⬐ null\n‡ null\n\n‡ Repeated 1 more time: null\n", outputStream.toString());
+    }
+
+    /**
+     * Verifies that errors formatting different values into their message aren't suppressed as repetitions.
+     */
+    @Test
+    public void logErrorShouldNotSuppressErrorsWithDifferentValues() {
+        Laconic laconic = new Laconic();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        PrintStream printStream = new PrintStream(outputStream);
+        laconic.setPrintStream(printStream);
+        laconic.setPrefixWithTimestamp(false);
+        laconic.setErrorSuppression(Duration.ofHours(1L), 1);
+        laconic.logError("Could not open %s.", "a.txt");
+        laconic.logError("Could not open %s.", "b.txt");
+        laconic.flush();
+        assertEquals("‡ Could not open a.txt.\n\n‡ Could not open b.txt.\n", outputStream.toString());
+    }
+
+    /**
+     * Verifies that errors with different chains of messages on their tokens aren't suppressed.
+     */
+    @Test
+    public void logErrorShouldNotSuppressErrorsWithDifferentChains() {
+        Laconic laconic = new Laconic();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        PrintStream printStream = new PrintStream(outputStream);
+        laconic.setPrintStream(printStream);
+        laconic.setPrefixWithTimestamp(false);
+        laconic.setErrorSuppression(Duration.ofHours(1L), 1);
+        laconic.logError("Baz", laconic.logMessage("Foo"));
+        laconic.logError("Baz", laconic.logMessage("Bar"));
+        laconic.flush();
+        assertEquals("‡ ⬐ Foo\n‡ Baz\n\n‡ ⬐ Bar\n‡ Baz\n", outputStream.toString());
+    }
+
+    /**
+     * Verifies that progress messages are coalesced in coalescing progress mode, and that the pending progress message
+     * is written before an error and when the logger is flushed.
+     */
+    @Test
+    public void logProgressShouldCoalesceProgressInCoalescingProgressMode() {
+        Laconic laconic = new Laconic();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        PrintStream printStream = new PrintStream(outputStream);
+        laconic.setPrintStream(printStream);
+        laconic.setPrefixWithTimestamp(false);
+        laconic.setCoalescingProgressMode(Duration.ofHours(1L));
+        laconic.logProgress("Step %d.", 0);
+        while (outputStream.size() == 0) {
+            Thread.onSpinWait();
+        }
+        for (int i = 1; i <= NUMBER_OF_ERRORS; i++) {
+            laconic.logProgress("Step %d.", i);
+        }
+        laconic.logError("Foo");
+        laconic.logProgress("Bar");
+        laconic.flush();
+        laconic.setImmediateProgressMode();
+        assertEquals("Step 0.\nStep " + NUMBER_OF_ERRORS + ".\n\n‡ Foo\n\nBar\n", outputStream.toString());
+    }
+
+    /**
+     * Verifies that the pending progress message is written when the coalescing progress mode is switched off.
+     */
+    @Test
+    public void setImmediateProgressModeShouldWriteThePendingProgress() {
+        Laconic laconic = new Laconic();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        PrintStream printStream = new PrintStream(outputStream);
+        laconic.setPrintStream(printStream);
+        laconic.setPrefixWithTimestamp(false);
+        laconic.setCoalescingProgressMode(Duration.ofHours(1L));
+        laconic.logProgress("Foo");
+        laconic.logProgress("Bar");
+        laconic.setImmediateProgressMode();
+        laconic.logProgress("Baz");
+        String output = outputStream.toString();
+        assertTrue(output.equals("Bar\nBaz\n") || output.equals("Foo\nBar\nBaz\n"));
+    }
+
+    /**
+     * Verifies that messages stored off-heap are logged as part of an error.
+     */
+    @Test
+    public void logErrorShouldLogMessagesStoredOffHeap() {
+        Laconic laconic = new Laconic();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        PrintStream printStream = new PrintStream(outputStream);
+        laconic.setPrintStream(printStream);
+        laconic.setPrefixWithTimestamp(false);
+        laconic.setOffHeapTokenStorage(true);
+        Token token = laconic.logMessage("Foo %d", 1);
+        laconic.logMessage("Bar %s", "‡", token);
+        laconic.logError("Baz", token);
+        assertEquals("‡   Foo 1\n‡ ⬐ Bar ‡\n‡ Baz\n", outputStream.toString());
+    }
+
+    /**
+     * Verifies that a message with a null message format is logged as the text null as part of an error, also after it
+     * has been packed.
+     */
+    @Test
+    public void logErrorShouldLogAMessageWithANullFormatAsNull() {
+        Laconic laconic = new Laconic();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        PrintStream printStream = new PrintStream(outputStream);
+        laconic.setPrintStream(printStream);
+        laconic.setPrefixWithTimestamp(false);
+        Token token = laconic.logMessage((String) null, 1);
+        for (int i = 0; i < NUMBER_OF_ERRORS; i++) {
+            laconic.logMessage("Foo", token);
+        }
+        laconic.logError((String) null, 2, token);
+        assertTrue(outputStream.toString().startsWith("‡   null\n‡   Foo\n"));
+        assertTrue(outputStream.toString().endsWith("‡ ⬐ Foo\n‡ null\n"));
+    }
+
+    /**
+     * Verifies that a plain message that is null stored off-heap is logged as part of an error.
+     */
+    @Test
+    public void logErrorShouldLogAPlainMessageThatIsNullStoredOffHeap() {
+        Laconic laconic = new Laconic();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        PrintStream printStream = new PrintStream(outputStream);
+        laconic.setPrintStream(printStream);
+        laconic.setPrefixWithTimestamp(false);
+        laconic.setOffHeapTokenStorage(true);
+        Token token = laconic.logMessage((String) null);
+        laconic.logError("Bar", token);
+        assertEquals("‡ ⬐ null\n‡ Bar\n", outputStream.toString());
+    }
+
+    /**
+     * Verifies that a message formatted with a null text stored off-heap is logged as part of an error.
+     */
+    @Test
+    public void logErrorShouldLogAMessageFormattedWithANullTextStoredOffHeap() {
+        Laconic laconic = new Laconic();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        PrintStream printStream = new PrintStream(outputStream);
+        laconic.setPrintStream(printStream);
+        laconic.setPrefixWithTimestamp(false);
+        laconic.setOffHeapTokenStorage(true);
+        Token token = laconic.logMessage("Foo %s", (String) null);
+        laconic.logError("Bar", token);
+        assertEquals("‡ ⬐ Foo null\n‡ Bar\n", outputStream.toString());
+    }
+
+    /**
+     * Verifies that a message formatted with a null text is logged as part of an error after it has been packed.
+     */
+    @Test
+    public void logErrorShouldLogAPackedMessageFormattedWithANullText() {
+        Laconic laconic = new Laconic();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        PrintStream printStream = new PrintStream(outputStream);
+        laconic.setPrintStream(printStream);
+        laconic.setPrefixWithTimestamp(false);
+        Token token = laconic.logMessage("Foo %s", (String) null);
+        for (int i = 0; i < NUMBER_OF_MESSAGES_TO_BE_PACKED; i++) {
+            laconic.logMessage("Bar", token);
+        }
+        laconic.logError("Baz", token);
+        assertTrue(outputStream.toString().startsWith("‡   Foo null\n‡   Bar\n"));
+    }
+
+    /**
+     * Verifies that an error is logged even if a message on its token has a message format that doesn't match its
+     * argument.
+     */
+    @Test
+    public void logErrorShouldLogAMessageWithAMismatchedArgument() {
+        Laconic laconic = new Laconic();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        PrintStream printStream = new PrintStream(outputStream);
+        laconic.setPrintStream(printStream);
+        laconic.setPrefixWithTimestamp(false);
+        Token token = laconic.logMessage("n=%d", "abc");
+        laconic.logError("Foo %d", "bar", token);
+        assertEquals("‡ ⬐ n=%d [abc]\n‡ Foo %d [bar]\n", outputStream.toString());
+    }
+
+    /**
+     * Verifies that logging a message after closing a token doesn't allocate a new token.
+     */
+    @Test
+    public void logMessageShouldReuseAClosedToken() {
+        Laconic laconic = new Laconic();
+        Token token = laconic.logMessage("Foo");
+        token.close();
+        try (Token reusedToken = laconic.logMessage("Bar")) {
+            assertSame(token, reusedToken);
+            assertEquals(1, reusedToken.getMessages().size());
+        }
+    }
+
+    /**
+     * Verifies that no metrics are returned when metrics are disabled.
+     */
+    @Test
+    public void getMetricsShouldReturnNullWhenMetricsAreDisabled() {
+        Laconic laconic = new Laconic();
+        laconic.logMessage("Foo");
+        assertNull(laconic.getMetrics());
+    }
+
+    /**
+     * Verifies that the metrics count the tokens, messages, errors and progress lines.
+     */
+    @Test
+    public void getMetricsShouldCountTokensMessagesErrorsAndProgressLines() {
+        Laconic laconic = new Laconic();
+        laconic.setPrintStream(new PrintStream(new ByteArrayOutputStream()));
+        laconic.setMetricsEnabled(true);
+        laconic.setErrorSuppression(Duration.ofHours(1L), 1);
+        Token token = laconic.logMessage("Foo");
+        for (int i = 0; i < NUMBER_OF_ERRORS; i++) {
+            laconic.logMessage("Bar %d", i, token);
+        }
+        laconic.logError("Baz", token);
+        laconic.logError("Baz", token);
+        laconic.logProgress("Qux");
+        MetricsSnapshot snapshot = laconic.getMetrics();
+        laconic.setMetricsEnabled(false);
+        assertEquals(NUMBER_OF_ERRORS + 1, snapshot.tokensCreated());
+        assertEquals(NUMBER_OF_ERRORS + 1, snapshot.messagesLogged());
+        assertEquals(2 * NUMBER_OF_ERRORS + 1, snapshot.messageAppends());
+        assertEquals(2L, snapshot.maximumFanOut());
+        assertTrue(snapshot.estimatedAppendedBytes() > 0L);
+        assertEquals(1L, snapshot.errorsLogged());
+        assertEquals(1L, snapshot.errorsSuppressed());
+        assertEquals(1L, snapshot.progressLinesLogged());
+        assertEquals(1L, Arrays.stream(snapshot.renderLatencyHistogram()).sum());
+    }
+
+    /**
+     * Verifies that the metrics are registered as an MBean while they are enabled, and unregistered when disabled.
+     *
+     * @throws JMException Thrown if the object name pattern is malformed.
+     */
+    @Test
+    public void setMetricsEnabledShouldRegisterAndUnregisterAnMBean() throws JMException {
+        ObjectName pattern = new ObjectName("net.filipvanlaenen.laconic:type=Metrics,*");
+        int registeredBefore = ManagementFactory.getPlatformMBeanServer().queryNames(pattern, null).size();
+        Laconic laconic = new Laconic();
+        laconic.setMetricsEnabled(true);
+        assertEquals(registeredBefore + 1, ManagementFactory.getPlatformMBeanServer().queryNames(pattern, null).size());
+        laconic.setMetricsEnabled(false);
+        assertEquals(registeredBefore, ManagementFactory.getPlatformMBeanServer().queryNames(pattern, null).size());
+    }
+
+    /**
+     * Verifies that messages spilled to a spill file are logged as part of an error.
+     *
+     * @param directory A temporary directory for the spill file.
+     */
+    @Test
+    public void logErrorShouldLogMessagesSpilledToASpillFile(@TempDir final Path directory) {
+        Laconic laconic = new Laconic();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        PrintStream printStream = new PrintStream(outputStream);
+        laconic.setPrintStream(printStream);
+        laconic.setPrefixWithTimestamp(false);
+        laconic.setTokenSpilling(directory, 0L);
+        Token token = laconic.logMessage("Message 0");
+        StringBuilder expected = new StringBuilder("‡   Message 0\n");
+        for (int i = 1; i < NUMBER_OF_ERRORS * NUMBER_OF_THREADS; i++) {
+            laconic.logMessage("Message %d", i, token);
+            expected.append(i == NUMBER_OF_ERRORS * NUMBER_OF_THREADS - 1 ? "‡ ⬐ " : "‡   ").append("Message ")
+                    .append(i).append("\n");
+        }
+        laconic.logError("Foo", token);
+        laconic.setTokenSpilling(null, 0L);
+        assertEquals(expected.append("‡ Foo\n").toString(), outputStream.toString());
+    }
+
+    /**
+     * Verifies that the messages logged to tokens in flight recorder mode can be read back from the recording.
+     *
+     * @param directory A temporary directory for the flight recording.
+     * @throws IOException Thrown if the flight recording can't be read.
+     */
+    @Test
+    public void logMessageShouldRecordTheMessagesInFlightRecorderMode(@TempDir final Path directory)
+            throws IOException {
+        Path file = directory.resolve("laconic.rec");
+        Laconic laconic = new Laconic();
+        laconic.setFlightRecorder(file, FlightRecorder.MINIMAL_CAPACITY);
+        Token token = laconic.logMessage("Foo");
+        laconic.logMessage(token, "Bar %d", 1);
+        laconic.setFlightRecorder(null, 0);
+        FlightRecording recording = FlightRecording.read(file);
+        long[] tokenIds = recording.getTokenIds();
+        assertEquals(2, tokenIds.length);
+        assertTrue(recording.render(tokenIds[0]).endsWith(" ‡ ⬐ Foo\n"));
+        assertTrue(recording.render(tokenIds[1]).matches("(?s).* ‡   Foo\n.* ‡ ⬐ Bar 1\n"));
+    }
 }
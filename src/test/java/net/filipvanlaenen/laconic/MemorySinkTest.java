@@ -0,0 +1,49 @@
+package net.filipvanlaenen.laconic;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests on the {@link net.filipvanlaen.laconic.MemorySink} class.
+ */
+public class MemorySinkTest {
+    /**
+     * The maximum length of the text for the tests.
+     */
+    private static final int MAXIMUM_LENGTH = 10;
+
+    /**
+     * Verifies that the blocks written to the sink are kept in memory.
+     */
+    @Test
+    public void getTextShouldReturnTheBlocksWritten() {
+        MemorySink sink = new MemorySink(MAXIMUM_LENGTH);
+        sink.write("Foo\n");
+        sink.write("Bar\n");
+        assertEquals("Foo\nBar\n", sink.getText());
+    }
+
+    /**
+     * Verifies that the oldest lines are discarded when the text grows beyond the maximum length.
+     */
+    @Test
+    public void writeShouldDiscardTheOldestLines() {
+        MemorySink sink = new MemorySink(MAXIMUM_LENGTH);
+        sink.write("Foo\n");
+        sink.write("Bar\n");
+        sink.write("Baz\n");
+        assertEquals("Bar\nBaz\n", sink.getText());
+    }
+
+    /**
+     * Verifies that a line longer than the maximum length isn't kept.
+     */
+    @Test
+    public void writeShouldDiscardALineLongerThanTheMaximumLength() {
+        MemorySink sink = new MemorySink(MAXIMUM_LENGTH);
+        sink.write("Foo\n");
+        sink.write("Lorem ipsum dolor sit amet\n");
+        assertEquals("", sink.getText());
+    }
+}
@@ -0,0 +1,159 @@
+package net.filipvanlaenen.laconic;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests on the {@link net.filipvanlaen.laconic.MessageArena} class.
+ */
+public class MessageArenaTest {
+    /**
+     * A timestamp for the tests.
+     */
+    private static final long TIMESTAMP = 1_729_152_591_432L;
+    /**
+     * A double number for the tests.
+     */
+    private static final double DOUBLE_NUMBER = 1.5D;
+
+    /**
+     * Verifies that a plain message is stored and decoded correctly.
+     */
+    @Test
+    public void storeShouldStoreAPlainMessage() {
+        Message message = MessageArena.store(new Message.Plain("Foo ‡ 😀", TIMESTAMP));
+        assertTrue(message instanceof Message.Stored);
+        assertEquals("Foo ‡ 😀", message.message());
+        assertEquals(TIMESTAMP, message.timestamp());
+    }
+
+    /**
+     * Verifies that a message formatted with a double is stored and decoded correctly.
+     */
+    @Test
+    public void storeShouldStoreAMessageFormattedWithADouble() {
+        Message message = MessageArena.store(new Message.FormattedDouble("Foo %.1f", DOUBLE_NUMBER, TIMESTAMP));
+        assertEquals("Foo 1.5", message.message());
+        assertEquals("Foo %.1f", message.template());
+    }
+
+    /**
+     * Verifies that a message formatted with an integer is stored and decoded correctly.
+     */
+    @Test
+    public void storeShouldStoreAMessageFormattedWithAnInteger() {
+        assertEquals("Foo 1", MessageArena.store(new Message.FormattedInteger("Foo %d", 1, TIMESTAMP)).message());
+    }
+
+    /**
+     * Verifies that a message formatted with a long is stored and decoded correctly.
+     */
+    @Test
+    public void storeShouldStoreAMessageFormattedWithALong() {
+        assertEquals("Foo 1", MessageArena.store(new Message.FormattedLong("Foo %d", 1L, TIMESTAMP)).message());
+    }
+
+    /**
+     * Verifies that a message formatted with a text is stored and decoded correctly.
+     */
+    @Test
+    public void storeShouldStoreAMessageFormattedWithAText() {
+        Message message = MessageArena.store(new Message.FormattedText("Foo %s", "bär", TIMESTAMP));
+        assertEquals("Foo bär", message.message());
+        assertEquals(TIMESTAMP, message.timestamp());
+    }
+
+    /**
+     * Verifies that a message formatted with a null text is stored and decoded correctly.
+     */
+    @Test
+    public void storeShouldStoreAMessageFormattedWithANullText() {
+        Message original = new Message.FormattedText("Foo %s", null, TIMESTAMP);
+        Message message = MessageArena.store(original);
+        assertTrue(message instanceof Message.Stored);
+        assertEquals("Foo null", message.message());
+        assertEquals(original,
+                MessageArena.decode(((Message.Stored) message).chunk(), ((Message.Stored) message).offset()));
+    }
+
+    /**
+     * Verifies that the encoded size of a message formatted with a null text matches the bytes written for it.
+     */
+    @Test
+    public void encodedSizeShouldMatchTheEntryOfAMessageFormattedWithANullText() {
+        Message message = new Message.FormattedText("Foo %s", null, TIMESTAMP);
+        ByteBuffer writer = ByteBuffer.allocate(MessageArena.encodedSize(message));
+        MessageArena.encode(writer, message);
+        assertEquals(0, writer.remaining());
+    }
+
+    /**
+     * Verifies that a plain message that is null is stored and decoded correctly, and that its encoded size matches the
+     * bytes written for it.
+     */
+    @Test
+    public void storeShouldStoreAPlainMessageThatIsNull() {
+        Message original = new Message.Plain(null, TIMESTAMP);
+        Message message = MessageArena.store(original);
+        assertTrue(message instanceof Message.Stored);
+        assertEquals(original,
+                MessageArena.decode(((Message.Stored) message).chunk(), ((Message.Stored) message).offset()));
+        ByteBuffer writer = ByteBuffer.allocate(MessageArena.encodedSize(original));
+        MessageArena.encode(writer, original);
+        assertEquals(0, writer.remaining());
+    }
+
+    /**
+     * Verifies that the hash code of the template of a stored message is calculated without decoding the message, and
+     * equals the hash code of the template of the original message.
+     */
+    @Test
+    public void templateHashCodeShouldEqualTheHashCodeOfTheTemplate() {
+        Message[] originals = new Message[] {new Message.Plain("Foo ‡", TIMESTAMP), new Message.Plain(null, TIMESTAMP),
+                new Message.FormattedDouble("Foo %f", 1D, TIMESTAMP),
+                new Message.FormattedInteger("Foo %d", 1, TIMESTAMP),
+                new Message.FormattedLong("Foo %d", 1L, TIMESTAMP),
+                new Message.FormattedText("Foo %s", "😀", TIMESTAMP),
+                new Message.FormattedText("Bar %s", null, TIMESTAMP)};
+        for (Message original : originals) {
+            assertEquals(original.templateHashCode(), MessageArena.store(original).templateHashCode());
+        }
+    }
+
+    /**
+     * Verifies that a stored message keeps the sequence number of the original message.
+     */
+    @Test
+    public void storeShouldKeepTheSequenceNumber() {
+        Message original = new Message.Plain("Foo", TIMESTAMP);
+        assertEquals(original.sequence(), MessageArena.store(original).sequence());
+    }
+
+    /**
+     * Verifies that a message too large for a chunk is kept on the heap.
+     */
+    @Test
+    public void storeShouldKeepAMessageTooLargeForAChunk() {
+        Message message = new Message.Plain("x".repeat(MessageArena.CHUNK_SIZE));
+        assertSame(message, MessageArena.store(message));
+    }
+
+    /**
+     * Verifies that a new chunk is started when the current chunk is full.
+     */
+    @Test
+    public void storeShouldStartANewChunkWhenTheCurrentChunkIsFull() {
+        String text = "‡".repeat(MessageArena.CHUNK_SIZE / (2 * Utf8.MAXIMUM_BYTES_PER_CHAR));
+        Message.Stored first = (Message.Stored) MessageArena.store(new Message.Plain(text));
+        Message.Stored second = (Message.Stored) MessageArena.store(new Message.Plain(text));
+        assertNotSame(first.chunk(), second.chunk());
+        assertEquals(text, first.message());
+        assertEquals(text, second.message());
+    }
+}
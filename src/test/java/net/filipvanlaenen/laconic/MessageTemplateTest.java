@@ -0,0 +1,151 @@
+package net.filipvanlaenen.laconic;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests on the {@link net.filipvanlaen.laconic.MessageTemplate} class.
+ */
+public class MessageTemplateTest {
+    /**
+     * The number of random numbers to compare with String.format.
+     */
+    private static final int NUMBER_OF_RANDOM_NUMBERS = 10_000;
+    /**
+     * The seed for the random numbers.
+     */
+    private static final long SEED = 42L;
+    /**
+     * The range of the exponents of the random doubles.
+     */
+    private static final int EXPONENT_RANGE = 20;
+    /**
+     * The number ten.
+     */
+    private static final double TEN = 10D;
+    /**
+     * The message formats with a double to compare with String.format.
+     */
+    private static final String[] DOUBLE_FORMATS =
+            new String[] {"%f", "%.0f", "%.1f", "%.2f", "%.3f", "Foo %.4f bar", "%s", "%% %.1f%n", "%5.1f", "%e"};
+    /**
+     * The message formats with a long to compare with String.format.
+     */
+    private static final String[] LONG_FORMATS = new String[] {"%d", "Foo %d bar", "%s", "%%%d%%", "%x", "%,d", "Foo"};
+    /**
+     * The special doubles to compare with String.format.
+     */
+    private static final double[] SPECIAL_DOUBLES = new double[] {0D, -0D, 0.5D, 1.5D, 2.5D, -0.05D, 0.15D, 1E-7D,
+            -1E-7D, 1E300D, Double.MIN_VALUE, Double.MAX_VALUE, Double.NaN, Double.NEGATIVE_INFINITY};
+
+    /**
+     * Renders a message formatted with a double with a template.
+     *
+     * @param format The message format.
+     * @param number The double number.
+     * @return The rendered message.
+     */
+    private static String render(final String format, final double number) {
+        StringBuilder builder = new StringBuilder();
+        MessageTemplate.of(format).appendTo(builder, number);
+        return builder.toString();
+    }
+
+    /**
+     * Renders a message formatted with a long with a template.
+     *
+     * @param format The message format.
+     * @param number The long number.
+     * @return The rendered message.
+     */
+    private static String render(final String format, final long number) {
+        StringBuilder builder = new StringBuilder();
+        MessageTemplate.of(format).appendTo(builder, number);
+        return builder.toString();
+    }
+
+    /**
+     * Verifies that messages formatted with doubles are rendered like String.format renders them.
+     */
+    @Test
+    public void appendToShouldRenderDoublesLikeStringFormat() {
+        Random random = new Random(SEED);
+        for (String format : DOUBLE_FORMATS) {
+            for (double number : SPECIAL_DOUBLES) {
+                assertEquals(String.format(Locale.US, format, number), render(format, number));
+            }
+            for (int i = 0; i < NUMBER_OF_RANDOM_NUMBERS; i++) {
+                int exponent = random.nextInt(EXPONENT_RANGE) - EXPONENT_RANGE / 2;
+                double number = random.nextGaussian() * Math.pow(TEN, exponent);
+                assertEquals(String.format(Locale.US, format, number), render(format, number));
+            }
+        }
+    }
+
+    /**
+     * Verifies that messages formatted with longs are rendered like String.format renders them.
+     */
+    @Test
+    public void appendToShouldRenderLongsLikeStringFormat() {
+        Random random = new Random(SEED);
+        for (String format : LONG_FORMATS) {
+            assertEquals(String.format(Locale.US, format, Long.MIN_VALUE), render(format, Long.MIN_VALUE));
+            for (int i = 0; i < NUMBER_OF_RANDOM_NUMBERS; i++) {
+                long number = random.nextLong();
+                assertEquals(String.format(Locale.US, format, number), render(format, number));
+            }
+        }
+    }
+
+    /**
+     * Verifies that messages formatted with integers and texts are rendered like String.format renders them.
+     */
+    @Test
+    public void appendToShouldRenderIntegersAndTextsLikeStringFormat() {
+        StringBuilder builder = new StringBuilder();
+        MessageTemplate.of("Foo %x").appendTo(builder, -1);
+        MessageTemplate.of(" %s").appendTo(builder, "bar");
+        MessageTemplate.of(" %.2s").appendTo(builder, "baz");
+        MessageTemplate.of(" %s").appendTo(builder, (String) null);
+        assertEquals(String.format(Locale.US, "Foo %x %s %.2s %s", -1, "bar", "baz", null), builder.toString());
+    }
+
+    /**
+     * Verifies that a message format that doesn't match its argument is rendered as the message format followed by the
+     * argument.
+     */
+    @Test
+    public void appendToShouldFallBackToTheMessageFormatAndTheArgumentForAMismatchedArgument() {
+        StringBuilder builder = new StringBuilder();
+        MessageTemplate.of("n=%d").appendTo(builder, "abc");
+        assertEquals("n=%d [abc]", builder.toString());
+        assertEquals("%f [1]", render("%f", 1L));
+        assertEquals("%d %d [1]", render("%d %d", 1L));
+        assertEquals("%d [0.0]", render("%d", 0D));
+    }
+
+    /**
+     * Verifies that a null message format is rendered as the text null, whatever the argument.
+     */
+    @Test
+    public void appendToShouldRenderANullMessageFormatAsNull() {
+        assertEquals("null", render(null, 1L));
+        assertEquals("null", render(null, 0D));
+        StringBuilder builder = new StringBuilder();
+        MessageTemplate.of(null).appendTo(builder, "foo");
+        assertEquals("null", builder.toString());
+    }
+
+    /**
+     * Verifies that the template for a message format is cached.
+     */
+    @Test
+    public void ofShouldReturnTheCachedTemplate() {
+        assertSame(MessageTemplate.of("Foo %d"), MessageTemplate.of(new String("Foo %d")));
+    }
+}
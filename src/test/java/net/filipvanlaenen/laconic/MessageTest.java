@@ -0,0 +1,60 @@
+package net.filipvanlaenen.laconic;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests on the {@link net.filipvanlaen.laconic.Message} interface.
+ */
+public class MessageTest {
+    /**
+     * Verifies that a plain message is returned as is.
+     */
+    @Test
+    public void messageShouldReturnThePlainMessage() {
+        assertEquals("Foo", new Message.Plain("Foo").message());
+    }
+
+    /**
+     * Verifies that a message formatted with a double is rendered correctly.
+     */
+    @Test
+    public void messageShouldRenderAMessageFormattedWithADouble() {
+        assertEquals("Foo 1.000000", new Message.FormattedDouble("Foo %f", 1D).message());
+    }
+
+    /**
+     * Verifies that a message formatted with an integer is rendered correctly.
+     */
+    @Test
+    public void messageShouldRenderAMessageFormattedWithAnInteger() {
+        assertEquals("Foo 1", new Message.FormattedInteger("Foo %d", 1).message());
+    }
+
+    /**
+     * Verifies that a message formatted with a long is rendered correctly.
+     */
+    @Test
+    public void messageShouldRenderAMessageFormattedWithALong() {
+        assertEquals("Foo 1", new Message.FormattedLong("Foo %d", 1L).message());
+    }
+
+    /**
+     * Verifies that a message formatted with a text is rendered correctly.
+     */
+    @Test
+    public void messageShouldRenderAMessageFormattedWithAText() {
+        assertEquals("Foo bar", new Message.FormattedText("Foo %s", "bar").message());
+    }
+
+    /**
+     * Verifies that a formatted message isn't formatted when it is created, but only when it is rendered.
+     */
+    @Test
+    public void formattedMessageShouldOnlyBeFormattedWhenRendered() {
+        Message message = new Message.FormattedText("Foo %d", "bar");
+        assertEquals("Foo %d", ((Message.FormattedText) message).format());
+        assertEquals("Foo %d [bar]", message.message());
+    }
+}
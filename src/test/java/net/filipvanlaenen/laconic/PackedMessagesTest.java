@@ -0,0 +1,132 @@
+package net.filipvanlaenen.laconic;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests on the {@link net.filipvanlaen.laconic.PackedMessages} class.
+ */
+public class PackedMessagesTest {
+    /**
+     * A timestamp for the tests.
+     */
+    private static final long TIMESTAMP = 1_729_152_591_432L;
+    /**
+     * A double number for the tests.
+     */
+    private static final double DOUBLE_NUMBER = -1.5D;
+    /**
+     * The number of messages in a batch large enough to be spilled.
+     */
+    private static final int SPILL_BATCH_SIZE = 100;
+
+    /**
+     * Packs messages and decodes them again.
+     *
+     * @param messages The messages to be packed.
+     * @return The decoded messages.
+     */
+    private static Message[] packAndDecode(final Message... messages) {
+        PackedMessages packed = PackedMessages.pack(null, messages, 0, messages.length, null);
+        Message[] decoded = new Message[packed.count()];
+        packed.decodeInto(decoded);
+        return decoded;
+    }
+
+    /**
+     * Verifies that all kinds of messages are packed and decoded correctly.
+     */
+    @Test
+    public void packShouldPackAllKindsOfMessages() {
+        Message[] messages = new Message[] {new Message.Plain("Foo ‡ 😀", TIMESTAMP),
+                new Message.FormattedDouble("Foo %.1f", DOUBLE_NUMBER, TIMESTAMP + 1),
+                new Message.FormattedInteger("Foo %d", Integer.MIN_VALUE, TIMESTAMP - 1),
+                new Message.FormattedLong("Foo %d", Long.MAX_VALUE, TIMESTAMP),
+                new Message.FormattedText("Foo %s", "bär", 0L),
+                Message.Elided.of(2, new Message.Plain("Bar", TIMESTAMP))};
+        assertArrayEquals(messages, packAndDecode(messages));
+    }
+
+    /**
+     * Verifies that a message formatted with a null text is packed and decoded correctly.
+     */
+    @Test
+    public void packShouldPackAMessageFormattedWithANullText() {
+        Message[] messages = new Message[] {new Message.FormattedText("Foo %s", null, TIMESTAMP),
+                new Message.Plain("Bar", TIMESTAMP)};
+        assertArrayEquals(messages, packAndDecode(messages));
+    }
+
+    /**
+     * Verifies that a plain message that is null is packed and decoded correctly.
+     */
+    @Test
+    public void packShouldPackAPlainMessageThatIsNull() {
+        Message[] messages = new Message[] {new Message.Plain(null, TIMESTAMP), new Message.Plain("Bar", TIMESTAMP)};
+        assertArrayEquals(messages, packAndDecode(messages));
+    }
+
+    /**
+     * Verifies that packing no messages returns the base sequence.
+     */
+    @Test
+    public void packShouldReturnTheBaseWhenNoMessagesArePacked() {
+        assertNull(PackedMessages.pack(null, new Message[0], 0, 0, null));
+    }
+
+    /**
+     * Verifies that two sequences appended to the same base sequence don't overwrite each other's messages.
+     */
+    @Test
+    public void packShouldNotOverwriteMessagesOfASequenceWithTheSameBase() {
+        Message[] base = new Message[] {new Message.Plain("Foo", TIMESTAMP)};
+        Message[] appended1 = new Message[] {new Message.Plain("Bar", TIMESTAMP)};
+        Message[] appended2 = new Message[] {new Message.Plain("Baz", TIMESTAMP)};
+        PackedMessages packedBase = PackedMessages.pack(null, base, 0, 1, null);
+        PackedMessages packed1 = PackedMessages.pack(packedBase, appended1, 0, 1, null);
+        PackedMessages packed2 = PackedMessages.pack(packedBase, appended2, 0, 1, null);
+        Message[] decoded1 = new Message[2];
+        packed1.decodeInto(decoded1);
+        Message[] decoded2 = new Message[2];
+        packed2.decodeInto(decoded2);
+        assertEquals("Foo", decoded1[0].message());
+        assertEquals("Bar", decoded1[1].message());
+        assertEquals("Foo", decoded2[0].message());
+        assertEquals("Baz", decoded2[1].message());
+    }
+
+    /**
+     * Verifies that the base sequences are spilled when the spill file is over its threshold, and that the spilled
+     * messages are decoded together with the messages on the heap.
+     *
+     * @param directory A temporary directory for the spill file.
+     * @throws IOException Thrown if the spill file can't be created.
+     */
+    @Test
+    public void packShouldSpillTheBaseWhenTheSpillFileIsOverItsThreshold(@TempDir final Path directory)
+            throws IOException {
+        SpillFile spillFile = new SpillFile(directory, 0L);
+        Message[] messages = new Message[2 * SPILL_BATCH_SIZE + 1];
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = new Message.FormattedInteger("Message %d", i, TIMESTAMP + i);
+        }
+        PackedMessages packed = PackedMessages.pack(null, messages, 0, SPILL_BATCH_SIZE, spillFile);
+        packed = PackedMessages.pack(packed, messages, SPILL_BATCH_SIZE, 2 * SPILL_BATCH_SIZE, spillFile);
+        long spilledBytes = spillFile.getSpilledBytes();
+        packed = PackedMessages.pack(packed, messages, 2 * SPILL_BATCH_SIZE, messages.length, spillFile);
+        spillFile.close();
+        Message[] decoded = new Message[packed.count()];
+        packed.decodeInto(decoded);
+        assertArrayEquals(messages, decoded);
+        assertTrue(spilledBytes > 0L);
+        assertTrue(spillFile.getSpilledBytes() > spilledBytes);
+    }
+}
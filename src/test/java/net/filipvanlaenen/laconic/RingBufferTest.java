@@ -0,0 +1,72 @@
+package net.filipvanlaenen.laconic;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests on the {@link net.filipvanlaen.laconic.RingBuffer} class.
+ */
+public class RingBufferTest {
+    /**
+     * The capacity of the ring buffers in the tests.
+     */
+    private static final int CAPACITY = 4;
+
+    /**
+     * Verifies that the capacity is rounded up to a power of two.
+     */
+    @Test
+    public void capacityShouldBeRoundedUpToAPowerOfTwo() {
+        assertEquals(CAPACITY, new RingBuffer<String>(CAPACITY - 1).capacity());
+    }
+
+    /**
+     * Verifies that an empty ring buffer returns null when polled.
+     */
+    @Test
+    public void pollShouldReturnNullOnAnEmptyRingBuffer() {
+        assertNull(new RingBuffer<String>(CAPACITY).poll());
+    }
+
+    /**
+     * Verifies that elements are polled in the order in which they were offered.
+     */
+    @Test
+    public void pollShouldReturnTheElementsInOrder() {
+        RingBuffer<String> buffer = new RingBuffer<String>(CAPACITY);
+        buffer.offer("Foo");
+        buffer.offer("Bar");
+        assertEquals("Foo", buffer.poll());
+        assertEquals("Bar", buffer.poll());
+        assertNull(buffer.poll());
+    }
+
+    /**
+     * Verifies that an element can't be offered to a full ring buffer.
+     */
+    @Test
+    public void offerShouldReturnFalseWhenTheRingBufferIsFull() {
+        RingBuffer<String> buffer = new RingBuffer<String>(CAPACITY);
+        for (int i = 0; i < CAPACITY; i++) {
+            assertTrue(buffer.offer("Foo"));
+        }
+        assertFalse(buffer.offer("Bar"));
+    }
+
+    /**
+     * Verifies that the slots of a ring buffer are reused after the elements have been polled.
+     */
+    @Test
+    public void offerShouldReuseTheSlotsAfterPolling() {
+        RingBuffer<String> buffer = new RingBuffer<String>(CAPACITY);
+        for (int i = 0; i < CAPACITY * 2 + 1; i++) {
+            assertTrue(buffer.offer("Foo" + i));
+            assertEquals("Foo" + i, buffer.poll());
+        }
+        assertEquals(CAPACITY * 2 + 1, buffer.getEnqueuedCount());
+    }
+}
@@ -0,0 +1,68 @@
+package net.filipvanlaenen.laconic;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests on the {@link net.filipvanlaen.laconic.Sampler} class.
+ */
+public class SamplerTest {
+    /**
+     * The maximum number of units of work per second for the adaptive sampler tests.
+     */
+    private static final int MAXIMUM_PER_SECOND = 3;
+
+    /**
+     * Verifies that a sampler sampling one in one unit of work samples all units of work.
+     */
+    @Test
+    public void sampleShouldSampleAllUnitsOfWorkForOneInOne() {
+        Sampler sampler = Sampler.oneIn(1);
+        for (int i = 0; i < MAXIMUM_PER_SECOND; i++) {
+            assertTrue(sampler.sample());
+        }
+    }
+
+    /**
+     * Verifies that a sampler sampling one in a very large number of units of work doesn't sample a unit of work.
+     */
+    @Test
+    public void sampleShouldNotSampleForOneInALargeNumber() {
+        assertFalse(Sampler.oneIn(Integer.MAX_VALUE).sample());
+    }
+
+    /**
+     * Verifies that an adaptive sampler samples units of work up to the maximum per second.
+     */
+    @Test
+    public void sampleShouldSampleUpToTheMaximumPerSecond() {
+        Sampler sampler = Sampler.adaptive(MAXIMUM_PER_SECOND);
+        int sampled = 0;
+        for (int i = 0; i < 2 * MAXIMUM_PER_SECOND; i++) {
+            if (sampler.sample()) {
+                sampled++;
+            }
+        }
+        assertEquals(MAXIMUM_PER_SECOND, sampled);
+    }
+
+    /**
+     * Verifies that a sampler can't be created for one in less than one unit of work.
+     */
+    @Test
+    public void oneInShouldRejectZero() {
+        assertThrows(IllegalArgumentException.class, () -> Sampler.oneIn(0));
+    }
+
+    /**
+     * Verifies that an adaptive sampler can't be created with a maximum of zero units of work per second.
+     */
+    @Test
+    public void adaptiveShouldRejectZero() {
+        assertThrows(IllegalArgumentException.class, () -> Sampler.adaptive(0));
+    }
+}
@@ -0,0 +1,147 @@
+package net.filipvanlaenen.laconic;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests on the {@link net.filipvanlaen.laconic.SpillFile} class.
+ */
+public class SpillFileTest {
+    /**
+     * The maximum number of heap bytes for the tests.
+     */
+    private static final long MAXIMUM_HEAP_BYTES = 100L;
+    /**
+     * The maximum number of garbage collections to wait for a region to be released.
+     */
+    private static final int MAXIMUM_GARBAGE_COLLECTIONS = 50;
+    /**
+     * The number of milliseconds to wait after a garbage collection.
+     */
+    private static final long GARBAGE_COLLECTION_PAUSE = 20L;
+
+    /**
+     * Verifies that spilled bytes can be read back from the mapping, also after the file has been closed.
+     *
+     * @param directory A temporary directory for the spill file.
+     * @throws IOException Thrown if the spill file can't be created.
+     */
+    @Test
+    public void spillShouldReturnAViewOnTheSpilledBytes(@TempDir final Path directory) throws IOException {
+        SpillFile spillFile = new SpillFile(directory, MAXIMUM_HEAP_BYTES);
+        byte[] foo = "Foo".getBytes(StandardCharsets.UTF_8);
+        byte[] bar = "Bar".getBytes(StandardCharsets.UTF_8);
+        ByteBuffer spilledFoo = spillFile.spill(foo, foo.length);
+        ByteBuffer spilledBar = spillFile.spill(bar, bar.length);
+        spillFile.close();
+        byte[] readFoo = new byte[spilledFoo.remaining()];
+        spilledFoo.get(readFoo);
+        byte[] readBar = new byte[spilledBar.remaining()];
+        spilledBar.get(readBar);
+        assertArrayEquals(foo, readFoo);
+        assertArrayEquals(bar, readBar);
+        assertEquals(foo.length + bar.length, spillFile.getSpilledBytes());
+    }
+
+    /**
+     * Verifies that bytes can't be spilled to a new region once the file has been closed.
+     *
+     * @param directory A temporary directory for the spill file.
+     * @throws IOException Thrown if the spill file can't be created.
+     */
+    @Test
+    public void spillShouldReturnNullWhenTheFileHasBeenClosed(@TempDir final Path directory) throws IOException {
+        SpillFile spillFile = new SpillFile(directory, MAXIMUM_HEAP_BYTES);
+        spillFile.close();
+        assertNull(spillFile.spill(new byte[1], 1));
+    }
+
+    /**
+     * Verifies that the file is deleted when it is closed.
+     *
+     * @param directory A temporary directory for the spill file.
+     * @throws IOException Thrown if the spill file can't be created or the directory can't be listed.
+     */
+    @Test
+    public void closeShouldDeleteTheFile(@TempDir final Path directory) throws IOException {
+        SpillFile spillFile = new SpillFile(directory, MAXIMUM_HEAP_BYTES);
+        spillFile.close();
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(0L, files.count());
+        }
+    }
+
+    /**
+     * Verifies that tracked byte arrays count towards the threshold.
+     *
+     * @param directory A temporary directory for the spill file.
+     * @throws IOException Thrown if the spill file can't be created.
+     */
+    @Test
+    public void trackShouldCountTheBytesTowardsTheThreshold(@TempDir final Path directory) throws IOException {
+        SpillFile spillFile = new SpillFile(directory, MAXIMUM_HEAP_BYTES);
+        byte[] bytes = new byte[(int) MAXIMUM_HEAP_BYTES];
+        spillFile.track(bytes);
+        assertFalse(spillFile.isOverThreshold());
+        spillFile.track(new byte[1]);
+        assertTrue(spillFile.isOverThreshold());
+        assertTrue(spillFile.getHeapBytes() > MAXIMUM_HEAP_BYTES);
+        spillFile.close();
+    }
+
+    /**
+     * Verifies that the file doesn't grow beyond its maximum size.
+     *
+     * @param directory A temporary directory for the spill file.
+     * @throws IOException Thrown if the spill file can't be created.
+     */
+    @Test
+    public void spillShouldReturnNullWhenTheFileHasReachedItsMaximumSize(@TempDir final Path directory)
+            throws IOException {
+        SpillFile spillFile = new SpillFile(directory, MAXIMUM_HEAP_BYTES, SpillFile.MAPPING_SIZE);
+        ByteBuffer fullRegion = spillFile.spill(new byte[SpillFile.MAPPING_SIZE], SpillFile.MAPPING_SIZE);
+        assertNull(spillFile.spill(new byte[1], 1));
+        assertEquals(SpillFile.MAPPING_SIZE, fullRegion.remaining());
+        assertEquals(SpillFile.MAPPING_SIZE, spillFile.getFileSize());
+        spillFile.close();
+    }
+
+    /**
+     * Verifies that a region is reused once the garbage collector has reclaimed all views on it.
+     *
+     * @param directory A temporary directory for the spill file.
+     * @throws IOException          Thrown if the spill file can't be created.
+     * @throws InterruptedException Thrown if the test is interrupted while waiting for the garbage collector.
+     */
+    @Test
+    public void spillShouldReuseARegionOnceItsViewsHaveBeenReclaimed(@TempDir final Path directory)
+            throws IOException, InterruptedException {
+        SpillFile spillFile = new SpillFile(directory, MAXIMUM_HEAP_BYTES, SpillFile.MAPPING_SIZE);
+        spillFile.spill(new byte[SpillFile.MAPPING_SIZE], SpillFile.MAPPING_SIZE);
+        byte[] foo = "Foo".getBytes(StandardCharsets.UTF_8);
+        ByteBuffer spilledFoo = spillFile.spill(foo, foo.length);
+        for (int i = 0; spilledFoo == null && i < MAXIMUM_GARBAGE_COLLECTIONS; i++) {
+            System.gc();
+            Thread.sleep(GARBAGE_COLLECTION_PAUSE);
+            spilledFoo = spillFile.spill(foo, foo.length);
+        }
+        byte[] readFoo = new byte[spilledFoo.remaining()];
+        spilledFoo.get(readFoo);
+        assertArrayEquals(foo, readFoo);
+        assertEquals(SpillFile.MAPPING_SIZE, spillFile.getFileSize());
+        spillFile.close();
+    }
+}
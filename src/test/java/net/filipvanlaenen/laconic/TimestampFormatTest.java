@@ -0,0 +1,62 @@
+package net.filipvanlaenen.laconic;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests on the {@link net.filipvanlaen.laconic.TimestampFormat} class.
+ */
+public class TimestampFormatTest {
+    /**
+     * A time zone with daylight saving time.
+     */
+    private static final ZoneId BRUSSELS = ZoneId.of("Europe/Brussels");
+    /**
+     * The reference format.
+     */
+    private static final DateTimeFormatter REFERENCE_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSXXX").withZone(BRUSSELS);
+    /**
+     * A timestamp in milliseconds since the epoch, one millisecond before daylight saving time ended in 2024.
+     */
+    private static final long TIMESTAMP = Instant.parse("2024-10-27T00:59:59.999Z").toEpochMilli();
+    /**
+     * A number of milliseconds smaller than ten.
+     */
+    private static final long FIVE = 5L;
+    /**
+     * A number of milliseconds smaller than a hundred.
+     */
+    private static final long FIFTY = 50L;
+
+    /**
+     * Formats a timestamp into a string.
+     *
+     * @param format    The timestamp format.
+     * @param timestamp The timestamp in milliseconds since the epoch.
+     * @return The formatted timestamp.
+     */
+    private static String format(final TimestampFormat format, final long timestamp) {
+        StringBuilder block = new StringBuilder();
+        format.appendTo(block, timestamp);
+        return block.toString();
+    }
+
+    /**
+     * Verifies that timestamps are formatted like the reference format, also after a change of the time zone offset.
+     */
+    @Test
+    public void appendToShouldFormatLikeTheReferenceFormat() {
+        TimestampFormat format = new TimestampFormat(BRUSSELS);
+        long[] timestamps = new long[] {TIMESTAMP - FIFTY, TIMESTAMP, TIMESTAMP + 1, TIMESTAMP + FIVE + 1,
+                TIMESTAMP + FIFTY + 1, 0L, -1L};
+        for (long timestamp : timestamps) {
+            assertEquals(REFERENCE_FORMAT.format(Instant.ofEpochMilli(timestamp)), format(format, timestamp));
+        }
+    }
+}
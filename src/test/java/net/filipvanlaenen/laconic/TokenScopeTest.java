@@ -0,0 +1,170 @@
+package net.filipvanlaenen.laconic;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests on the {@link net.filipvanlaen.laconic.TokenScope} class.
+ */
+public class TokenScopeTest {
+    /**
+     * The capacity of the ring of the flight recorder for the tests.
+     */
+    private static final int CAPACITY = 4_096;
+    /**
+     * The number three.
+     */
+    private static final long THREE = 3L;
+
+    /**
+     * Verifies that a scope makes a token the current token, and restores the previous token when it's closed.
+     */
+    @Test
+    public void openShouldMakeATokenTheCurrentTokenUntilTheScopeIsClosed() {
+        Token outer = new Token();
+        Token inner = new Token();
+        TokenScope outerScope = TokenScope.open(outer);
+        try {
+            TokenScope innerScope = TokenScope.open(inner);
+            try {
+                assertSame(inner, TokenScope.current());
+            } finally {
+                innerScope.close();
+            }
+            assertSame(outer, TokenScope.current());
+        } finally {
+            outerScope.close();
+        }
+        assertNull(TokenScope.current());
+    }
+
+    /**
+     * Verifies that a message logged without tokens is added to the current token.
+     */
+    @Test
+    public void logMessageShouldAddTheMessageToTheCurrentToken() {
+        Laconic laconic = new Laconic();
+        Token token = laconic.logMessage("Foo");
+        TokenScope scope = TokenScope.open(token);
+        try {
+            laconic.logMessage("Bar %d", 1);
+        } finally {
+            scope.close();
+        }
+        laconic.logMessage("Baz");
+        assertEquals(2, token.getMessages().size());
+    }
+
+    /**
+     * Verifies that an error logged without tokens is logged with the current token.
+     */
+    @Test
+    public void logErrorShouldLogTheCurrentToken() {
+        Laconic laconic = new Laconic();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        PrintStream printStream = new PrintStream(outputStream);
+        laconic.setPrintStream(printStream);
+        laconic.setPrefixWithTimestamp(false);
+        TokenScope scope = TokenScope.open(laconic.logMessage("Foo"));
+        try {
+            laconic.logMessage("Bar");
+            laconic.logError("Baz");
+        } finally {
+            scope.close();
+        }
+        assertEquals("‡   Foo\n‡ ⬐ Bar\n‡ Baz\n", outputStream.toString());
+    }
+
+    /**
+     * Verifies that a task run through a wrapped executor gets a child token of the token current at submission.
+     *
+     * @throws ExecutionException   Thrown if the task fails.
+     * @throws InterruptedException Thrown if the test is interrupted.
+     */
+    @Test
+    public void wrappedExecutorShouldRunTasksWithAChildToken() throws ExecutionException, InterruptedException {
+        Laconic laconic = new Laconic();
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        Executor executor = TokenScope.wrap(executorService);
+        Token token = laconic.logMessage("Foo");
+        Token child;
+        TokenScope scope = TokenScope.open(token);
+        try {
+            child = TokenScope.supplyAsync(() -> {
+                laconic.logMessage("Bar");
+                return TokenScope.current();
+            }, executor).get();
+        } finally {
+            scope.close();
+        }
+        executorService.shutdown();
+        assertEquals(1, token.getMessages().size());
+        assertEquals(2, child.getMessages().size());
+    }
+
+    /**
+     * Verifies that a wrapped runnable doesn't leave a current token behind on the thread running it.
+     */
+    @Test
+    public void wrappedRunnableShouldRestoreTheCurrentToken() {
+        Runnable task;
+        TokenScope scope = TokenScope.open(new Token());
+        try {
+            task = TokenScope.wrap(() -> { });
+        } finally {
+            scope.close();
+        }
+        task.run();
+        assertNull(TokenScope.current());
+    }
+
+    /**
+     * Verifies that the child token of a wrapped task is cloned by the logger of the current token, and thus recorded
+     * as a clone in the flight recorder mode of that logger and counted in its metrics.
+     *
+     * @param directory A temporary directory for the flight recording.
+     * @throws IOException Thrown if the flight recording can't be created or read.
+     */
+    @Test
+    public void wrappedTaskShouldBeClonedByTheLoggerOfTheCurrentToken(@TempDir final Path directory)
+            throws IOException {
+        Path file = directory.resolve("laconic.rec");
+        Laconic laconic = new Laconic();
+        laconic.setFlightRecorder(file, CAPACITY);
+        laconic.setMetricsEnabled(true);
+        Token child;
+        TokenScope scope = TokenScope.open(laconic.logMessage("Foo"));
+        try {
+            Supplier<Token> task = () -> {
+                laconic.logMessage("Bar");
+                return TokenScope.current();
+            };
+            child = TokenScope.wrap(task).get();
+        } finally {
+            scope.close();
+            laconic.setFlightRecorder(null, CAPACITY);
+        }
+        MetricsSnapshot snapshot = laconic.getMetrics();
+        laconic.setMetricsEnabled(false);
+        assertSame(laconic, child.getLogger());
+        assertEquals(THREE, snapshot.liveTokens());
+        String rendered = FlightRecording.read(file).render(child.flightRecorderId());
+        assertTrue(rendered.contains("‡   Foo\n"));
+        assertTrue(rendered.contains("‡ ⬐ Bar\n"));
+    }
+}
@@ -1,6 +1,10 @@
 package net.filipvanlaenen.laconic;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import org.junit.jupiter.api.Test;
@@ -11,6 +15,27 @@ import net.filipvanlaenen.kolektoj.OrderedCollection;
  * Unit tests on the {@link net.filipvanlaen.laconic.Token} class.
  */
 public class TokenTest {
+    /**
+     * The number of threads to use in the concurrency tests.
+     */
+    private static final int NUMBER_OF_THREADS = 8;
+    /**
+     * The number of messages each thread adds in the concurrency tests.
+     */
+    private static final int NUMBER_OF_MESSAGES = 1000;
+    /**
+     * The number of messages added in the retention policy tests.
+     */
+    private static final int NUMBER_OF_RETENTION_MESSAGES = 100;
+    /**
+     * The time to live in milliseconds in the retention policy tests.
+     */
+    private static final long TIME_TO_LIVE = 60_000L;
+    /**
+     * The magic number three.
+     */
+    private static final int THREE = 3;
+
     /**
      * Verifies that by default, no messages are registered on a token.
      */
@@ -30,6 +55,38 @@ public class TokenTest {
         assertTrue(originalToken.getMessages().isEmpty());
     }
 
+    /**
+     * Verifies that when a token is cloned, the cloned token doesn't receive the messages on the original token.
+     */
+    @Test
+    public void getMessagesOnClonedTokenIsUnchangedAfterAMessageIsAddedToTheOriginalToken() {
+        Token originalToken = new Token();
+        originalToken.addMessage("Something happend.");
+        Token newToken = new Token(originalToken);
+        originalToken.addMessage("Something else happend.");
+        assertEquals(1, newToken.getMessages().size());
+        assertEquals(2, originalToken.getMessages().size());
+    }
+
+    /**
+     * Verifies that two tokens cloned from the same token can branch off independently.
+     */
+    @Test
+    public void getMessagesReturnsTheBranchedMessagesForTokensClonedFromTheSameToken() {
+        Token originalToken = new Token();
+        originalToken.addMessage("Something happend.");
+        Token token1 = new Token(originalToken);
+        token1.addMessage("Foo");
+        Token token2 = new Token(originalToken);
+        token2.addMessage("Bar");
+        OrderedCollection<Message> messages1 = token1.getMessages();
+        OrderedCollection<Message> messages2 = token2.getMessages();
+        assertEquals("Something happend.", messages1.getAt(0).message());
+        assertEquals("Foo", messages1.getAt(1).message());
+        assertEquals("Something happend.", messages2.getAt(0).message());
+        assertEquals("Bar", messages2.getAt(1).message());
+    }
+
     /**
      * Verifies that when a token is cloned, the new token inherits all the messages.
      */
@@ -65,4 +122,238 @@ public class TokenTest {
         assertEquals("Something happend.", messages.getAt(0).message());
         assertEquals("Something else happend.", messages.getAt(1).message());
     }
+
+    /**
+     * Verifies that when a formatted message has been added to a token, it is returned by getMessages.
+     */
+    @Test
+    public void getMessagesShouldReturnALoggedFormattedMessage() {
+        Token token = new Token();
+        token.addMessage(new Message.FormattedInteger("Something happend %d times.", 2));
+        OrderedCollection<Message> messages = token.getMessages();
+        assertEquals("Something happend 2 times.", messages.getAt(0).message());
+    }
+
+    /**
+     * Verifies that no messages are lost when messages are added concurrently to a token.
+     *
+     * @throws InterruptedException Thrown if the test is interrupted while waiting for the threads.
+     */
+    @Test
+    public void addMessageShouldNotLoseMessagesAddedConcurrently() throws InterruptedException {
+        Token token = new Token();
+        Thread[] threads = new Thread[NUMBER_OF_THREADS];
+        for (int i = 0; i < NUMBER_OF_THREADS; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < NUMBER_OF_MESSAGES; j++) {
+                    token.addMessage("Something happend.");
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(NUMBER_OF_THREADS * NUMBER_OF_MESSAGES, token.getMessages().size());
+    }
+
+    /**
+     * Verifies that a token retains only the maximum number of messages of its retention policy, preceded by a marker
+     * for the elided messages.
+     */
+    @Test
+    public void getMessagesShouldReturnOnlyTheRetainedMessagesAndAMarker() {
+        Token token = new Token(new RetentionPolicy(2, Long.MAX_VALUE));
+        for (int i = 1; i <= NUMBER_OF_RETENTION_MESSAGES; i++) {
+            token.addMessage("Message " + i);
+        }
+        OrderedCollection<Message> messages = token.getMessages();
+        assertEquals(THREE, messages.size());
+        assertEquals("… " + (NUMBER_OF_RETENTION_MESSAGES - 2) + " earlier messages elided",
+                messages.getAt(0).message());
+        assertEquals("Message " + (NUMBER_OF_RETENTION_MESSAGES - 1), messages.getAt(1).message());
+        assertEquals("Message " + NUMBER_OF_RETENTION_MESSAGES, messages.getAt(2).message());
+    }
+
+    /**
+     * Verifies that a token doesn't retain messages older than the time to live of its retention policy.
+     */
+    @Test
+    public void getMessagesShouldNotReturnExpiredMessages() {
+        Token token = new Token(new RetentionPolicy(Integer.MAX_VALUE, TIME_TO_LIVE));
+        token.addMessage(new Message.Plain("Foo", System.currentTimeMillis() - 2 * TIME_TO_LIVE));
+        token.addMessage("Bar");
+        OrderedCollection<Message> messages = token.getMessages();
+        assertEquals(2, messages.size());
+        assertEquals("… 1 earlier message elided", messages.getAt(0).message());
+        assertEquals("Bar", messages.getAt(1).message());
+    }
+
+    /**
+     * Verifies that a cloned token shares the retention policy of the original token.
+     */
+    @Test
+    public void getMessagesShouldApplyTheRetentionPolicyOnAClonedToken() {
+        Token originalToken = new Token(new RetentionPolicy(1, Long.MAX_VALUE));
+        originalToken.addMessage("Foo");
+        Token newToken = new Token(originalToken);
+        newToken.addMessage("Bar");
+        OrderedCollection<Message> messages = newToken.getMessages();
+        assertEquals(2, messages.size());
+        assertEquals("… 1 earlier message elided", messages.getAt(0).message());
+        assertEquals("Bar", messages.getAt(1).message());
+    }
+
+    /**
+     * Verifies that tokens cloned from the same token keep their own messages once their messages have been packed.
+     */
+    @Test
+    public void getMessagesReturnsTheBranchedMessagesAfterPacking() {
+        Token originalToken = new Token();
+        for (int i = 0; i < NUMBER_OF_RETENTION_MESSAGES; i++) {
+            originalToken.addMessage(new Message.FormattedInteger("Foo %d", i));
+        }
+        Token token1 = new Token(originalToken);
+        Token token2 = new Token(originalToken);
+        for (int i = 0; i < NUMBER_OF_RETENTION_MESSAGES; i++) {
+            token1.addMessage("Bar " + i);
+            token2.addMessage(new Message.FormattedText("Baz %s", "‡" + i));
+        }
+        OrderedCollection<Message> messages1 = token1.getMessages();
+        OrderedCollection<Message> messages2 = token2.getMessages();
+        assertEquals(2 * NUMBER_OF_RETENTION_MESSAGES, messages1.size());
+        assertEquals(2 * NUMBER_OF_RETENTION_MESSAGES, messages2.size());
+        for (int i = 0; i < NUMBER_OF_RETENTION_MESSAGES; i++) {
+            assertEquals("Foo " + i, messages1.getAt(i).message());
+            assertEquals("Foo " + i, messages2.getAt(i).message());
+            assertEquals("Bar " + i, messages1.getAt(NUMBER_OF_RETENTION_MESSAGES + i).message());
+            assertEquals("Baz ‡" + i, messages2.getAt(NUMBER_OF_RETENTION_MESSAGES + i).message());
+        }
+    }
+
+    /**
+     * Verifies that the fingerprint of a token doesn't change when its messages are packed.
+     */
+    @Test
+    public void fingerprintShouldNotChangeWhenMessagesArePacked() {
+        Token shortToken = new Token();
+        Token longToken = new Token();
+        for (int i = 0; i < NUMBER_OF_RETENTION_MESSAGES; i++) {
+            longToken.addMessage(new Message.FormattedInteger("Foo %d", i));
+        }
+        for (int i = 0; i < Token.MAXIMUM_FINGERPRINT_LENGTH; i++) {
+            shortToken.addMessage(new Message.FormattedInteger("Foo %d", i));
+        }
+        assertEquals(shortToken.fingerprint(), longToken.fingerprint());
+    }
+
+    /**
+     * Verifies that a batch of messages is added to a token in order, also when the batch is large enough to be packed.
+     */
+    @Test
+    public void addMessagesShouldAddTheBatchInOrder() {
+        Token token = new Token();
+        token.addMessage("Start");
+        Message[] batch = new Message[NUMBER_OF_RETENTION_MESSAGES];
+        for (int i = 0; i < batch.length; i++) {
+            batch[i] = new Message.Plain("Message " + i);
+        }
+        token.addMessages(batch);
+        OrderedCollection<Message> messages = token.getMessages();
+        assertEquals(NUMBER_OF_RETENTION_MESSAGES + 1, messages.size());
+        assertEquals("Start", messages.getAt(0).message());
+        for (int i = 0; i < batch.length; i++) {
+            assertEquals("Message " + i, messages.getAt(i + 1).message());
+        }
+    }
+
+    /**
+     * Verifies that the retention policy is applied to a batch of messages.
+     */
+    @Test
+    public void addMessagesShouldApplyTheRetentionPolicy() {
+        Token token = new Token(new RetentionPolicy(THREE, Long.MAX_VALUE));
+        token.addMessages(new Message[] {new Message.Plain("Foo"), new Message.Plain("Bar"), new Message.Plain("Baz"),
+                new Message.Plain("Qux"), new Message.Plain("Quux"), new Message.Plain("Corge"),
+                new Message.Plain("Grault")});
+        OrderedCollection<Message> messages = token.getMessages();
+        assertEquals(THREE + 1, messages.size());
+        assertEquals("Grault", messages.getAt(THREE).message());
+    }
+
+    /**
+     * Verifies that no messages are added to the unsampled token, and that it isn't reused when it is closed.
+     */
+    @Test
+    public void unsampledTokenShouldIgnoreMessagesAndNotBeReused() {
+        Token.UNSAMPLED.addMessage("Foo");
+        Token.UNSAMPLED.close();
+        assertTrue(Token.UNSAMPLED.getMessages().isEmpty());
+        assertNotSame(Token.UNSAMPLED, Token.obtain(null, null, false));
+    }
+
+    /**
+     * Verifies that a closed token is reused for the next token on the same thread.
+     */
+    @Test
+    public void obtainShouldReuseAClosedToken() {
+        Token token = Token.obtain(null, null, false);
+        token.addMessage("Foo");
+        token.close();
+        Token reusedToken = Token.obtain(null, null, false);
+        assertSame(token, reusedToken);
+        assertTrue(reusedToken.getMessages().isEmpty());
+    }
+
+    /**
+     * Verifies that a plain message that is null survives the packing of the messages of a token.
+     */
+    @Test
+    public void getMessagesShouldReturnANullMessageAfterPacking() {
+        Token token = new Token();
+        token.addMessage((String) null);
+        for (int i = 0; i < NUMBER_OF_RETENTION_MESSAGES; i++) {
+            token.addMessage("Foo");
+        }
+        OrderedCollection<Message> messages = token.getMessages();
+        assertEquals(NUMBER_OF_RETENTION_MESSAGES + 1, messages.size());
+        assertNull(messages.getAt(0).message());
+    }
+
+    /**
+     * Verifies that a token closed twice is returned to the pool only once, such that it isn't handed out twice.
+     */
+    @Test
+    public void closeShouldReturnATokenClosedTwiceToThePoolOnlyOnce() {
+        Token token = Token.obtain(null, null, false);
+        token.close();
+        token.close();
+        Token reusedToken = Token.obtain(null, null, false);
+        assertSame(token, reusedToken);
+        assertNotSame(reusedToken, Token.obtain(null, null, false));
+        reusedToken.close();
+        assertSame(reusedToken, Token.obtain(null, null, false));
+    }
+
+    /**
+     * Verifies that a token with which an error has been logged isn't reused.
+     */
+    @Test
+    public void obtainShouldNotReuseATokenWithWhichAnErrorHasBeenLogged() {
+        Token token = Token.obtain(null, null, false);
+        token.markErrorLogged();
+        token.close();
+        assertNotSame(token, Token.obtain(null, null, false));
+    }
+
+    /**
+     * Verifies that using a closed token in debug mode throws an exception.
+     */
+    @Test
+    public void addMessageShouldThrowAnExceptionForAClosedTokenInDebugMode() {
+        Token token = Token.obtain(null, null, true);
+        token.close();
+        assertThrows(IllegalStateException.class, () -> token.addMessage("Foo"));
+        assertNotSame(token, Token.obtain(null, null, true));
+    }
 }
@@ -0,0 +1,105 @@
+package net.filipvanlaenen.laconic;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.ZoneId;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests on the {@link net.filipvanlaen.laconic.TokenTree} class.
+ */
+public class TokenTreeTest {
+    /**
+     * A timestamp for the tests, 17 October 2024 at 10:10:51.432 in Brussels.
+     */
+    private static final long TIMESTAMP = 1_729_152_651_432L;
+
+    /**
+     * Creates a token with messages.
+     *
+     * @param messages The messages.
+     * @return A token with the messages.
+     */
+    private static Token tokenWith(final Message... messages) {
+        Token token = new Token();
+        for (Message message : messages) {
+            token.addMessage(message);
+        }
+        return token;
+    }
+
+    /**
+     * Renders a tree without timestamps.
+     *
+     * @param tokens The tokens.
+     * @return The rendered tree.
+     */
+    private static String render(final Token... tokens) {
+        StringBuilder block = new StringBuilder();
+        new TokenTree(tokens).appendTo(block, null);
+        return block.toString();
+    }
+
+    /**
+     * Verifies that the shared history of the tokens is rendered once, and that the tree branches where the chains
+     * diverge.
+     */
+    @Test
+    public void appendToShouldRenderTheSharedHistoryOnce() {
+        Message foo = new Message.Plain("Foo");
+        Message bar = new Message.Plain("Bar");
+        Message baz = new Message.Plain("Baz");
+        Message qux = new Message.Plain("Qux");
+        Message quux = new Message.Plain("Quux");
+        assertEquals("‡ ⬐ Foo\n‡   Bar\n‡ ⬐ ├ Baz\n‡   └ Qux\n‡ ⬐   Quux\n",
+                render(tokenWith(foo), tokenWith(foo, bar, baz), tokenWith(foo, bar, qux, quux)));
+    }
+
+    /**
+     * Verifies that nested branches are rendered with the guides of the branches they're in.
+     */
+    @Test
+    public void appendToShouldRenderNestedBranches() {
+        Message foo = new Message.Plain("Foo");
+        Message bar = new Message.Plain("Bar");
+        Message baz = new Message.Plain("Baz");
+        Message qux = new Message.Plain("Qux");
+        Message quux = new Message.Plain("Quux");
+        assertEquals("‡   Foo\n‡   ├ Bar\n‡ ⬐ │ ├ Baz\n‡ ⬐ │ └ Qux\n‡ ⬐ └ Quux\n",
+                render(tokenWith(foo, bar, baz), tokenWith(foo, bar, qux), tokenWith(foo, quux)));
+    }
+
+    /**
+     * Verifies that tokens without a shared history are rendered as branches of their own.
+     */
+    @Test
+    public void appendToShouldRenderUnrelatedTokensAsBranches() {
+        assertEquals("‡ ⬐ ├ Foo\n‡ ⬐ └ Bar\n",
+                render(tokenWith(new Message.Plain("Foo")), tokenWith(new Message.Plain("Bar"))));
+    }
+
+    /**
+     * Verifies that messages with the same text and timestamp logged separately to different tokens are rendered as
+     * different branches.
+     */
+    @Test
+    public void appendToShouldNotMergeEqualMessagesLoggedSeparately() {
+        assertEquals("‡ ⬐ ├ Foo\n‡ ⬐ └ Foo\n", render(tokenWith(new Message.Plain("Foo", TIMESTAMP)),
+                tokenWith(new Message.Plain("Foo", TIMESTAMP))));
+    }
+
+    /**
+     * Verifies that the messages are prefixed with a timestamp if a timestamp format is provided.
+     */
+    @Test
+    public void appendToShouldPrefixTheMessagesWithATimestamp() {
+        Message foo = new Message.Plain("Foo", TIMESTAMP);
+        Message bar = new Message.Plain("Bar", TIMESTAMP);
+        StringBuilder block = new StringBuilder();
+        new TokenTree(new Token[] {tokenWith(foo), tokenWith(foo, bar)}).appendTo(block,
+                new TimestampFormat(ZoneId.of("Europe/Brussels")));
+        assertEquals("2024-10-17T10:10:51.432+02:00 ‡ ⬐ Foo\n2024-10-17T10:10:51.432+02:00 ‡ ⬐ Bar\n",
+                block.toString());
+    }
+}
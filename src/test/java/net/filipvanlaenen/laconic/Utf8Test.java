@@ -0,0 +1,83 @@
+package net.filipvanlaenen.laconic;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests on the {@link net.filipvanlaen.laconic.Utf8} class.
+ */
+public class Utf8Test {
+    /**
+     * Encodes a text with the UTF-8 encoder.
+     *
+     * @param text The text to be encoded.
+     * @return The UTF-8 encoded bytes.
+     */
+    private static byte[] encode(final String text) {
+        ByteBuffer buffer = ByteBuffer.allocate(text.length() * Utf8.MAXIMUM_BYTES_PER_CHAR);
+        Utf8.encode(text, buffer);
+        byte[] bytes = new byte[buffer.position()];
+        buffer.flip();
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Verifies that ASCII text is encoded correctly.
+     */
+    @Test
+    public void encodeShouldEncodeAsciiText() {
+        assertArrayEquals("Foo".getBytes(StandardCharsets.UTF_8), encode("Foo"));
+    }
+
+    /**
+     * Verifies that two and three bytes characters are encoded correctly.
+     */
+    @Test
+    public void encodeShouldEncodeTheMarkers() {
+        assertArrayEquals("‡ ⬐ é Foo".getBytes(StandardCharsets.UTF_8), encode("‡ ⬐ é Foo"));
+    }
+
+    /**
+     * Verifies that surrogate pairs are encoded correctly.
+     */
+    @Test
+    public void encodeShouldEncodeSurrogatePairs() {
+        String text = "Foo 😀 Bar";
+        assertArrayEquals(text.getBytes(StandardCharsets.UTF_8), encode(text));
+    }
+
+    /**
+     * Verifies that malformed surrogates are replaced like the JDK does.
+     */
+    @Test
+    public void encodeShouldReplaceMalformedSurrogates() {
+        String text = "Foo \uD83D Bar \uDE00";
+        assertArrayEquals(text.getBytes(StandardCharsets.UTF_8), encode(text));
+    }
+
+    /**
+     * Verifies that the encoded length matches the length of the encoded bytes.
+     */
+    @Test
+    public void encodedLengthShouldMatchTheLengthOfTheEncodedBytes() {
+        String text = "Foo ß ‡ 😀 \uD800";
+        assertEquals(encode(text).length, Utf8.encodedLength(text));
+    }
+
+    /**
+     * Verifies that the hash code of an encoded text is the hash code of the text.
+     */
+    @Test
+    public void hashCodeShouldBeTheHashCodeOfTheDecodedText() {
+        String text = "Foo ‡ ⬐ é 😀 \uD83D";
+        byte[] bytes = encode(text);
+        assertEquals(new String(bytes, StandardCharsets.UTF_8).hashCode(),
+                Utf8.hashCode(ByteBuffer.wrap(bytes), 0, bytes.length));
+    }
+}